@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.jfr;
+
+import jdk.jfr.EventType;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.instrumentation.Instrumentation;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+
+/**
+ * Emits the OBDig events to the Java Flight Recorder. It is registered
+ * as a service, so adding this module to the classpath is sufficient.
+ * The events are disabled by default; enable them in the recording
+ * settings, e.g. <code>org.envirocar.obdig.CommandRoundTrip#enabled=true</code>.
+ */
+public class JfrInstrumentation implements Instrumentation {
+
+	private static final EventType ROUND_TRIP = EventType.getEventType(CommandRoundTripEvent.class);
+	private static final EventType PHASE_SWITCH = EventType.getEventType(PhaseSwitchEvent.class);
+	private static final EventType ADAPTER_SELECTION = EventType.getEventType(AdapterSelectionEvent.class);
+	private static final EventType RESPONSE_DROP = EventType.getEventType(ResponseDropEvent.class);
+	
+	@Override
+	public boolean isEnabled() {
+		return ROUND_TRIP.isEnabled() || PHASE_SWITCH.isEnabled()
+				|| ADAPTER_SELECTION.isEnabled() || RESPONSE_DROP.isEnabled();
+	}
+
+	@Override
+	public void onSessionStarted(SessionState session, String deviceName) {
+	}
+
+	@Override
+	public void onSessionStopped(SessionState session) {
+	}
+
+	@Override
+	public void onCommandRoundTrip(SessionState session, AbstractCommand cmd, int byteCount, long latencyNanos) {
+		if (!ROUND_TRIP.isEnabled()) {
+			return;
+		}
+		
+		CommandRoundTripEvent event = new CommandRoundTripEvent();
+		event.session = session.getId();
+		event.command = cmd.getCommandName();
+		event.pid = cmd.getPIDAsString();
+		event.bytes = byteCount;
+		event.latency = latencyNanos;
+		event.state = String.valueOf(cmd.getCommandState());
+		event.commit();
+	}
+
+	@Override
+	public void onSamplesDelivered(SessionState session, int count) {
+	}
+
+	@Override
+	public void onRecovery(SessionState session, String level, boolean recovered) {
+	}
+
+	@Override
+	public void onPhaseSwitch(SessionState session, String phase, String reason) {
+		if (!PHASE_SWITCH.isEnabled()) {
+			return;
+		}
+		
+		PhaseSwitchEvent event = new PhaseSwitchEvent();
+		event.session = session.getId();
+		event.phase = phase;
+		event.reason = reason;
+		event.commit();
+	}
+
+	@Override
+	public void onAdapterSelection(SessionState session, String connector, String deviceName, int attempt) {
+		if (!ADAPTER_SELECTION.isEnabled()) {
+			return;
+		}
+		
+		AdapterSelectionEvent event = new AdapterSelectionEvent();
+		event.session = session.getId();
+		event.connector = connector;
+		event.deviceName = deviceName;
+		event.attempt = attempt;
+		event.commit();
+	}
+
+	@Override
+	public void onResponseDropped(SessionState session, String reason, int length) {
+		if (!RESPONSE_DROP.isEnabled()) {
+			return;
+		}
+		
+		ResponseDropEvent event = new ResponseDropEvent();
+		event.session = session != null ? session.getId() : 0;
+		event.reason = reason;
+		event.length = length;
+		event.commit();
+	}
+	
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with logarithmic buckets: every power
+ * of two (in microseconds) is split into {@link #SUB_BUCKETS} linear
+ * buckets, so a quantile is off by at most 25 percent. Recording is a
+ * single {@link LongAdder#increment()}, reading is done on scrapes only.
+ */
+class LatencyHistogram {
+
+	static final int SUB_BUCKETS = 4;
+	
+	/**
+	 * covers 1 microsecond to 2^32 microseconds (~71 minutes)
+	 */
+	private static final int MAGNITUDES = 32;
+	
+	private final LongAdder[] buckets = new LongAdder[(MAGNITUDES + 1) * SUB_BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumNanos = new LongAdder();
+	
+	LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	void record(long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+		
+		buckets[bucketIndex(nanos / 1000)].increment();
+		count.increment();
+		sumNanos.add(nanos);
+	}
+	
+	long getCount() {
+		return count.sum();
+	}
+	
+	long getSumNanos() {
+		return sumNanos.sum();
+	}
+	
+	/**
+	 * @param quantile the quantile, between 0 and 1
+	 * @return the upper bound of the bucket holding the quantile
+	 * in nanoseconds, 0 if nothing has been recorded
+	 */
+	long getQuantileNanos(double quantile) {
+		long[] counts = new long[buckets.length];
+		long total = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		
+		if (total == 0) {
+			return 0;
+		}
+		
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0) {
+				return upperBoundMicros(i) * 1000;
+			}
+		}
+		return upperBoundMicros(counts.length - 1) * 1000;
+	}
+	
+	static int bucketIndex(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) Math.max(0, micros);
+		}
+		
+		int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+		if (magnitude >= MAGNITUDES) {
+			return (MAGNITUDES + 1) * SUB_BUCKETS - 1;
+		}
+		
+		/*
+		 * the two bits following the highest one select the sub bucket
+		 */
+		int sub = (int) (micros >>> (magnitude - 2)) & (SUB_BUCKETS - 1);
+		return (magnitude - 1) * SUB_BUCKETS + sub;
+	}
+	
+	static long upperBoundMicros(int index) {
+		if (index < SUB_BUCKETS) {
+			return index + 1;
+		}
+		
+		int magnitude = index / SUB_BUCKETS + 1;
+		int sub = index % SUB_BUCKETS;
+		return (1L << magnitude) + ((sub + 1L) << (magnitude - 2));
+	}
+	
+}
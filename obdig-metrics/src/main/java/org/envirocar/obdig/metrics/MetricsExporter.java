@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.envirocar.obdig.instrumentation.InstrumentationProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metrics of all sessions of the VM at <code>/metrics</code>
+ * using the HTTP server of the JDK. A gateway starts it once:
+ * 
+ * <pre>
+ * MetricsExporter exporter = new MetricsExporter(new InetSocketAddress(9404));
+ * exporter.start();
+ * </pre>
+ * 
+ * Starting the exporter installs its {@link MetricsInstrumentation} via
+ * {@link InstrumentationProvider}, so it has to happen before the
+ * loopers are initialized.
+ */
+public class MetricsExporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(MetricsExporter.class);
+	public static final String PATH = "/metrics";
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	private final InetSocketAddress address;
+	private final MetricsInstrumentation instrumentation = new MetricsInstrumentation();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param address the address to bind to
+	 */
+	public MetricsExporter(InetSocketAddress address) {
+		if (address == null) throw new IllegalArgumentException("address must not be null!");
+		this.address = address;
+	}
+	
+	public synchronized void start() throws IOException {
+		if (server != null) {
+			return;
+		}
+		
+		server = HttpServer.create(address, 0);
+		server.createContext(PATH, new MetricsHandler());
+		executor = Executors.newSingleThreadExecutor();
+		server.setExecutor(executor);
+		server.start();
+		
+		InstrumentationProvider.set(instrumentation);
+		logger.info("Serving metrics at " + server.getAddress() + PATH);
+	}
+	
+	public synchronized void stop() {
+		if (server == null) {
+			return;
+		}
+		
+		InstrumentationProvider.set(null);
+		server.stop(0);
+		executor.shutdown();
+		server = null;
+	}
+	
+	/**
+	 * @return the bound address, e.g. to resolve an ephemeral port
+	 */
+	public synchronized InetSocketAddress getAddress() {
+		return server != null ? server.getAddress() : address;
+	}
+	
+	public MetricsInstrumentation getInstrumentation() {
+		return instrumentation;
+	}
+	
+	private class MetricsHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!"GET".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				
+				StringWriter text = new StringWriter();
+				instrumentation.write(text);
+				byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+				
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			} catch (IOException e) {
+				logger.warn("Could not serve the metrics: " + e.getMessage(), e);
+				throw e;
+			} finally {
+				exchange.close();
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.instrumentation.Instrumentation;
+import org.envirocar.obdig.protocol.adapter.PIDHealth;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+
+/**
+ * Collects the metrics of all looper sessions of the VM. The callbacks
+ * run on the polling threads and only touch {@link LongAdder}s; the
+ * aggregation happens in {@link #write(Writer)} on scrapes.
+ */
+public class MetricsInstrumentation implements Instrumentation {
+
+	static final double[] QUANTILES = {0.5, 0.9, 0.99};
+	
+	private static final String INITIALIZATION_PHASE = "INITIALIZATION";
+	
+	private final ConcurrentMap<SessionState, SessionMetrics> sessions =
+			new ConcurrentHashMap<SessionState, SessionMetrics>();
+	private final AtomicReferenceArray<LatencyHistogram> latencies =
+			new AtomicReferenceArray<LatencyHistogram>(0x100);
+	
+	private final LongAdder samples = new LongAdder();
+	private final LongAdder recoveries = new LongAdder();
+	private final LongAdder failedRecoveries = new LongAdder();
+	private final LongAdder reinitializations = new LongAdder();
+	private final LongAdder sessionCount = new LongAdder();
+	private final LongAdder firstSampleCount = new LongAdder();
+	private final LongAdder firstSampleNanosSum = new LongAdder();
+	private final LongAdder droppedOverflow = new LongAdder();
+	private final LongAdder droppedBufferFull = new LongAdder();
+	
+	private long lastScrapeSamples;
+	private long lastScrapeNanos = System.nanoTime();
+	
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void onSessionStarted(SessionState session, String deviceName) {
+		sessions.put(session, new SessionMetrics(session, deviceName));
+		sessionCount.increment();
+	}
+
+	@Override
+	public void onSessionStopped(SessionState session) {
+		sessions.remove(session);
+	}
+
+	@Override
+	public void onCommandRoundTrip(SessionState session, AbstractCommand cmd, int byteCount, long latencyNanos) {
+		int pid = PIDHealth.toPIDByte(cmd);
+		if (pid == PIDHealth.NO_PID) {
+			return;
+		}
+		
+		LatencyHistogram histogram = latencies.get(pid);
+		if (histogram == null) {
+			latencies.compareAndSet(pid, null, new LatencyHistogram());
+			histogram = latencies.get(pid);
+		}
+		histogram.record(latencyNanos);
+	}
+
+	@Override
+	public void onSamplesDelivered(SessionState session, int count) {
+		samples.add(count);
+		
+		SessionMetrics metrics = sessions.get(session);
+		if (metrics != null && metrics.onSamples(count)) {
+			firstSampleCount.increment();
+			firstSampleNanosSum.add(metrics.firstSampleNanos.get());
+		}
+	}
+
+	@Override
+	public void onRecovery(SessionState session, String level, boolean recovered) {
+		(recovered ? recoveries : failedRecoveries).increment();
+		
+		SessionMetrics metrics = sessions.get(session);
+		if (metrics != null) {
+			(recovered ? metrics.recoveries : metrics.failedRecoveries).increment();
+		}
+	}
+
+	@Override
+	public void onPhaseSwitch(SessionState session, String phase, String reason) {
+		if (!INITIALIZATION_PHASE.equals(phase)) {
+			return;
+		}
+		
+		SessionMetrics metrics = sessions.get(session);
+		if (metrics != null) {
+			metrics.initializations.increment();
+			
+			/*
+			 * the first initialization is the regular connect
+			 */
+			if (metrics.initializations.sum() > 1) {
+				reinitializations.increment();
+			}
+		}
+	}
+
+	@Override
+	public void onAdapterSelection(SessionState session, String connector, String deviceName, int attempt) {
+	}
+
+	@Override
+	public void onResponseDropped(SessionState session, String reason, int length) {
+		if (Instrumentation.DROP_LINE_OVERFLOW.equals(reason)) {
+			droppedOverflow.increment();
+		}
+		else {
+			droppedBufferFull.increment();
+		}
+	}
+	
+	/**
+	 * writes all metrics in the Prometheus text format (version 0.0.4)
+	 * 
+	 * @param writer the target
+	 * @throws IOException if the writer fails
+	 */
+	public void write(Writer writer) throws IOException {
+		long now = System.nanoTime();
+		PrometheusWriter out = new PrometheusWriter(writer);
+		List<SessionMetrics> active = new ArrayList<SessionMetrics>(sessions.values());
+		
+		out.header("obdig_sessions_active", "gauge", "Running looper sessions");
+		out.sample("obdig_sessions_active", null, active.size());
+		out.header("obdig_sessions_started_total", "counter", "Looper sessions started");
+		out.sample("obdig_sessions_started_total", null, sessionCount.sum());
+		
+		out.header("obdig_samples_total", "counter", "Valid responses delivered to the listeners");
+		out.sample("obdig_samples_total", null, samples.sum());
+		out.header("obdig_samples_per_second", "gauge", "Samples per second since the previous scrape");
+		out.sample("obdig_samples_per_second", null, scrapeSampleRate(now));
+		
+		out.header("obdig_recoveries_total", "counter", "Connection recovery attempts");
+		out.sample("obdig_recoveries_total", "result=\"success\"", recoveries.sum());
+		out.sample("obdig_recoveries_total", "result=\"failure\"", failedRecoveries.sum());
+		out.header("obdig_reinitializations_total", "counter", "Adapter re-initializations after a lost connection");
+		out.sample("obdig_reinitializations_total", null, reinitializations.sum());
+		
+		out.header("obdig_time_to_first_sample_seconds", "summary", "Time from the session start to the first sample");
+		out.sample("obdig_time_to_first_sample_seconds_count", null, firstSampleCount.sum());
+		out.sample("obdig_time_to_first_sample_seconds_sum", null, firstSampleNanosSum.sum() / 1e9);
+		
+		out.header("obdig_responses_dropped_total", "counter", "Responses dropped by asynchronous connectors");
+		out.sample("obdig_responses_dropped_total", "reason=\"line_overflow\"", droppedOverflow.sum());
+		out.sample("obdig_responses_dropped_total", "reason=\"buffer_full\"", droppedBufferFull.sum());
+		
+		writeLatencies(out);
+		writeSessions(out, active, now);
+		
+		writer.flush();
+	}
+	
+	private void writeLatencies(PrometheusWriter out) throws IOException {
+		out.header("obdig_command_latency_seconds", "summary", "Round-trip time of the Mode 01 PID requests");
+		for (int pid = 0; pid < latencies.length(); pid++) {
+			LatencyHistogram histogram = latencies.get(pid);
+			if (histogram == null) {
+				continue;
+			}
+			
+			String pidLabel = String.format("pid=\"%02X\"", pid);
+			for (double q : QUANTILES) {
+				out.sample("obdig_command_latency_seconds", pidLabel + ",quantile=\"" + q + "\"",
+						histogram.getQuantileNanos(q) / 1e9);
+			}
+			out.sample("obdig_command_latency_seconds_count", pidLabel, histogram.getCount());
+			out.sample("obdig_command_latency_seconds_sum", pidLabel, histogram.getSumNanos() / 1e9);
+		}
+	}
+	
+	private void writeSessions(PrometheusWriter out, List<SessionMetrics> active, long now) throws IOException {
+		List<String> labels = new ArrayList<String>(active.size());
+		for (SessionMetrics m : active) {
+			labels.add("session=\"" + m.session.getId() + "\",device=\"" + PrometheusWriter.escape(m.deviceName) + "\"");
+		}
+		
+		out.header("obdig_session_samples_total", "counter", "Samples delivered by the session");
+		for (int i = 0; i < active.size(); i++) {
+			out.sample("obdig_session_samples_total", labels.get(i), active.get(i).samples.sum());
+		}
+		
+		out.header("obdig_session_samples_per_second", "gauge", "Samples per second of the session since the previous scrape");
+		for (int i = 0; i < active.size(); i++) {
+			out.sample("obdig_session_samples_per_second", labels.get(i), active.get(i).scrapeSampleRate(now));
+		}
+		
+		out.header("obdig_session_time_to_first_sample_seconds", "gauge", "Time from the session start to its first sample");
+		for (int i = 0; i < active.size(); i++) {
+			long first = active.get(i).firstSampleNanos.get();
+			if (first != SessionMetrics.NO_SAMPLE) {
+				out.sample("obdig_session_time_to_first_sample_seconds", labels.get(i), first / 1e9);
+			}
+		}
+		
+		out.header("obdig_session_recoveries_total", "counter", "Connection recovery attempts of the session");
+		for (int i = 0; i < active.size(); i++) {
+			out.sample("obdig_session_recoveries_total", labels.get(i) + ",result=\"success\"", active.get(i).recoveries.sum());
+			out.sample("obdig_session_recoveries_total", labels.get(i) + ",result=\"failure\"", active.get(i).failedRecoveries.sum());
+		}
+		
+		out.header("obdig_session_initializations_total", "counter", "Adapter initializations of the session");
+		for (int i = 0; i < active.size(); i++) {
+			out.sample("obdig_session_initializations_total", labels.get(i), active.get(i).initializations.sum());
+		}
+		
+		out.header("obdig_session_request_period_seconds", "gauge", "Current period between two request cycles of the session");
+		for (int i = 0; i < active.size(); i++) {
+			out.sample("obdig_session_request_period_seconds", labels.get(i),
+					active.get(i).session.getPacingController().getRequestPeriod() / 1e3);
+		}
+		
+		out.header("obdig_session_backed_off_pids", "gauge", "PIDs of the session currently backed off after errors");
+		for (int i = 0; i < active.size(); i++) {
+			out.sample("obdig_session_backed_off_pids", labels.get(i), active.get(i).session.getPIDHealth().getBackedOffCount());
+		}
+		
+		out.header("obdig_session_response_queue_depth", "gauge", "Responses of an asynchronous connector not pulled yet");
+		for (int i = 0; i < active.size(); i++) {
+			out.sample("obdig_session_response_queue_depth", labels.get(i), active.get(i).session.getResponseQueueDepth());
+		}
+	}
+	
+	private synchronized double scrapeSampleRate(long now) {
+		long current = samples.sum();
+		long elapsed = now - lastScrapeNanos;
+		double result = elapsed > 0 ? (current - lastScrapeSamples) * 1e9 / elapsed : 0;
+		lastScrapeSamples = current;
+		lastScrapeNanos = now;
+		return result;
+	}
+	
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Minimal writer of the Prometheus text exposition format.
+ */
+class PrometheusWriter {
+
+	private final Writer writer;
+	
+	PrometheusWriter(Writer writer) {
+		this.writer = writer;
+	}
+	
+	void header(String name, String type, String help) throws IOException {
+		writer.write("# HELP ");
+		writer.write(name);
+		writer.write(' ');
+		writer.write(help);
+		writer.write("\n# TYPE ");
+		writer.write(name);
+		writer.write(' ');
+		writer.write(type);
+		writer.write('\n');
+	}
+	
+	/**
+	 * @param labels the already escaped labels, e.g. <code>pid="0D"</code>, or null
+	 */
+	void sample(String name, String labels, double value) throws IOException {
+		writer.write(name);
+		if (labels != null) {
+			writer.write('{');
+			writer.write(labels);
+			writer.write('}');
+		}
+		writer.write(' ');
+		writer.write(format(value));
+		writer.write('\n');
+	}
+	
+	static String format(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+	
+	static String escape(String value) {
+		if (value == null) {
+			return "";
+		}
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+	
+}
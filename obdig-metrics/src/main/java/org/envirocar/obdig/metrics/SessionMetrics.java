@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.envirocar.obdig.protocol.adapter.SessionState;
+
+/**
+ * The counters of one looper session. The session state is kept to
+ * read the gauges (e.g. the backed off PIDs) on scrapes.
+ */
+class SessionMetrics {
+
+	static final long NO_SAMPLE = -1;
+	
+	final SessionState session;
+	final String deviceName;
+	final long startNanos = System.nanoTime();
+	
+	final LongAdder samples = new LongAdder();
+	final LongAdder recoveries = new LongAdder();
+	final LongAdder failedRecoveries = new LongAdder();
+	final LongAdder initializations = new LongAdder();
+	final AtomicLong firstSampleNanos = new AtomicLong(NO_SAMPLE);
+	
+	private long lastScrapeSamples;
+	private long lastScrapeNanos = startNanos;
+	
+	SessionMetrics(SessionState session, String deviceName) {
+		this.session = session;
+		this.deviceName = deviceName;
+	}
+	
+	/**
+	 * @param count the number of delivered samples
+	 * @return true if these were the first samples of the session
+	 */
+	boolean onSamples(int count) {
+		samples.add(count);
+		if (firstSampleNanos.get() == NO_SAMPLE) {
+			return firstSampleNanos.compareAndSet(NO_SAMPLE, System.nanoTime() - startNanos);
+		}
+		return false;
+	}
+	
+	/**
+	 * @param now the time of the scrape
+	 * @return the samples per second since the previous scrape
+	 */
+	synchronized double scrapeSampleRate(long now) {
+		long current = samples.sum();
+		long elapsed = now - lastScrapeNanos;
+		double result = elapsed > 0 ? (current - lastScrapeSamples) * 1e9 / elapsed : 0;
+		lastScrapeSamples = current;
+		lastScrapeNanos = now;
+		return result;
+	}
+	
+}
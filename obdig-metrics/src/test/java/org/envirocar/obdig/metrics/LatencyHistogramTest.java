@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	
+	private static final long MILLIS = 1000000;
+
+	@Test
+	public void testBucketBounds() {
+		for (long micros = 0; micros < 100000; micros += 7) {
+			int index = LatencyHistogram.bucketIndex(micros);
+			Assert.assertTrue(LatencyHistogram.upperBoundMicros(index) > micros);
+			if (index > 0) {
+				Assert.assertTrue(LatencyHistogram.upperBoundMicros(index - 1) <= micros);
+			}
+		}
+	}
+	
+	@Test
+	public void testQuantiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertTrue(histogram.getQuantileNanos(0.5) == 0);
+		
+		for (int i = 0; i < 90; i++) {
+			histogram.record(40 * MILLIS);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(200 * MILLIS);
+		}
+		
+		long median = histogram.getQuantileNanos(0.5);
+		Assert.assertTrue(median > 40 * MILLIS && median <= 50 * MILLIS);
+		
+		long p99 = histogram.getQuantileNanos(0.99);
+		Assert.assertTrue(p99 > 200 * MILLIS && p99 <= 250 * MILLIS);
+		
+		Assert.assertTrue(histogram.getCount() == 100);
+		Assert.assertTrue(histogram.getSumNanos() == 5600 * MILLIS);
+	}
+	
+}
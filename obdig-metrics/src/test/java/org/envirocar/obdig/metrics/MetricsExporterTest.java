@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.metrics;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.envirocar.obdig.instrumentation.Instrumentation;
+import org.envirocar.obdig.instrumentation.InstrumentationProvider;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsExporterTest {
+
+	@Test
+	public void testSessionMetrics() throws Exception {
+		MetricsExporter exporter = new MetricsExporter(new InetSocketAddress("127.0.0.1", 0));
+		exporter.start();
+		
+		try {
+			Instrumentation instrumentation = InstrumentationProvider.get();
+			Assert.assertTrue(instrumentation == exporter.getInstrumentation());
+			
+			SessionState session = new SessionState();
+			instrumentation.onSessionStarted(session, "OBDII \"v1\"");
+			instrumentation.onPhaseSwitch(session, "INITIALIZATION", null);
+			instrumentation.onCommandRoundTrip(session, new Speed(), 12, 40000000);
+			instrumentation.onSamplesDelivered(session, 3);
+			instrumentation.onRecovery(session, "RESYNC_PROMPT", true);
+			instrumentation.onPhaseSwitch(session, "INITIALIZATION", "lost");
+			
+			String body = scrape(exporter);
+			String labels = "session=\"" + session.getId() + "\",device=\"OBDII \\\"v1\\\"\"";
+			
+			Assert.assertTrue(body.contains("obdig_sessions_active 1\n"));
+			Assert.assertTrue(body.contains("obdig_samples_total 3\n"));
+			Assert.assertTrue(body.contains("obdig_session_samples_total{" + labels + "} 3\n"));
+			Assert.assertTrue(body.contains("obdig_session_recoveries_total{" + labels + ",result=\"success\"} 1\n"));
+			Assert.assertTrue(body.contains("obdig_reinitializations_total 1\n"));
+			Assert.assertTrue(body.contains("obdig_command_latency_seconds_count{pid=\"0D\"} 1\n"));
+			Assert.assertTrue(body.contains("obdig_command_latency_seconds{pid=\"0D\",quantile=\"0.5\"}"));
+			Assert.assertTrue(body.contains("obdig_session_time_to_first_sample_seconds{" + labels + "}"));
+			Assert.assertTrue(body.contains("obdig_session_response_queue_depth{" + labels + "} 0\n"));
+			
+			instrumentation.onSessionStopped(session);
+			body = scrape(exporter);
+			Assert.assertTrue(body.contains("obdig_sessions_active 0\n"));
+			Assert.assertTrue(body.contains("obdig_samples_total 3\n"));
+		} finally {
+			exporter.stop();
+		}
+		
+		Assert.assertTrue(!InstrumentationProvider.get().isEnabled());
+	}
+	
+	private String scrape(MetricsExporter exporter) throws Exception {
+		URL url = new URL("http://127.0.0.1:" + exporter.getAddress().getPort() + MetricsExporter.PATH);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		Assert.assertTrue(connection.getResponseCode() == 200);
+		
+		StringBuilder result = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			result.append(line).append('\n');
+		}
+		reader.close();
+		return result.toString();
+	}
+	
+}
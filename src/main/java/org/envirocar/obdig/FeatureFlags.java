@@ -35,6 +35,50 @@ public class FeatureFlags {
 	 * use PID supported query to identify 
 	 */
 	public static final String PID_SUPPORTED_KEY = "USE_PID_SUPPORTED";
+	
+	/**
+	 * enable headers to demultiplex responses of several ECUs 
+	 */
+	public static final String HEADERS_KEY = "USE_HEADERS";
+	
+	/**
+	 * signal descriptors (see SignalDefinition) to passively monitor
+	 * the CAN bus instead of polling PIDs
+	 */
+	public static final String CAN_MONITOR_SIGNALS_KEY = "CAN_MONITOR_SIGNALS";
+	
+	/**
+	 * sample the discovered O2 sensors every n-th request cycle
+	 */
+	public static final String O2_SENSOR_SAMPLING_INTERVAL_KEY = "O2_SENSOR_SAMPLING_INTERVAL";
+	
+	/**
+	 * file with additional Mode 01 PID definitions (see PIDRegistry)
+	 */
+	public static final String PID_DEFINITIONS_KEY = "PID_DEFINITIONS";
+	
+	/**
+	 * comma separated HEX PIDs to request in addition to the defaults
+	 * (e.g. "5C,46")
+	 */
+	public static final String REQUESTED_PIDS_KEY = "REQUESTED_PIDS";
+	private static final String[] NO_PIDS = new String[0];
+	
+	/**
+	 * directory to record the raw adapter traffic to (see CaptureLog)
+	 */
+	public static final String CAPTURE_DIRECTORY_KEY = "CAPTURE_DIRECTORY";
+	
+	/**
+	 * the number of frames kept for failure analysis, 0 to disable
+	 */
+	public static final String FRAME_TRACE_SIZE_KEY = "FRAME_TRACE_SIZE";
+	
+	/**
+	 * use the preferred request period of the connector instead of
+	 * adapting it to the link (see PacingController)
+	 */
+	public static final String FIXED_REQUEST_PERIOD_KEY = "FIXED_REQUEST_PERIOD";
 	private static Properties prefs = new Properties();
 	
 	public static void init(Properties p) {
@@ -45,6 +89,106 @@ public class FeatureFlags {
 		return getFlagValue(PID_SUPPORTED_KEY);
 	}
 
+	public static boolean useHeaders() {
+		return getFlagValue(HEADERS_KEY);
+	}
+
+	public static boolean useFixedRequestPeriod() {
+		return getFlagValue(FIXED_REQUEST_PERIOD_KEY);
+	}
+
+	/**
+	 * @return the configured CAN monitor signal descriptors or null
+	 */
+	public static String getCANMonitorSignals() {
+		if (prefs == null) {
+			return null;
+		}
+		return prefs.getProperty(CAN_MONITOR_SIGNALS_KEY);
+	}
+
+	/**
+	 * @return the configured O2 sensor sampling interval in request
+	 * cycles, 1 (every cycle) by default
+	 */
+	public static int getO2SensorSamplingInterval() {
+		if (prefs == null) {
+			return 1;
+		}
+		
+		String value = prefs.getProperty(O2_SENSOR_SAMPLING_INTERVAL_KEY);
+		if (value == null) {
+			return 1;
+		}
+		
+		try {
+			return Math.max(1, Integer.parseInt(value.trim()));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * @return the configured frame trace size, 128 by default
+	 */
+	public static int getFrameTraceSize() {
+		int defaultSize = 128;
+		if (prefs == null) {
+			return defaultSize;
+		}
+		
+		String value = prefs.getProperty(FRAME_TRACE_SIZE_KEY);
+		if (value == null) {
+			return defaultSize;
+		}
+		
+		try {
+			return Math.max(0, Integer.parseInt(value.trim()));
+		} catch (NumberFormatException e) {
+			return defaultSize;
+		}
+	}
+	
+	/**
+	 * @return the directory for traffic captures or null if disabled
+	 */
+	public static String getCaptureDirectory() {
+		if (prefs == null) {
+			return null;
+		}
+		return prefs.getProperty(CAPTURE_DIRECTORY_KEY);
+	}
+	
+	/**
+	 * @return the path of the additional PID definitions or null
+	 */
+	public static String getPIDDefinitionsPath() {
+		if (prefs == null) {
+			return null;
+		}
+		return prefs.getProperty(PID_DEFINITIONS_KEY);
+	}
+	
+	/**
+	 * @return the additionally requested PIDs, never null
+	 */
+	public static String[] getRequestedPIDs() {
+		if (prefs == null) {
+			return NO_PIDS;
+		}
+		
+		String value = prefs.getProperty(REQUESTED_PIDS_KEY);
+		if (value == null || value.trim().isEmpty()) {
+			return NO_PIDS;
+		}
+		
+		String[] result = value.split(",");
+		for (int i = 0; i < result.length; i++) {
+			result[i] = result[i].trim();
+		}
+		return result;
+	}
+
 	private static boolean getFlagValue(String s) {
 		if (prefs == null) {
 			return false;
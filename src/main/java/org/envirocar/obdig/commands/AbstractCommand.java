@@ -64,6 +64,7 @@ public abstract class AbstractCommand {
 	private Long commandId;
 	private CommonCommandState commandState = CommonCommandState.NEW;
 	private long resultTime;
+	private String sourceECU;
 	
 	private byte[] command;
 
@@ -123,6 +124,18 @@ public abstract class AbstractCommand {
 	public long getResultTime() {
 		return resultTime;
 	}
+	
+	/**
+	 * @return the ID of the ECU which provided the response (e.g. 7E8),
+	 * or null if the response did not carry headers
+	 */
+	public String getSourceECU() {
+		return sourceECU;
+	}
+
+	public void setSourceECU(String sourceECU) {
+		this.sourceECU = sourceECU;
+	}
 
 	public byte[] getOutgoingBytes() {
 		if (this.command != null) {
@@ -30,9 +30,11 @@ public abstract class NumberResultCommand extends AbstractCommand {
 
 	private static final CharSequence SEARCHING = "SEARCHING";
 	private static final CharSequence STOPPED = "STOPPED";
+	private static final CharSequence BUFFER_FULL = "BUFFERFULL";
 	private static final CharSequence NODATA = "NODATA";
 	
 	static final String STATUS_OK = "41";
+	private static final byte[] HEX_CHARS = "0123456789ABCDEF".getBytes();
 	
 	private int[] buffr;
 	private byte[] rawData;
@@ -49,6 +51,10 @@ public abstract class NumberResultCommand extends AbstractCommand {
 			setCommandState(CommonCommandState.SEARCHING);
 			return;
 		}
+		else if (isOverloaded(dataString)) {
+			setCommandState(CommonCommandState.QUEUE_ERROR);
+			return;
+		}
 		else if (isNoDataCommand(dataString)) {
 			setCommandState(CommonCommandState.EXECUTION_ERROR);
 			return;
@@ -87,14 +93,53 @@ public abstract class NumberResultCommand extends AbstractCommand {
 		setCommandState(CommonCommandState.FINISHED);
 	}
 	
+	/**
+	 * Set the result from binary data bytes, as provided by adapters which
+	 * do not use HEX encoding. This is equivalent to parsing the HEX
+	 * response "41" + PID + data, but does not create intermediate objects.
+	 * 
+	 * @param data the buffer holding the data bytes
+	 * @param start the index of the first data byte
+	 * @param count the number of data bytes
+	 */
+	public void parseBinaryData(byte[] data, int start, int count) {
+		this.rawData = null;
+		buffr = new int[count + 2];
+		buffr[0] = 0x41;
+		buffr[1] = Integer.parseInt(getPIDAsString(), 16);
+		for (int i = 0; i < count; i++) {
+			buffr[i + 2] = data[start + i] & 0xff;
+		}
+		
+		setCommandState(CommonCommandState.FINISHED);
+	}
+	
 	public abstract Number getNumberResult();
 
 	public int[] getBuffer() {
 		return buffr;
 	}
 	
+	/**
+	 * @return true if the ECU did not respond within the timeout of
+	 * the adapter (NO DATA)
+	 */
+	public boolean isNoData() {
+		return getCommandState() == CommonCommandState.EXECUTION_ERROR && rawData != null
+				&& isNoDataCommand(new String(rawData));
+	}
+	
 	private boolean isSearching(String dataString) {
-		return dataString.contains(SEARCHING) || dataString.contains(STOPPED);
+		return dataString.contains(SEARCHING);
+	}
+	
+	/**
+	 * the adapter could not keep up: its buffer ran full or the
+	 * request was interrupted by the next one (spaces are ignored
+	 * while reading, hence BUFFERFULL)
+	 */
+	private boolean isOverloaded(String dataString) {
+		return dataString.contains(BUFFER_FULL) || dataString.contains(STOPPED);
 	}
 	
 	private boolean isNoDataCommand(String dataString) {
@@ -103,6 +148,17 @@ public abstract class NumberResultCommand extends AbstractCommand {
 	
 	@Override
 	public byte[] getRawData() {
+		if (this.rawData == null && this.buffr != null) {
+			/*
+			 * created from binary data, encode on demand
+			 */
+			byte[] result = new byte[buffr.length * 2];
+			for (int i = 0; i < buffr.length; i++) {
+				result[i * 2] = HEX_CHARS[(buffr[i] >> 4) & 0x0f];
+				result[i * 2 + 1] = HEX_CHARS[buffr[i] & 0x0f];
+			}
+			this.rawData = result;
+		}
 		return this.rawData;
 	}
 	
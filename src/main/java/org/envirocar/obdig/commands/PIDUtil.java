@@ -30,12 +30,16 @@ import org.envirocar.obdig.commands.numeric.EngineLoad;
 import org.envirocar.obdig.commands.numeric.FuelPressure;
 import org.envirocar.obdig.commands.numeric.IntakePressure;
 import org.envirocar.obdig.commands.numeric.IntakeTemperature;
+import org.envirocar.obdig.commands.numeric.LongTermTrimBank1;
 import org.envirocar.obdig.commands.numeric.MAF;
 import org.envirocar.obdig.commands.numeric.O2LambdaProbe;
+import org.envirocar.obdig.commands.numeric.O2SensorsPresent;
 import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.commands.numeric.ShortTermTrimBank1;
 import org.envirocar.obdig.commands.numeric.Speed;
 import org.envirocar.obdig.commands.numeric.TPS;
 import org.envirocar.obdig.commands.raw.FuelSystemStatus;
+import org.envirocar.obdig.commands.registry.PIDRegistry;
 
 public class PIDUtil {
 
@@ -53,6 +57,18 @@ public class PIDUtil {
 				return "04";
 			}
 		},
+		SHORT_TERM_FUEL_TRIM_BANK_1 {
+			@Override
+			public String toString() {
+				return "06";
+			}
+		},
+		LONG_TERM_FUEL_TRIM_BANK_1 {
+			@Override
+			public String toString() {
+				return "07";
+			}
+		},
 		FUEL_PRESSURE {
 			@Override
 			public String toString() {
@@ -95,6 +111,18 @@ public class PIDUtil {
 				return "11";
 			}
 		},
+		O2_SENSORS_PRESENT {
+			@Override
+			public String toString() {
+				return "13";
+			}
+		},
+		O2_SENSORS_PRESENT_4_BANKS {
+			@Override
+			public String toString() {
+				return "1D";
+			}
+		},
 		O2_LAMBDA_PROBE_1_VOLTAGE {
 			@Override
 			public String toString() {
@@ -184,29 +212,59 @@ public class PIDUtil {
 		}
 	}
 
-	public static PID fromString(String s) {
-		if (s == null || s.isEmpty()) return null;
-		
+	private static final PID[] PIDS_BY_BYTE = new PID[0x100];
+	
+	static {
 		for (PID p : PID.values()) {
-			if (s.equalsIgnoreCase(p.toString())) {
-				return p;
-			}
+			PIDS_BY_BYTE[toPIDByte(p.toString())] = p;
 		}
+	}
+	
+	public static PID fromString(String s) {
+		int pid = toPIDByte(s);
+		return pid < 0 ? null : PIDS_BY_BYTE[pid];
+	}
+	
+	/**
+	 * @param s the PID as a HEX string (e.g. "0C")
+	 * @return the PID byte, or -1 if the string is not a PID
+	 */
+	public static int toPIDByte(String s) {
+		if (s == null || s.length() != 2) return -1;
 		
-		return null;
+		int high = Character.digit(s.charAt(0), 16);
+		int low = Character.digit(s.charAt(1), 16);
+		if (high < 0 || low < 0) return -1;
+		
+		return (high << 4) | low;
 	}
 
-	
+	/**
+	 * @param pid the PID as a HEX string
+	 * @return a command for one of the known PIDs or, for other PIDs,
+	 * a command decoding the definition of the {@link PIDRegistry}.
+	 * null if the PID is unknown or not decodable.
+	 */
 	public static AbstractCommand instantiateCommand(String pid) {
-		return instantiateCommand(fromString(pid));
+		PID known = fromString(pid);
+		if (known != null) {
+			return instantiateCommand(known);
+		}
+		return PIDRegistry.getDefault().createCommand(toPIDByte(pid));
 	}
 	
 	public static AbstractCommand instantiateCommand(PID pid) {
+		if (pid == null) return null;
+		
 		switch (pid) {
 		case FUEL_SYSTEM_STATUS:
 			return new FuelSystemStatus();
 		case CALCULATED_ENGINE_LOAD:
 			return new EngineLoad();
+		case SHORT_TERM_FUEL_TRIM_BANK_1:
+			return new ShortTermTrimBank1();
+		case LONG_TERM_FUEL_TRIM_BANK_1:
+			return new LongTermTrimBank1();
 		case FUEL_PRESSURE:
 			return new FuelPressure();
 		case INTAKE_MAP:
@@ -237,6 +295,18 @@ public class PIDUtil {
 			return O2LambdaProbe.fromPIDEnum(pid);
 		case O2_LAMBDA_PROBE_8_VOLTAGE:
 			return O2LambdaProbe.fromPIDEnum(pid);
+		case O2_LAMBDA_PROBE_1_CURRENT:
+		case O2_LAMBDA_PROBE_2_CURRENT:
+		case O2_LAMBDA_PROBE_3_CURRENT:
+		case O2_LAMBDA_PROBE_4_CURRENT:
+		case O2_LAMBDA_PROBE_5_CURRENT:
+		case O2_LAMBDA_PROBE_6_CURRENT:
+		case O2_LAMBDA_PROBE_7_CURRENT:
+		case O2_LAMBDA_PROBE_8_CURRENT:
+			return O2LambdaProbe.fromPIDEnum(pid);
+		case O2_SENSORS_PRESENT:
+		case O2_SENSORS_PRESENT_4_BANKS:
+			return new O2SensorsPresent(pid);
 		default:
 			return null;
 		}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.elm327;
+
+
+/**
+ * Sets the adaptive timing mode of the adapter (AT AT0, AT AT1 or AT AT2).
+ * With adaptive timing enabled, the adapter lowers the time it waits
+ * for an ECU response below the value set by {@link Timeout}.
+ */
+public class AdaptiveTiming extends ELM327Command {
+
+	private String typeId;
+
+	/**
+	 * @param mode 0 (off), 1 (normal) or 2 (aggressive)
+	 */
+	public AdaptiveTiming(int mode) {
+		if (mode < 0 || mode > 2) {
+			throw new IllegalArgumentException("mode must be 0, 1 or 2");
+		}
+		this.typeId = "AT" + mode;
+	}
+
+	@Override
+	public String getCommandName() {
+		return "Adaptive Timing";
+	}
+
+	@Override
+	public String getPIDAsString() {
+		return this.typeId;
+	}
+
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.elm327;
+
+
+/**
+ * Tries a new baud rate, given as divisor of 4 MBaud. The adapter
+ * answers "OK", sends its ID at the new rate and keeps the rate
+ * only if the host replies with a carriage return in time.
+ */
+public class BaudRateDivisor extends ELM327Command {
+
+	private static final int BASE_RATE = 4000000;
+	private String typeId;
+
+	/**
+	 * @param baudRate the new baud rate (e.g. 500000)
+	 */
+	public BaudRateDivisor(int baudRate) {
+		String divisor = Integer.toHexString(Math.min(0xFF, Math.max(8, BASE_RATE / baudRate)));
+		this.typeId = "BRD " + (divisor.length() == 1 ? "0" + divisor : divisor);
+	}
+
+	@Override
+	public String getCommandName() {
+		return "Baud Rate Divisor";
+	}
+
+	@Override
+	public String getPIDAsString() {
+		return this.typeId;
+	}
+
+	@Override
+	public boolean awaitsResults() {
+		return false;
+	}
+	
+}
@@ -28,16 +28,12 @@ package org.envirocar.obdig.commands.elm327;
 
 
 /**
- * This method will reset the OBD connection.
+ * This method will reset the OBD connection. The adapter reboots and
+ * responds with its ID and the prompt, so the response is awaited
+ * before further commands are sent.
  */
 public class ObdReset extends ELM327Command {
 
-	@Override
-	public boolean awaitsResults() {
-		return false;
-	}
-
-
 	@Override
 	public String getCommandName() {
 		return "Reset OBD";
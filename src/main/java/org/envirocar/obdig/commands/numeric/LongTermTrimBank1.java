@@ -27,6 +27,7 @@
 package org.envirocar.obdig.commands.numeric;
 
 import org.envirocar.obdig.commands.NumberResultCommand;
+import org.envirocar.obdig.commands.PIDUtil.PID;
 
 /**
  * Long Term Fuel Trim (Cylinder) Bank 1 (PID 01 07)
@@ -56,7 +57,7 @@ public class LongTermTrimBank1 extends NumberResultCommand {
 
 	@Override
 	public String getPIDAsString() {
-		return "07";
+		return PID.LONG_TERM_FUEL_TRIM_BANK_1.toString();
 	}
 
 }
\ No newline at end of file
@@ -94,6 +94,16 @@ public abstract class O2LambdaProbe extends NumberResultCommand {
 	@Override
 	public void parseRawData(byte[] data) {
 		super.parseRawData(data);
+		validateBuffer();
+	}
+	
+	@Override
+	public void parseBinaryData(byte[] data, int start, int count) {
+		super.parseBinaryData(data, start, count);
+		validateBuffer();
+	}
+
+	private void validateBuffer() {
 		if (getBuffer() == null || getBuffer().length < 6) {
 			setCommandState(CommonCommandState.EXECUTION_ERROR);
 			logger.warn("The response did not contain the correct expected count: "+
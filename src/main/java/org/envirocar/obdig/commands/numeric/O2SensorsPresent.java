@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.numeric;
+
+import org.envirocar.obdig.commands.NumberResultCommand;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+
+/**
+ * Oxygen sensors present on PID 01 13 (two banks) or 01 1D (four banks).
+ * Bit n of the result is set if sensor n+1 is present, which matches
+ * the numbering of the O2 sensor PIDs 24-2B and 34-3B.
+ */
+public class O2SensorsPresent extends NumberResultCommand {
+
+	private final PID pid;
+	private int value = Short.MIN_VALUE;
+
+	public O2SensorsPresent() {
+		this(PID.O2_SENSORS_PRESENT);
+	}
+	
+	/**
+	 * @param pid either {@link PID#O2_SENSORS_PRESENT} or
+	 * {@link PID#O2_SENSORS_PRESENT_4_BANKS}
+	 */
+	public O2SensorsPresent(PID pid) {
+		if (pid != PID.O2_SENSORS_PRESENT && pid != PID.O2_SENSORS_PRESENT_4_BANKS) {
+			throw new IllegalArgumentException("pid must be an O2 sensors present PID!");
+		}
+		this.pid = pid;
+	}
+	
+	@Override
+	public String getCommandName() {
+		return "O2 Sensors Present";
+	}
+
+	/**
+	 * @return the bitmask of the present sensors
+	 */
+	@Override
+	public Number getNumberResult() {
+		if (value == Short.MIN_VALUE) {
+			int[] buffer = getBuffer();
+			if (buffer == null || buffer.length < 3) {
+				return null;
+			}
+			value = buffer[2] & 0xFF;
+		}
+		return value;
+	}
+	
+	/**
+	 * @param sensor the index of the sensor (0 to 7)
+	 * @return true if the sensor is present
+	 */
+	public boolean isPresent(int sensor) {
+		Number mask = getNumberResult();
+		return mask != null && ((mask.intValue() >> sensor) & 1) == 1;
+	}
+
+	@Override
+	public String getPIDAsString() {
+		return pid.toString();
+	}
+
+}
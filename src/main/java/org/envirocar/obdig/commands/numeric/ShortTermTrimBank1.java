@@ -27,6 +27,7 @@
 package org.envirocar.obdig.commands.numeric;
 
 import org.envirocar.obdig.commands.NumberResultCommand;
+import org.envirocar.obdig.commands.PIDUtil.PID;
 
 /**
  * Short Term Trim (Cylinder) Bank 1, PID 01 06
@@ -56,7 +57,7 @@ public class ShortTermTrimBank1 extends NumberResultCommand {
 
 	@Override
 	public String getPIDAsString() {
-		return "06";
+		return PID.SHORT_TERM_FUEL_TRIM_BANK_1.toString();
 	}
 
 }
\ No newline at end of file
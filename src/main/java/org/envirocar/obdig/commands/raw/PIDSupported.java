@@ -69,6 +69,7 @@ public class PIDSupported extends AbstractCommand {
 	public Set<PID> getSupportedPIDs() {
 		if (pids == null) {
 			pids = new HashSet<PID>();
+			int offset = getGroupOffset();
 			
 			for (int i = 0; i < bytes.length; i++) {
 				int current = bytes[i];
@@ -79,7 +80,7 @@ public class PIDSupported extends AbstractCommand {
 						/*
 						 * we are starting at PID 01 and not 00
 						 */
-						PID pid = PIDUtil.fromString(createHex(i*4 + (3-bit) + 1));
+						PID pid = PIDUtil.fromString(createHex(offset + i*4 + (3-bit) + 1));
 						if (pid != null) {
 							pids.add(pid);
 						}
@@ -93,6 +94,28 @@ public class PIDSupported extends AbstractCommand {
 	}
 
 
+	/**
+	 * @param pid the PID byte
+	 * @return true if the PID is part of this group and reported
+	 * as supported
+	 */
+	public boolean isSupported(int pid) {
+		if (bytes == null || getCommandState() != CommonCommandState.FINISHED) {
+			return false;
+		}
+		
+		int index = pid - getGroupOffset() - 1;
+		if (index < 0 || index >= bytes.length * 4) {
+			return false;
+		}
+		
+		return ((bytes[index / 4] >> (3 - index % 4)) & 1) == 1;
+	}
+	
+	private int getGroupOffset() {
+		return Integer.parseInt(group, 16);
+	}
+
 	private String createHex(int i) {
 		String result = Integer.toString(i, 16);
 		if (result.length() == 1) result = "0".concat(result);
@@ -154,8 +177,9 @@ public class PIDSupported extends AbstractCommand {
 
 	private byte[] preprocessRawData(byte[] data) {
 		String str = new String(data);
-		if (str.contains("4100")) {
-			int index = str.indexOf("4100");
+		String prefix = "41".concat(group);
+		if (str.contains(prefix)) {
+			int index = str.indexOf(prefix);
 			return Arrays.copyOfRange(data, index, data.length);
 		}
 		return data;
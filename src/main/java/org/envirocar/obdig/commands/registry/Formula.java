@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.registry;
+
+/**
+ * A decoding formula of a Mode 01 PID, compiled from its textual form
+ * (e.g. <code>(256*A+B)/4</code>) into a tree of primitive evaluators.
+ * Evaluating it neither allocates nor boxes.
+ * <p>
+ * Supported are the data bytes <code>A</code> to <code>D</code>, decimal
+ * numbers, <code>+ - * /</code>, parentheses and the functions
+ * <code>s8(x)</code> and <code>s16(x)</code> which interpret an unsigned
+ * value as two's complement.
+ */
+public abstract class Formula {
+
+	/**
+	 * @param data the response bytes
+	 * @param offset the index of data byte A
+	 * @return the decoded value
+	 */
+	public abstract double evaluate(int[] data, int offset);
+	
+	/**
+	 * @return the number of the highest data byte used (1 for A)
+	 */
+	public abstract int getRequiredByteCount();
+	
+	/**
+	 * @param expression the formula
+	 * @return the compiled formula
+	 * @throws IllegalArgumentException if the expression is malformed
+	 */
+	public static Formula compile(String expression) {
+		if (expression == null) {
+			throw new IllegalArgumentException("expression must not be null!");
+		}
+		return new Parser(expression).parse();
+	}
+	
+	boolean isConstant() {
+		return false;
+	}
+	
+	private static class Constant extends Formula {
+		
+		private final double value;
+		
+		Constant(double value) {
+			this.value = value;
+		}
+		
+		@Override
+		public double evaluate(int[] data, int offset) {
+			return value;
+		}
+		
+		@Override
+		public int getRequiredByteCount() {
+			return 0;
+		}
+		
+		@Override
+		boolean isConstant() {
+			return true;
+		}
+	}
+	
+	private static class DataByte extends Formula {
+		
+		private final int index;
+		
+		DataByte(int index) {
+			this.index = index;
+		}
+		
+		@Override
+		public double evaluate(int[] data, int offset) {
+			return data[offset + index];
+		}
+		
+		@Override
+		public int getRequiredByteCount() {
+			return index + 1;
+		}
+	}
+	
+	private static class Operation extends Formula {
+		
+		private final char operator;
+		private final Formula left;
+		private final Formula right;
+		
+		Operation(char operator, Formula left, Formula right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		public double evaluate(int[] data, int offset) {
+			double l = left.evaluate(data, offset);
+			double r = right.evaluate(data, offset);
+			switch (operator) {
+			case '+':
+				return l + r;
+			case '-':
+				return l - r;
+			case '*':
+				return l * r;
+			default:
+				return l / r;
+			}
+		}
+		
+		@Override
+		public int getRequiredByteCount() {
+			return Math.max(left.getRequiredByteCount(), right.getRequiredByteCount());
+		}
+	}
+	
+	private static class Signed extends Formula {
+		
+		private final Formula operand;
+		private final double range;
+		
+		Signed(Formula operand, int bits) {
+			this.operand = operand;
+			this.range = 1 << bits;
+		}
+		
+		@Override
+		public double evaluate(int[] data, int offset) {
+			double value = operand.evaluate(data, offset);
+			return value >= range / 2 ? value - range : value;
+		}
+		
+		@Override
+		public int getRequiredByteCount() {
+			return operand.getRequiredByteCount();
+		}
+	}
+	
+	/**
+	 * recursive descent parser, folding constant sub-expressions
+	 */
+	private static class Parser {
+		
+		private final String expression;
+		private int position;
+		
+		Parser(String expression) {
+			this.expression = expression;
+		}
+		
+		Formula parse() {
+			Formula result = parseSum();
+			skipWhitespace();
+			if (position != expression.length()) {
+				throw error("Unexpected character");
+			}
+			return result;
+		}
+		
+		private Formula parseSum() {
+			Formula result = parseProduct();
+			while (true) {
+				char c = peek();
+				if (c != '+' && c != '-') {
+					return result;
+				}
+				position++;
+				result = combine(c, result, parseProduct());
+			}
+		}
+		
+		private Formula parseProduct() {
+			Formula result = parseFactor();
+			while (true) {
+				char c = peek();
+				if (c != '*' && c != '/') {
+					return result;
+				}
+				position++;
+				result = combine(c, result, parseFactor());
+			}
+		}
+		
+		private Formula parseFactor() {
+			char c = peek();
+			if (c == '-') {
+				position++;
+				return combine('-', new Constant(0), parseFactor());
+			}
+			if (c == '(') {
+				position++;
+				Formula result = parseSum();
+				expect(')');
+				return result;
+			}
+			if (c >= 'A' && c <= 'D') {
+				position++;
+				return new DataByte(c - 'A');
+			}
+			if (expression.startsWith("s8(", position) || expression.startsWith("s16(", position)) {
+				int bits = expression.charAt(position + 1) == '8' ? 8 : 16;
+				position = expression.indexOf('(', position) + 1;
+				Formula operand = parseSum();
+				expect(')');
+				return new Signed(operand, bits);
+			}
+			if ((c >= '0' && c <= '9') || c == '.') {
+				int start = position;
+				while (position < expression.length() &&
+						(Character.isDigit(expression.charAt(position)) || expression.charAt(position) == '.')) {
+					position++;
+				}
+				try {
+					return new Constant(Double.parseDouble(expression.substring(start, position)));
+				} catch (NumberFormatException e) {
+					throw error("Invalid number");
+				}
+			}
+			throw error("Unexpected character");
+		}
+		
+		private Formula combine(char operator, Formula left, Formula right) {
+			Formula result = new Operation(operator, left, right);
+			if (left.isConstant() && right.isConstant()) {
+				return new Constant(result.evaluate(null, 0));
+			}
+			return result;
+		}
+		
+		private void expect(char c) {
+			if (peek() != c) {
+				throw error("Expected '"+c+"'");
+			}
+			position++;
+		}
+		
+		private char peek() {
+			skipWhitespace();
+			return position < expression.length() ? expression.charAt(position) : 0;
+		}
+		
+		private void skipWhitespace() {
+			while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+				position++;
+			}
+		}
+		
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message+" at position "+position+" of formula: "+expression);
+		}
+	}
+	
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.registry;
+
+/**
+ * Describes a Mode 01 PID: its data byte count, the decoding formula,
+ * the unit and the valid range of the decoded value.
+ */
+public class PIDDefinition {
+
+	private final int pid;
+	private final String pidString;
+	private final String name;
+	private final int byteCount;
+	private final Formula formula;
+	private final String unit;
+	private final double minimum;
+	private final double maximum;
+
+	/**
+	 * @param pid the PID byte
+	 * @param name the name of the PID
+	 * @param byteCount the number of data bytes of a response
+	 * @param formula the compiled formula, or null if the PID is not
+	 * decodable into a single number (e.g. bit-encoded)
+	 * @param unit the unit of the decoded value, may be empty
+	 * @param minimum the minimum valid value
+	 * @param maximum the maximum valid value
+	 */
+	public PIDDefinition(int pid, String name, int byteCount, Formula formula,
+			String unit, double minimum, double maximum) {
+		if (pid < 0 || pid > 0xFF) {
+			throw new IllegalArgumentException("pid must be a byte value!");
+		}
+		if (name == null) {
+			throw new IllegalArgumentException("name must not be null!");
+		}
+		if (formula != null && formula.getRequiredByteCount() > byteCount) {
+			throw new IllegalArgumentException("formula of PID "+pid+" uses more than "+byteCount+" bytes!");
+		}
+		this.pid = pid;
+		this.pidString = (pid < 0x10 ? "0" : "").concat(Integer.toHexString(pid).toUpperCase());
+		this.name = name;
+		this.byteCount = byteCount;
+		this.formula = formula;
+		this.unit = unit == null ? "" : unit;
+		this.minimum = minimum;
+		this.maximum = maximum;
+	}
+
+	public int getPID() {
+		return pid;
+	}
+
+	/**
+	 * @return the PID as used on the wire (e.g. "0C")
+	 */
+	public String getPIDAsString() {
+		return pidString;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * @return the formula, or null if the PID is not decodable
+	 */
+	public Formula getFormula() {
+		return formula;
+	}
+	
+	public boolean isDecodable() {
+		return formula != null;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public double getMinimum() {
+		return minimum;
+	}
+
+	public double getMaximum() {
+		return maximum;
+	}
+	
+	/**
+	 * @param value a decoded value
+	 * @return true if the value lies within the valid range
+	 */
+	public boolean isInRange(double value) {
+		return value >= minimum && value <= maximum;
+	}
+	
+	@Override
+	public String toString() {
+		return pidString +" "+ name;
+	}
+	
+}
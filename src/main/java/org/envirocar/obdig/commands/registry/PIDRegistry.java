@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.registry;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.envirocar.obdig.FeatureFlags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Table of the Mode 01 PIDs, indexed by the PID byte. The built-in
+ * definitions (SAE J1979) are read from <code>mode01.csv</code>; further
+ * PIDs can be added or overridden by a file referenced by
+ * {@link FeatureFlags#PID_DEFINITIONS_KEY}.
+ * <p>
+ * A line holds <code>PID;name;bytes;formula;unit;min;max</code>. A
+ * formula of <code>-</code> marks a PID which is not decodable into a
+ * single number (e.g. bit-encoded). Lines starting with <code>#</code>
+ * are ignored.
+ */
+public class PIDRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(PIDRegistry.class);
+	private static final String DEFAULT_DEFINITIONS = "mode01.csv";
+	private static final String NOT_DECODABLE = "-";
+	private static final int COLUMN_COUNT = 7;
+	private static PIDRegistry defaultInstance;
+	
+	private final PIDDefinition[] definitions = new PIDDefinition[0x100];
+
+	/**
+	 * @return the registry holding the built-in and the configured definitions
+	 */
+	public static synchronized PIDRegistry getDefault() {
+		if (defaultInstance == null) {
+			PIDRegistry registry = new PIDRegistry();
+			InputStream in = PIDRegistry.class.getResourceAsStream(DEFAULT_DEFINITIONS);
+			if (in == null) {
+				throw new IllegalStateException("Built-in PID definitions not found: "+DEFAULT_DEFINITIONS);
+			}
+			try {
+				registry.load(new InputStreamReader(in, "UTF-8"));
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read the built-in PID definitions", e);
+			} finally {
+				close(in);
+			}
+			
+			String path = FeatureFlags.getPIDDefinitionsPath();
+			if (path != null) {
+				InputStream custom = null;
+				try {
+					custom = new FileInputStream(path);
+					registry.load(new InputStreamReader(custom, "UTF-8"));
+				} catch (IOException e) {
+					logger.warn("Could not read PID definitions from "+path, e);
+				} catch (IllegalArgumentException e) {
+					logger.warn("Invalid PID definitions in "+path, e);
+				} finally {
+					close(custom);
+				}
+			}
+			
+			defaultInstance = registry;
+		}
+		return defaultInstance;
+	}
+	
+	/**
+	 * reads definitions, replacing the existing ones of the same PIDs
+	 * 
+	 * @param reader the definitions
+	 * @throws IOException if the reader failed
+	 * @throws IllegalArgumentException if a line is malformed
+	 */
+	public void load(Reader reader) throws IOException {
+		BufferedReader br = new BufferedReader(reader);
+		List<PIDDefinition> parsed = new ArrayList<PIDDefinition>();
+		String line;
+		int lineNumber = 0;
+		while ((line = br.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			
+			try {
+				parsed.add(parseDefinition(line));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Line "+lineNumber+": "+e.getMessage(), e);
+			}
+		}
+		
+		for (PIDDefinition def : parsed) {
+			register(def);
+		}
+	}
+
+	private PIDDefinition parseDefinition(String line) {
+		String[] columns = line.split(";", -1);
+		if (columns.length != COLUMN_COUNT) {
+			throw new IllegalArgumentException("Expected "+COLUMN_COUNT+" columns");
+		}
+		
+		try {
+			int pid = Integer.parseInt(columns[0].trim(), 16);
+			int byteCount = Integer.parseInt(columns[2].trim());
+			String formula = columns[3].trim();
+			if (NOT_DECODABLE.equals(formula)) {
+				return new PIDDefinition(pid, columns[1].trim(), byteCount, null,
+						columns[4].trim(), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+			}
+			
+			return new PIDDefinition(pid, columns[1].trim(), byteCount, Formula.compile(formula),
+					columns[4].trim(), Double.parseDouble(columns[5].trim()),
+					Double.parseDouble(columns[6].trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number: "+e.getMessage(), e);
+		}
+	}
+	
+	public synchronized void register(PIDDefinition definition) {
+		definitions[definition.getPID()] = definition;
+	}
+
+	/**
+	 * @param pid the PID byte
+	 * @return the definition, or null if the PID is unknown
+	 */
+	public PIDDefinition get(int pid) {
+		if (pid < 0 || pid >= definitions.length) {
+			return null;
+		}
+		return definitions[pid];
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @return a request command for the PID, or null if the PID is
+	 * unknown or not decodable
+	 */
+	public RegisteredPIDCommand createCommand(int pid) {
+		PIDDefinition def = get(pid);
+		if (def == null || !def.isDecodable()) {
+			return null;
+		}
+		return new RegisteredPIDCommand(def);
+	}
+	
+	private static void close(InputStream in) {
+		if (in == null) {
+			return;
+		}
+		try {
+			in.close();
+		} catch (IOException e) {
+			logger.warn(e.getMessage(), e);
+		}
+	}
+	
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.registry;
+
+import org.envirocar.obdig.commands.NumberResultCommand;
+
+/**
+ * A Mode 01 request for a PID of the {@link PIDRegistry}. The response
+ * is decoded with the compiled formula of its definition.
+ */
+public class RegisteredPIDCommand extends NumberResultCommand {
+
+	private static final int DATA_OFFSET = 2;
+	private final PIDDefinition definition;
+	private double value = Double.NaN;
+
+	public RegisteredPIDCommand(PIDDefinition definition) {
+		if (definition == null || !definition.isDecodable()) {
+			throw new IllegalArgumentException("definition must be decodable!");
+		}
+		this.definition = definition;
+	}
+	
+	@Override
+	public void parseRawData(byte[] data) {
+		super.parseRawData(data);
+		validate();
+	}
+	
+	@Override
+	public void parseBinaryData(byte[] data, int start, int count) {
+		super.parseBinaryData(data, start, count);
+		validate();
+	}
+	
+	private void validate() {
+		if (getCommandState() != CommonCommandState.FINISHED) {
+			return;
+		}
+		
+		int[] buffer = getBuffer();
+		if (buffer == null || buffer.length < DATA_OFFSET + definition.getByteCount()) {
+			setCommandState(CommonCommandState.EXECUTION_ERROR);
+			return;
+		}
+		
+		value = definition.getFormula().evaluate(buffer, DATA_OFFSET);
+		if (!definition.isInRange(value)) {
+			setCommandState(CommonCommandState.EXECUTION_ERROR);
+		}
+	}
+
+	/**
+	 * @return the decoded value, or NaN if no valid response was parsed
+	 */
+	public double getValue() {
+		return getCommandState() == CommonCommandState.FINISHED ? value : Double.NaN;
+	}
+	
+	@Override
+	public Number getNumberResult() {
+		double result = getValue();
+		return Double.isNaN(result) ? null : Double.valueOf(result);
+	}
+	
+	public PIDDefinition getDefinition() {
+		return definition;
+	}
+
+	@Override
+	public String getCommandName() {
+		return definition.getName();
+	}
+
+	@Override
+	public String getPIDAsString() {
+		return definition.getPIDAsString();
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.stn;
+
+
+/**
+ * Adds a pass filter for frames matching the pattern/mask pair.
+ * Unlike the ELM327 filter, several filters can be combined.
+ */
+public class STNAddPassFilter extends STNCommand {
+
+	private String typeId;
+
+	/**
+	 * @param pattern the ID pattern as HEX string
+	 * @param mask the ID mask as HEX string
+	 */
+	public STNAddPassFilter(String pattern, String mask) {
+		this.typeId = "FAP " + pattern + "," + mask;
+	}
+
+	@Override
+	public String getCommandName() {
+		return "STN Add Pass Filter";
+	}
+
+	@Override
+	public String getPIDAsString() {
+		return this.typeId;
+	}
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.instrumentation;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+
+/**
+ * Receives notable events of the connection for profiling (e.g. as
+ * JFR events or metrics). Every event carries the {@link SessionState}
+ * of the looper it originates from, so one VM can host several
+ * sessions. Implementations are found via
+ * {@link java.util.ServiceLoader} or set with
+ * {@link InstrumentationProvider#set(Instrumentation)}. Callers check
+ * {@link #isEnabled()} before collecting the arguments, so an inactive
+ * instrumentation costs a field read.
+ */
+public interface Instrumentation {
+
+	/**
+	 * the response did not fit into the line buffer
+	 */
+	String DROP_LINE_OVERFLOW = "LINE_OVERFLOW";
+	
+	/**
+	 * the response buffer was full as responses were not pulled
+	 */
+	String DROP_BUFFER_FULL = "BUFFER_FULL";
+	
+	/**
+	 * @return true if the events shall be reported
+	 */
+	boolean isEnabled();
+	
+	/**
+	 * @param session the session started
+	 * @param deviceName the name of the device
+	 */
+	void onSessionStarted(SessionState session, String deviceName);
+	
+	/**
+	 * @param session the session stopped, no further events follow
+	 */
+	void onSessionStopped(SessionState session);
+	
+	/**
+	 * @param session the session
+	 * @param cmd the executed command, holding the resulting state
+	 * @param byteCount the bytes sent and received
+	 * @param latencyNanos the time between request and parsed response
+	 */
+	void onCommandRoundTrip(SessionState session, AbstractCommand cmd, int byteCount, long latencyNanos);
+	
+	/**
+	 * @param session the session
+	 * @param count the number of valid responses forwarded to the listener
+	 */
+	void onSamplesDelivered(SessionState session, int count);
+	
+	/**
+	 * @param session the session
+	 * @param level the recovery level tried
+	 * @param recovered true if the connection was recovered
+	 */
+	void onRecovery(SessionState session, String level, boolean recovered);
+	
+	/**
+	 * @param session the session
+	 * @param phase the phase of the looper switched to
+	 * @param reason the reason, may be null
+	 */
+	void onPhaseSwitch(SessionState session, String phase, String reason);
+	
+	/**
+	 * @param session the session
+	 * @param connector the class name of the connector tried
+	 * @param deviceName the name of the device
+	 * @param attempt the initialization attempt of the connector, starting at 0
+	 */
+	void onAdapterSelection(SessionState session, String connector, String deviceName, int attempt);
+	
+	/**
+	 * @param session the session, may be null if the connector was not
+	 * bound to a looper
+	 * @param reason why the response was dropped, see the DROP constants
+	 * @param length the length of the dropped response
+	 */
+	void onResponseDropped(SessionState session, String reason, int length);
+	
+}
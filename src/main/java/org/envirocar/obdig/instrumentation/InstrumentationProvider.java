@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.instrumentation;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the active {@link Instrumentation}. Without a registered
+ * implementation, a no-op instrumentation is used.
+ */
+public class InstrumentationProvider {
+
+	private static final Logger logger = LoggerFactory.getLogger(InstrumentationProvider.class);
+	
+	private static final Instrumentation NO_OP = new Instrumentation() {
+		
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+		
+		@Override
+		public void onSessionStarted(SessionState session, String deviceName) {
+		}
+		
+		@Override
+		public void onSessionStopped(SessionState session) {
+		}
+		
+		@Override
+		public void onCommandRoundTrip(SessionState session, AbstractCommand cmd, int byteCount, long latencyNanos) {
+		}
+		
+		@Override
+		public void onSamplesDelivered(SessionState session, int count) {
+		}
+		
+		@Override
+		public void onRecovery(SessionState session, String level, boolean recovered) {
+		}
+		
+		@Override
+		public void onPhaseSwitch(SessionState session, String phase, String reason) {
+		}
+		
+		@Override
+		public void onAdapterSelection(SessionState session, String connector, String deviceName, int attempt) {
+		}
+		
+		@Override
+		public void onResponseDropped(SessionState session, String reason, int length) {
+		}
+	};
+	
+	private static volatile Instrumentation instance;
+	
+	/**
+	 * @return the active instrumentation, never null
+	 */
+	public static Instrumentation get() {
+		Instrumentation result = instance;
+		if (result == null) {
+			synchronized (InstrumentationProvider.class) {
+				if (instance == null) {
+					instance = load();
+				}
+				result = instance;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @param instrumentation the instrumentation to use, null for none
+	 */
+	public static void set(Instrumentation instrumentation) {
+		instance = instrumentation == null ? NO_OP : instrumentation;
+	}
+
+	private static Instrumentation load() {
+		try {
+			Iterator<Instrumentation> it = ServiceLoader.load(Instrumentation.class).iterator();
+			if (it.hasNext()) {
+				Instrumentation result = it.next();
+				logger.info("Using instrumentation "+ result.getClass().getName());
+				return result;
+			}
+		} catch (ServiceConfigurationError e) {
+			logger.warn("Could not load the instrumentation: "+e.getMessage(), e);
+		}
+		return NO_OP;
+	}
+	
+}
@@ -26,6 +26,7 @@
  */
 package org.envirocar.obdig.protocol;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,20 +34,40 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.envirocar.obdig.FeatureFlags;
 import org.envirocar.obdig.commands.AbstractCommand;
 import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.instrumentation.Instrumentation;
+import org.envirocar.obdig.instrumentation.InstrumentationProvider;
+import org.envirocar.obdig.protocol.adapter.EngineStateTracker;
+import org.envirocar.obdig.protocol.adapter.FrameTrace;
 import org.envirocar.obdig.protocol.adapter.OBDConnector;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.CommandPriority;
 import org.envirocar.obdig.protocol.adapter.OBDConnector.ConnectionState;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.RecoveryLevel;
+import org.envirocar.obdig.protocol.adapter.SessionState;
 import org.envirocar.obdig.protocol.adapter.drivedeck.DriveDeckSportConnector;
+import org.envirocar.obdig.protocol.adapter.monitor.CANMonitorConnector;
+import org.envirocar.obdig.protocol.adapter.monitor.SignalDefinition;
 import org.envirocar.obdig.protocol.adapter.sequential.AposW3Connector;
 import org.envirocar.obdig.protocol.adapter.sequential.ELM327Connector;
 import org.envirocar.obdig.protocol.adapter.sequential.OBDLinkMXConnector;
+import org.envirocar.obdig.protocol.capture.CaptureLog;
+import org.envirocar.obdig.protocol.capture.CapturingInputStream;
+import org.envirocar.obdig.protocol.capture.CapturingOutputStream;
 import org.envirocar.obdig.protocol.exception.AdapterFailedException;
 import org.envirocar.obdig.protocol.exception.AllAdaptersFailedException;
 import org.envirocar.obdig.protocol.exception.ConnectionLostException;
 import org.envirocar.obdig.protocol.exception.LooperStoppedException;
+import org.envirocar.obdig.protocol.subscription.PIDSubscriptions;
+import org.envirocar.obdig.protocol.subscription.Subscription;
+import org.envirocar.obdig.protocol.subscription.SubscriptionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,26 +93,46 @@ public class OBDCommandLooper {
 	
 	private static final Logger logger = LoggerFactory.getLogger(OBDCommandLooper.class);
 	protected static final long ADAPTER_TRY_PERIOD = 5000;
+	protected static final long READINESS_POLL_PERIOD = 100;
 	private static final Integer MAX_PHASE_COUNT = 2;
 	public static final long MAX_NODATA_TIME = 1000 * 60 * 1;
 	
+	/**
+	 * the minimum time in ms a request cycle may take before it
+	 * is considered as stalled
+	 */
+	public static final long MIN_CYCLE_STALL_TIMEOUT = 1000;
+	private static final long FIRST_CYCLE_STALL_TIMEOUT = 5000;
+	private static final int MAX_CYCLE_STALLS = 2;
+	
 	private List<OBDConnector> adapterCandidates = new ArrayList<OBDConnector>();
-	private OBDConnector obdAdapter;
+	private volatile OBDConnector obdAdapter;
 	private DataListener commandListener;
 	private InputStream inputStream;
 	private OutputStream outputStream;
 	private CommandExecutor commandExecutor;
 	protected boolean running = true;
 	protected boolean connectionEstablished = false;
-	protected long requestPeriod = 100;
+	protected volatile long requestPeriod = 100;
 	private int tries;
 	private int adapterIndex;
 	private ConnectionListener connectionListener;
 	private String deviceName;
 	private Map<Phase, AtomicInteger> phaseCountMap = new HashMap<Phase, AtomicInteger>();
-	private MonitorRunnable monitor;
-	private long lastSuccessfulCommandTime;
+	private volatile StallWatchdog.Watch commandWatch;
+	private volatile StallWatchdog.Watch cycleWatch;
+	private volatile StallWatchdog.Watch dataWatch;
+	private AtomicInteger cycleStalls = new AtomicInteger();
+	private AtomicBoolean connectionAbandoned = new AtomicBoolean();
+	private volatile boolean recovering;
+	private long cycleDuration = -1;
+	private long readinessDeadline;
+	private SessionState sessionState = new SessionState();
 	private boolean userRequestedStop;
+	private boolean sessionStopped;
+	private boolean adaptivePacing = !FeatureFlags.useFixedRequestPeriod();
+	private boolean engineOffPolling;
+	private CaptureLog captureLog;
 	
 	private Runnable commandsRunnable = new CommandsRunnable();
 	private Runnable initializationCommandsRunnable = new InitializationCommandsRunnable() ;
@@ -120,6 +161,17 @@ public class OBDCommandLooper {
 		this.inputStream = in;
 		this.outputStream = out;
 		
+		String captureDirectory = FeatureFlags.getCaptureDirectory();
+		if (captureDirectory != null) {
+			try {
+				this.captureLog = new CaptureLog(new File(captureDirectory));
+				this.inputStream = new CapturingInputStream(in, captureLog);
+				this.outputStream = new CapturingOutputStream(out, captureLog);
+			} catch (IOException e) {
+				logger.warn("Could not start the traffic capture: "+e.getMessage(), e);
+			}
+		}
+		
 		this.commandListener = l;
 		this.connectionListener = cl;
 		
@@ -148,6 +200,7 @@ public class OBDCommandLooper {
 			this.obdAdapter = adapterCandidates.get(0);
 		}
 		
+		this.obdAdapter.setSessionState(sessionState);
 		this.obdAdapter.provideStreamObjects(inputStream, outputStream);
 		logger.info("Using "+this.obdAdapter.getClass().getName() +" connector as the preferred adapter.");
 	}
@@ -166,8 +219,47 @@ public class OBDCommandLooper {
 		this.running = false;
 		this.userRequestedStop = true;
 		
-		if (this.monitor != null) {
-			this.monitor.running = false;
+		stopSession();
+	}
+
+	/**
+	 * informs the listener after the frame trace has been logged
+	 */
+	private void requestConnectionRetry(IOException reason) {
+		dumpFrameTrace();
+		stopSession();
+		connectionListener.requestConnectionRetry(reason);
+	}
+	
+	/**
+	 * reports the end of the session once
+	 */
+	private synchronized void stopSession() {
+		if (sessionStopped) {
+			return;
+		}
+		sessionStopped = true;
+		
+		stopMonitoring();
+		
+		/*
+		 * the last batch holds the traffic that led to a failure
+		 */
+		if (this.captureLog != null) {
+			this.captureLog.close();
+		}
+		sessionState.getCommandQueue().rejectAll(new IOException("The session has ended."));
+		
+		Instrumentation instrumentation = InstrumentationProvider.get();
+		if (instrumentation.isEnabled()) {
+			instrumentation.onSessionStopped(sessionState);
+		}
+	}
+	
+	private void dumpFrameTrace() {
+		FrameTrace trace = sessionState.getFrameTrace();
+		if (trace.isEnabled()) {
+			logger.warn(trace.dump());
 		}
 	}
 
@@ -182,7 +274,7 @@ public class OBDCommandLooper {
 			this.obdAdapter.executeInitializationCommands();
 		} catch (IOException e) {
 			if (!userRequestedStop) {
-				connectionListener.requestConnectionRetry(e);
+				requestConnectionRetry(e);
 			}
 			running = false;
 			return;
@@ -206,7 +298,11 @@ public class OBDCommandLooper {
 		try {
 			cmds = this.obdAdapter.executeRequestCommands();
 		} catch (ConnectionLostException e) {
-			switchPhase(Phase.INITIALIZATION, new IOException(e));
+			sessionState.getFrameTrace().event(FrameTrace.Event.CONNECTION_LOST, null);
+			sessionState.getPacingController().onCongestion();
+			if (!recoverConnection()) {
+				switchPhase(Phase.INITIALIZATION, new IOException(e));
+			}
 			
 			return;
 		} catch (AdapterFailedException e) {
@@ -214,7 +310,9 @@ public class OBDCommandLooper {
 			return;
 		}
 		
+		PIDSubscriptions subscriptions = sessionState.getPIDSubscriptions();
 		long time = 0;
+		int count = 0;
 		/*
 		 * only forward those command to the listener that
 		 * have been processed succesfully
@@ -222,17 +320,84 @@ public class OBDCommandLooper {
 		for (AbstractCommand cmd : cmds) {
 			if (cmd.getCommandState() == CommonCommandState.FINISHED) {
 				commandListener.receiveUpdate(cmd);
+				subscriptions.dispatch(cmd);
 				time = cmd.getResultTime();
+				count++;
 			}
 		}
 		
-		if (time != 0) {
-			lastSuccessfulCommandTime = time;
+		StallWatchdog.Watch data = dataWatch;
+		if (time != 0 && data != null) {
+			data.arm(MAX_NODATA_TIME);
+		}
+		
+		sessionState.getEngineStateTracker().onCycle(cmds, System.currentTimeMillis());
+		
+		if (count > 0) {
+			Instrumentation instrumentation = InstrumentationProvider.get();
+			if (instrumentation.isEnabled()) {
+				instrumentation.onSamplesDelivered(sessionState, count);
+			}
+		}
+		
+		if (cycleStalls.getAndSet(0) > 0) {
+			/*
+			 * the cycle completed after its deadline, resync with the adapter
+			 */
+			sessionState.getPacingController().onCongestion();
+			if (!recoverConnection()) {
+				switchPhase(Phase.INITIALIZATION, new IOException("The request cycle stalled."));
+			}
 		}
 		
 	}
 
 	
+	/**
+	 * try the recovery levels of the adapter, from the lightest
+	 * to the heaviest.
+	 * 
+	 * @return true if the connection has been recovered
+	 * @throws IOException if the streams are not usable anymore
+	 */
+	private boolean recoverConnection() throws IOException {
+		/*
+		 * the recovery has its own timeouts, the cycle watch is
+		 * armed again when the next cycle has been scheduled
+		 */
+		recovering = true;
+		StallWatchdog.Watch cycle = cycleWatch;
+		if (cycle != null) {
+			cycle.disarm();
+		}
+		
+		try {
+			Instrumentation instrumentation = InstrumentationProvider.get();
+			for (RecoveryLevel level : RecoveryLevel.values()) {
+				long start = System.currentTimeMillis();
+				boolean recovered = this.obdAdapter.recoverConnection(level);
+				if (instrumentation.isEnabled()) {
+					instrumentation.onRecovery(sessionState, level.name(), recovered);
+				}
+				
+				if (recovered) {
+					sessionState.getFrameTrace().event(FrameTrace.Event.RECOVERY_SUCCEEDED, level.name());
+					logger.info("Connection recovered via "+ level +" in "+
+							(System.currentTimeMillis() - start) +" ms.");
+					return true;
+				}
+			}
+		}
+		finally {
+			cycleStalls.set(0);
+			recovering = false;
+		}
+		
+		sessionState.getFrameTrace().event(FrameTrace.Event.RECOVERY_FAILED, null);
+		logger.info("Recovery failed, re-initializing the adapter.");
+		return false;
+	}
+
 	/**
 	 * switch between phases ({@link Phase}).
 	 * 
@@ -243,6 +408,13 @@ public class OBDCommandLooper {
 		logger.info("Switching to Phase: " +phase + (reason != null ? " / Reason: "+reason.getMessage() : ""));
 		
 		int phaseCount = phaseCountMap.get(phase).incrementAndGet();
+		sessionState.getFrameTrace().event(phase == Phase.INITIALIZATION ?
+				FrameTrace.Event.PHASE_INITIALIZATION : FrameTrace.Event.PHASE_COMMAND_EXECUTION, null);
+		
+		Instrumentation instrumentation = InstrumentationProvider.get();
+		if (instrumentation.isEnabled()) {
+			instrumentation.onPhaseSwitch(sessionState, phase.name(), reason != null ? reason.getMessage() : null);
+		}
 		
 		/*
 		 * remove all callbacks from the executor
@@ -250,13 +422,18 @@ public class OBDCommandLooper {
 		commandExecutor.removeCallbacks(initializationCommandsRunnable);
 		commandExecutor.removeCallbacks(commandsRunnable);
 		
+		StallWatchdog.Watch cycle = cycleWatch;
+		if (cycle != null) {
+			cycle.disarm();
+		}
+		
 		/*
 		 * if we were too often in the same phase (e.g. init),
 		 * request a reconnect
 		 */
 		if (phaseCount >= MAX_PHASE_COUNT) {
 			logger.warn("Too often in phase: "+phaseCount);
-			connectionListener.requestConnectionRetry(reason);
+			requestConnectionRetry(reason);
 			
 			running = false;
 			return;
@@ -273,6 +450,11 @@ public class OBDCommandLooper {
 			break;
 		case COMMAND_EXECUTION:
 			this.connectionEstablished = true;
+			/*
+			 * the adapter might have negotiated a faster link
+			 */
+			this.requestPeriod = sessionState.getPacingController().start(
+					this.obdAdapter.getPreferredRequestPeriod());
 			this.connectionListener.onConnectionVerified();
 			commandExecutor.postDelayed(commandsRunnable, requestPeriod);
 			commandListener.onConnected(deviceName);
@@ -288,17 +470,109 @@ public class OBDCommandLooper {
 		}
 	}
 
-	private void startMonitoring() {
-		if (this.monitor != null) {
-			this.monitor.running = false;
+	/**
+	 * watches the in-flight commands, the request cycles and the
+	 * received data on the shared {@link StallWatchdog}
+	 */
+	private synchronized void startMonitoring() {
+		stopMonitoring();
+		
+		StallWatchdog watchdog = StallWatchdog.getDefault();
+		this.commandWatch = watchdog.register(new CommandStallListener());
+		this.cycleWatch = watchdog.register(new CycleStallListener());
+		this.dataWatch = watchdog.register(new DataStallListener());
+		this.sessionState.setCommandWatch(commandWatch);
+		
+		this.cycleStalls.set(0);
+		this.cycleDuration = -1;
+		this.cycleWatch.arm(FIRST_CYCLE_STALL_TIMEOUT);
+		this.dataWatch.arm(MAX_NODATA_TIME);
+	}
+	
+	private synchronized void stopMonitoring() {
+		this.sessionState.setCommandWatch(null);
+		
+		if (this.commandWatch != null) {
+			this.commandWatch.cancel();
+			this.commandWatch = null;
+		}
+		if (this.cycleWatch != null) {
+			this.cycleWatch.cancel();
+			this.cycleWatch = null;
+		}
+		if (this.dataWatch != null) {
+			this.dataWatch.cancel();
+			this.dataWatch = null;
+		}
+	}
+	
+	/**
+	 * sets the deadline of the next request cycle. The probes of a
+	 * parked car are only checked by the data watch.
+	 */
+	private void watchNextCycle() {
+		StallWatchdog.Watch watch = cycleWatch;
+		if (watch == null) {
+			return;
+		}
+		
+		if (!connectionEstablished || sessionState.getEngineStateTracker().isEngineOff()) {
+			watch.disarm();
+			return;
+		}
+		
+		if (cycleDuration < 0) {
+			watch.arm(FIRST_CYCLE_STALL_TIMEOUT);
+			return;
 		}
 		
-		this.monitor = new MonitorRunnable();
-		new Thread(this.monitor).start();
+		long budget = Math.max(TimeUnit.NANOSECONDS.toMillis(cycleDuration), requestPeriod);
+		watch.arm(requestPeriod + Math.max(MIN_CYCLE_STALL_TIMEOUT, StallWatchdog.STALL_FACTOR * budget));
+	}
+	
+	/**
+	 * gives up the connection if it cannot be recovered. Called from
+	 * the thread of the {@link StallWatchdog}, the tear down runs on its
+	 * own thread as the looper thread might be the one that is blocked.
+	 */
+	private void abandonConnection(final IOException reason) {
+		if (!connectionAbandoned.compareAndSet(false, true)) {
+			return;
+		}
+		
+		logger.warn(reason.getMessage() +" Reconnecting.");
+		Thread t = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				commandExecutor.removeCallbacks(commandsRunnable);
+				commandExecutor.shutdownExecutions();
+				
+				OBDConnector adapter = obdAdapter;
+				if (adapter != null) {
+					adapter.shutdown();
+				}
+				
+				requestConnectionRetry(reason);
+			}
+		}, "OBD-Stall-Recovery");
+		t.setDaemon(true);
+		t.start();
 	}
 
 	private void setupAdapterCandidates() {
 		adapterCandidates.clear();
+		
+		String signals = FeatureFlags.getCANMonitorSignals();
+		if (signals != null) {
+			try {
+				adapterCandidates.add(new CANMonitorConnector(SignalDefinition.parseAll(signals)));
+			}
+			catch (IllegalArgumentException e) {
+				logger.warn("Not using the CAN monitor: "+e.getMessage());
+			}
+		}
+		
 		adapterCandidates.add(new ELM327Connector());
 		adapterCandidates.add(new AposW3Connector());
 		adapterCandidates.add(new OBDLinkMXConnector());
@@ -342,14 +616,74 @@ public class OBDCommandLooper {
 		}
 		
 		if (this.obdAdapter != null) {
+			Instrumentation instrumentation = InstrumentationProvider.get();
+			if (instrumentation.isEnabled()) {
+				instrumentation.onAdapterSelection(sessionState, this.obdAdapter.getClass().getName(), deviceName, tries);
+			}
+			
 			this.requestPeriod = this.obdAdapter.getPreferredRequestPeriod();
+			this.obdAdapter.setSessionState(sessionState);
 			this.obdAdapter.provideStreamObjects(inputStream, outputStream);
 			this.obdAdapter.startExecutions(commandExecutor);
 		}
 	}
 
+	/**
+	 * Subscribes a consumer to a PID. Once there is a subscription,
+	 * only the subscribed PIDs are requested (see {@link PIDSubscriptions}).
+	 * 
+	 * @param pid the PID as a HEX string (e.g. "0D")
+	 * @param periodMillis the maximum time in ms between two samples
+	 * the consumer accepts, 0 for every request cycle
+	 * @param listener the consumer
+	 * @return the subscription, used to cancel it
+	 */
+	public Subscription subscribe(String pid, long periodMillis, SubscriptionListener listener) {
+		return sessionState.getPIDSubscriptions().subscribe(pid, periodMillis, listener);
+	}
+
+	/**
+	 * Injects a command (e.g. a single PID refresh or a diagnostic
+	 * request) in between the request cycles. The command is not
+	 * passed to the {@link DataListener}.
+	 * 
+	 * @param cmd the command to execute
+	 * @param priority {@link CommandPriority#HIGH} to execute it before the
+	 * next command of the cycle, {@link CommandPriority#LOW} to use the
+	 * capacity left after a cycle
+	 * @return the future completed with the executed command
+	 * @throws RejectedExecutionException if the connector does not support
+	 * injected commands or too many are queued
+	 */
+	public Future<AbstractCommand> submitCommand(AbstractCommand cmd, CommandPriority priority) {
+		OBDConnector adapter = this.obdAdapter;
+		if (adapter != null) {
+			return adapter.submitCommand(cmd, priority);
+		}
+		
+		/*
+		 * no connector selected yet
+		 */
+		return sessionState.getCommandQueue().submit(cmd, priority);
+	}
+
+	/**
+	 * @return the current period between two request cycles in ms,
+	 * adapted to the link unless {@link FeatureFlags#FIXED_REQUEST_PERIOD_KEY}
+	 * is set
+	 */
+	public long getRequestPeriod() {
+		return requestPeriod;
+	}
+
 	public void initialize(CommandExecutor exec) {
 		commandExecutor = exec;
+		
+		Instrumentation instrumentation = InstrumentationProvider.get();
+		if (instrumentation.isEnabled()) {
+			instrumentation.onSessionStarted(sessionState, deviceName);
+		}
+		
 		switchPhase(Phase.INITIALIZATION, null);
 	}
 	
@@ -370,10 +704,20 @@ public class OBDCommandLooper {
 					return;
 				}
 				
+				/*
+				 * give the adapter the chance to verify asynchronously
+				 */
+				if (obdAdapter != null && System.currentTimeMillis() < readinessDeadline) {
+					commandExecutor.postDelayed(initializationCommandsRunnable, READINESS_POLL_PERIOD);
+					return;
+				}
+				
 				try {
 					selectAdapter();
 				} catch (AllAdaptersFailedException e) {
 					running = false;
+					dumpFrameTrace();
+					stopSession();
 					connectionListener.onAllAdaptersFailed();
 					throw new LooperStoppedException();
 				}
@@ -382,17 +726,19 @@ public class OBDCommandLooper {
 				logger.info(stmt);
 				connectionListener.onStatusUpdate(stmt);
 			
+				boolean definitiveFailure = false;
 				try {
 					executeInitializationRequests();
 				} catch (IOException e) {
 					running = false;
 					if (!userRequestedStop) {
-						connectionListener.requestConnectionRetry(e);
+						requestConnectionRetry(e);
 					}
 					logger.info("Exiting commandHandler due to exception: "+e.getMessage(), e);
 					throw new LooperStoppedException();
 				} catch (AdapterFailedException e) {
 					logger.warn(e.getMessage(), e);
+					definitiveFailure = true;
 				}
 				
 				/*
@@ -409,10 +755,21 @@ public class OBDCommandLooper {
 					throw new LooperStoppedException();
 				}
 				
-				/*
-				 * no connection has been established, try again after the defined period
-				 */
-				commandExecutor.postDelayed(initializationCommandsRunnable, ADAPTER_TRY_PERIOD);
+				if (definitiveFailure) {
+					/*
+					 * the adapter rejected the initialization, try again at once
+					 */
+					readinessDeadline = 0;
+					commandExecutor.post(initializationCommandsRunnable);
+				}
+				else {
+					/*
+					 * no connection has been established yet, poll the state
+					 * until the defined period is over
+					 */
+					readinessDeadline = System.currentTimeMillis() + ADAPTER_TRY_PERIOD;
+					commandExecutor.postDelayed(initializationCommandsRunnable, READINESS_POLL_PERIOD);
+				}
 			}
 			
 			if (!running) {
@@ -433,12 +790,13 @@ public class OBDCommandLooper {
 				throw new LooperStoppedException();
 			}
 			
+			long start = System.nanoTime();
 			try {
 				executeCommandRequests();
 			} catch (IOException e) {
 				running = false;
 				if (!userRequestedStop) {
-					connectionListener.requestConnectionRetry(e);
+					requestConnectionRetry(e);
 				}
 				logger.info("Exiting commandHandler due to exception: "+e.getMessage(), e);
 				throw new LooperStoppedException();
@@ -449,6 +807,35 @@ public class OBDCommandLooper {
 				throw new LooperStoppedException();
 			}
 			
+			boolean engineOff = sessionState.getEngineStateTracker().isEngineOff();
+			if (!engineOff) {
+				long duration = System.nanoTime() - start;
+				cycleDuration = cycleDuration < 0 ? duration : (cycleDuration * 7 + duration) / 8;
+			}
+			
+			if (engineOff) {
+				/*
+				 * the connector only sends its keep-alive probe, check
+				 * frequently so an engine start resumes at once
+				 */
+				if (!engineOffPolling) {
+					logger.info("Engine is off, suspending the full-rate polling.");
+					engineOffPolling = true;
+				}
+				requestPeriod = EngineStateTracker.ENGINE_OFF_POLL_PERIOD;
+			}
+			else if (engineOffPolling) {
+				logger.info("Engine started, resuming the full-rate polling.");
+				engineOffPolling = false;
+				requestPeriod = sessionState.getPacingController().start(
+						obdAdapter.getPreferredRequestPeriod());
+			}
+			else if (adaptivePacing) {
+				requestPeriod = sessionState.getPacingController().onCycleCompleted();
+			}
+			
+			watchNextCycle();
+			
 			/*
 			 * post self again to the executor with the defined delay
 			 */
@@ -457,41 +844,69 @@ public class OBDCommandLooper {
 	}
 	
 	/**
-	 * This {@link Runnable} checks the last timestamp of received
-	 * data. If it exceeds a certain time span, a reconnection attempt
+	 * Interrupts a command whose response is overdue. This is the
+	 * lightest action, the connection stays as is.
+	 */
+	private class CommandStallListener implements StallListener {
+		
+		@Override
+		public void onStall(StallWatchdog.Watch watch, long tag, long overdueMillis) {
+			OBDConnector adapter = obdAdapter;
+			if (!running || adapter == null) return;
+			
+			logger.info("No response within "+ watch.getTimeout() +" ms, aborting the command.");
+			sessionState.getFrameTrace().event(FrameTrace.Event.COMMAND_STALL, null);
+			adapter.abortCommand(tag);
+		}
+		
+	}
+	
+	/**
+	 * Checks that the request cycles keep up with their schedule. A
+	 * cycle completing late is followed by a recovery of the connection,
+	 * a wedged one by a reconnect.
+	 */
+	private class CycleStallListener implements StallListener {
+		
+		@Override
+		public void onStall(StallWatchdog.Watch watch, long tag, long overdueMillis) {
+			if (!running || recovering) return;
+			
+			sessionState.getFrameTrace().event(FrameTrace.Event.CYCLE_STALL, null);
+			if (cycleStalls.incrementAndGet() < MAX_CYCLE_STALLS) {
+				logger.warn("Request cycle overdue by "+ overdueMillis +" ms.");
+				watch.arm(watch.getTimeout());
+				return;
+			}
+			
+			abandonConnection(new IOException("The request cycle stalled."));
+		}
+		
+	}
+	
+	/**
+	 * Checks the time of the last received data. If it exceeds
+	 * {@link OBDCommandLooper#MAX_NODATA_TIME}, a reconnection attempt
 	 * is issued.
 	 */
-	private class MonitorRunnable implements Runnable {
-
-		private boolean running = true;
+	private class DataStallListener implements StallListener {
 		
 		@Override
-		public void run() {
-			Thread.currentThread().setName("OBD-Data-Monitor");
-			while (running) {
-				try {
-					Thread.sleep(MAX_NODATA_TIME / 3);
-				} catch (InterruptedException e) {
-					logger.warn(e.getMessage(), e);
-				}
-				
-				if (!running) return;
-				
-				/*
-				 * check if we received data in the MAX_NODATA_TIME window
-				 */
-				if (System.currentTimeMillis() - lastSuccessfulCommandTime > MAX_NODATA_TIME) {
-					commandExecutor.removeCallbacks(commandsRunnable);
-					commandExecutor.shutdownExecutions();
-					
-					if (OBDCommandLooper.this.obdAdapter != null) {
-						OBDCommandLooper.this.obdAdapter.shutdown();
-					}
-					
-					connectionListener.requestConnectionRetry(new IOException("Waited too long for data."));
-					return;
-				}
+		public void onStall(StallWatchdog.Watch watch, long tag, long overdueMillis) {
+			if (!running) return;
+			
+			/*
+			 * A parked car answers the keep-alive probe with NODATA,
+			 * which still proves a working connection
+			 */
+			EngineStateTracker engineState = sessionState.getEngineStateTracker();
+			if (engineState.isEngineOff() &&
+					System.currentTimeMillis() - engineState.getLastActivity() <= MAX_NODATA_TIME) {
+				watch.arm(MAX_NODATA_TIME);
+				return;
 			}
+			
+			abandonConnection(new IOException("Waited too long for data."));
 		}
 		
 	}
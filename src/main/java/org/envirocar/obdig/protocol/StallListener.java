@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol;
+
+/**
+ * Receives the expired deadlines of a {@link StallWatchdog.Watch}.
+ */
+public interface StallListener {
+
+	/**
+	 * Called on the thread of the {@link StallWatchdog}, which is
+	 * shared by all sessions. An implementation must not block and
+	 * shall hand over heavy recovery work to its own threads. The
+	 * watch has been disarmed before.
+	 * 
+	 * @param watch the expired watch
+	 * @param tag the tag the watch has been armed with
+	 * @param overdueMillis the time in ms the deadline has been exceeded by
+	 */
+	void onStall(StallWatchdog.Watch watch, long tag, long overdueMillis);
+	
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects stalled connections within a few request periods. The
+ * owner of a {@link Watch} arms it with the time it expects the next
+ * response (e.g. of an in-flight command or a request cycle) and disarms
+ * it once the response arrived. A single timer thread checks the
+ * deadlines of all watches, so many sessions share one thread.
+ * <p>
+ * Deadlines use {@link System#nanoTime()} and are not affected by
+ * changes of the wall clock.
+ */
+public class StallWatchdog {
+	
+	private static final Logger logger = LoggerFactory.getLogger(StallWatchdog.class);
+	
+	/**
+	 * the period in ms the deadlines are checked
+	 */
+	public static final long TICK_PERIOD = 50;
+	
+	/**
+	 * the multiple of the usual duration after which a response
+	 * is considered as stalled
+	 */
+	public static final int STALL_FACTOR = 4;
+	
+	private static final StallWatchdog DEFAULT = new StallWatchdog();
+	
+	private final List<Watch> watches = new CopyOnWriteArrayList<Watch>();
+	private ScheduledExecutorService timer;
+	private ScheduledFuture<?> tick;
+	
+	/**
+	 * @return the watchdog shared by all sessions
+	 */
+	public static StallWatchdog getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * @param listener the listener of the expired deadlines
+	 * @return a new, disarmed watch. It shall be cancelled if no longer used.
+	 */
+	public synchronized Watch register(StallListener listener) {
+		if (listener == null) throw new IllegalArgumentException("listener must not be null!");
+		
+		Watch watch = new Watch(this, listener);
+		watches.add(watch);
+		
+		if (tick == null) {
+			if (timer == null) {
+				timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "OBD-Stall-Watchdog");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+			
+			tick = timer.scheduleAtFixedRate(new Runnable() {
+				
+				@Override
+				public void run() {
+					check(System.nanoTime());
+				}
+			}, TICK_PERIOD, TICK_PERIOD, TimeUnit.MILLISECONDS);
+		}
+		
+		return watch;
+	}
+	
+	private synchronized void unregister(Watch watch) {
+		if (watches.remove(watch) && watches.isEmpty() && tick != null) {
+			tick.cancel(false);
+			tick = null;
+		}
+	}
+	
+	/**
+	 * @return the number of registered watches
+	 */
+	public int getWatchCount() {
+		return watches.size();
+	}
+	
+	/**
+	 * informs the listeners of all watches whose deadline has passed
+	 * 
+	 * @param now the current time as provided by {@link System#nanoTime()}
+	 */
+	void check(long now) {
+		for (Watch watch : watches) {
+			long overdue;
+			long tag;
+			synchronized (watch) {
+				overdue = watch.expire(now);
+				tag = watch.tag;
+			}
+			if (overdue < 0) {
+				continue;
+			}
+			
+			try {
+				watch.listener.onStall(watch, tag, TimeUnit.NANOSECONDS.toMillis(overdue));
+			}
+			catch (RuntimeException e) {
+				logger.warn("Stall listener failed: "+e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * The deadline of one kind of response of a session.
+	 */
+	public static class Watch {
+		
+		private final StallWatchdog watchdog;
+		private final StallListener listener;
+		private boolean armed;
+		private long deadline;
+		private long timeout;
+		private long tag;
+		private int stallCount;
+		
+		private Watch(StallWatchdog watchdog, StallListener listener) {
+			this.watchdog = watchdog;
+			this.listener = listener;
+		}
+		
+		/**
+		 * sets the deadline, replacing a previous one
+		 * 
+		 * @param timeoutMillis the time in ms from now the response is expected in
+		 */
+		public void arm(long timeoutMillis) {
+			arm(timeoutMillis, 0);
+		}
+		
+		/**
+		 * sets the deadline, replacing a previous one
+		 * 
+		 * @param timeoutMillis the time in ms from now the response is expected in
+		 * @param tag identifies the awaited response (e.g. a sequence number),
+		 * passed to the listener
+		 */
+		public synchronized void arm(long timeoutMillis, long tag) {
+			this.timeout = timeoutMillis;
+			this.tag = tag;
+			this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			this.armed = true;
+		}
+		
+		/**
+		 * removes the deadline, the response has arrived
+		 */
+		public synchronized void disarm() {
+			this.armed = false;
+		}
+		
+		public synchronized boolean isArmed() {
+			return armed;
+		}
+		
+		/**
+		 * @return the timeout in ms of the last {@link #arm(long)}
+		 */
+		public synchronized long getTimeout() {
+			return timeout;
+		}
+		
+		/**
+		 * @return the number of expired deadlines
+		 */
+		public synchronized int getStallCount() {
+			return stallCount;
+		}
+		
+		/**
+		 * disarms the watch and removes it from the watchdog
+		 */
+		public void cancel() {
+			disarm();
+			watchdog.unregister(this);
+		}
+		
+		/**
+		 * @return the overdue time in ns if the deadline has passed, -1 otherwise
+		 */
+		private synchronized long expire(long now) {
+			if (!armed || now - deadline < 0) {
+				return -1;
+			}
+			
+			armed = false;
+			stallCount++;
+			return now - deadline;
+		}
+		
+	}
+
+}
@@ -31,6 +31,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.envirocar.obdig.commands.AbstractCommand;
 import org.envirocar.obdig.protocol.CommandExecutor;
@@ -46,6 +48,8 @@ public abstract class AbstractAsynchronousConnector implements OBDConnector {
 	private OutputStream outputStream;
 	private AsynchronousResponseThread responseThread;
 	private CommandExecutor executor;
+	private long lastCommandTime;
+	private SessionState sessionState = new SessionState();
 
 	protected abstract List<AbstractCommand> getRequestCommands();
 
@@ -55,11 +59,39 @@ public abstract class AbstractAsynchronousConnector implements OBDConnector {
 	
 	protected abstract ResponseParser getResponseParser();
 	
+	/**
+	 * @return the minimum gap in ms between two commands sent to the adapter
+	 */
 	protected abstract long getSleepTimeBetweenCommands();
 	
 	public AbstractAsynchronousConnector() {
 	}
 	
+	/**
+	 * @return the maximum time in ms to wait for the response line of
+	 * an initialization command before the next one is sent
+	 */
+	protected long getInitializationResponseTimeout() {
+		return 500;
+	}
+	
+	/**
+	 * @return the number of parsed responses buffered between two
+	 * calls of {@link #executeRequestCommands()}
+	 */
+	protected int getMaximumResponseBufferSize() {
+		return AsynchronousResponseThread.DEFAULT_MAX_BUFFER_SIZE;
+	}
+	
+	/**
+	 * The responses of an asynchronous adapter are not paired with
+	 * the requests, so commands cannot be injected.
+	 */
+	@Override
+	public Future<AbstractCommand> submitCommand(AbstractCommand cmd, CommandPriority priority) {
+		throw new RejectedExecutionException(getClass().getSimpleName() +" does not support injected commands.");
+	}
+	
 	@Override
 	public void startExecutions(CommandExecutor exec) {
 		this.executor = exec;
@@ -76,14 +108,27 @@ public abstract class AbstractAsynchronousConnector implements OBDConnector {
 	@Override
 	public void executeInitializationCommands() throws IOException,
 			AdapterFailedException {
-		for (AbstractCommand cmd : getInitializationCommands()) {
-			try {
-				Thread.sleep(250);
-			} catch (InterruptedException e) {
-				logger.warn(e.getMessage(), e);
-			}
+		executeInitializationCommands(getInitializationCommands());
+	}
+	
+	/**
+	 * Sends the commands one by one, each waiting for a response line
+	 * (at most {@link #getInitializationResponseTimeout()}). A sub-class
+	 * may use this to send commands that depend on earlier responses.
+	 */
+	protected void executeInitializationCommands(List<AbstractCommand> commands) throws IOException {
+		for (AbstractCommand cmd : commands) {
+			AsynchronousResponseThread thread = responseThread;
+			long lines = thread != null ? thread.getResponseLineCount() : 0;
 			
 			executeCommand(cmd);
+			
+			/*
+			 * continue as soon as the adapter responded
+			 */
+			if (thread != null && !thread.awaitResponseLine(lines, getInitializationResponseTimeout())) {
+				logger.debug("No response for "+ cmd.getCommandName());
+			}
 		}
 	}
 
@@ -91,17 +136,16 @@ public abstract class AbstractAsynchronousConnector implements OBDConnector {
 	@Override
 	public List<AbstractCommand> executeRequestCommands() throws IOException,
 			AdapterFailedException, ConnectionLostException {
-		long sleep = getSleepTimeBetweenCommands();
+		/*
+		 * commands queued before this connector was selected
+		 */
+		if (sessionState.getCommandQueue().size() > 0) {
+			sessionState.getCommandQueue().rejectAll(new RejectedExecutionException(
+					getClass().getSimpleName() +" does not support injected commands."));
+		}
+		
 		for (AbstractCommand cmd : getRequestCommands()) {
 			executeCommand(cmd);
-			
-			if (sleep > 0) {
-				try {
-					Thread.sleep(sleep);
-				} catch (InterruptedException e) {
-					logger.warn(e.getMessage(), e);
-				}
-			}
 		}
 		
 		if (responseThread != null) {
@@ -116,16 +160,50 @@ public abstract class AbstractAsynchronousConnector implements OBDConnector {
 	}
 
 	private void executeCommand(AbstractCommand cmd) throws IOException {
-		logger.debug("Sending command: "+cmd.getCommandName());
+		/*
+		 * keep the minimum gap required by the adapter
+		 */
+		long gap = getSleepTimeBetweenCommands() - (System.currentTimeMillis() - lastCommandTime);
+		if (gap > 0) {
+			try {
+				Thread.sleep(gap);
+			} catch (InterruptedException e) {
+				logger.warn(e.getMessage(), e);
+			}
+		}
+		
+		if (logger.isDebugEnabled()) {
+			logger.debug("Sending command: "+cmd.getCommandName());
+		}
 		
 		byte[] bytes = cmd.getOutgoingBytes();
 		if (bytes != null && bytes.length > 0) {
 			outputStream.write(bytes);
+			sessionState.getFrameTrace().transmit(bytes, 0, bytes.length);
 		}
 		outputStream.write(getRequestEndOfLine());
-		outputStream.flush();		
+		outputStream.flush();
+		lastCommandTime = System.currentTimeMillis();
 	}
 
+	@Override
+	public void setSessionState(SessionState state) {
+		this.sessionState = state;
+	}
+	
+	protected SessionState getSessionState() {
+		return sessionState;
+	}
+	
+	/**
+	 * the adapter sends data on its own, so there is nothing
+	 * to resync. A sub-class may override this.
+	 */
+	@Override
+	public boolean recoverConnection(RecoveryLevel level) throws IOException {
+		return false;
+	}
+	
 	@Override
 	public void prepareShutdown() {
 		if (responseThread != null) {
@@ -140,9 +218,18 @@ public abstract class AbstractAsynchronousConnector implements OBDConnector {
 		}		
 	}
 	
+	/**
+	 * the responses are not paired with requests, nothing to abort
+	 */
+	@Override
+	public void abortCommand(long sequence) {
+	}
+	
 	protected void startResponseThread() {
 		if (responseThread == null || !responseThread.isRunning()) {
-			responseThread = new AsynchronousResponseThread(inputStream, getResponseParser(), this.executor);
+			responseThread = new AsynchronousResponseThread(inputStream, getResponseParser(),
+					this.executor, getMaximumResponseBufferSize());
+			responseThread.setSessionState(sessionState);
 			responseThread.start();
 		}
 	}
@@ -31,7 +31,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -44,11 +44,12 @@ import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.envirocar.obdig.FeatureFlags;
 import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.NumberResultCommand;
 import org.envirocar.obdig.commands.PIDUtil;
+import org.envirocar.obdig.commands.StringResultCommand;
 import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
 import org.envirocar.obdig.commands.PIDUtil.PID;
 import org.envirocar.obdig.commands.numeric.EngineLoad;
@@ -57,16 +58,22 @@ import org.envirocar.obdig.commands.numeric.IntakeTemperature;
 import org.envirocar.obdig.commands.numeric.LongTermTrimBank1;
 import org.envirocar.obdig.commands.numeric.MAF;
 import org.envirocar.obdig.commands.numeric.O2LambdaProbe;
+import org.envirocar.obdig.commands.numeric.O2SensorsPresent;
 import org.envirocar.obdig.commands.numeric.RPM;
 import org.envirocar.obdig.commands.numeric.ShortTermTrimBank1;
 import org.envirocar.obdig.commands.numeric.Speed;
 import org.envirocar.obdig.commands.numeric.TPS;
 import org.envirocar.obdig.commands.raw.FuelSystemStatus;
 import org.envirocar.obdig.commands.raw.PIDSupported;
+import org.envirocar.obdig.instrumentation.Instrumentation;
+import org.envirocar.obdig.instrumentation.InstrumentationProvider;
 import org.envirocar.obdig.protocol.CommandExecutor;
+import org.envirocar.obdig.protocol.StallListener;
+import org.envirocar.obdig.protocol.StallWatchdog;
 import org.envirocar.obdig.protocol.exception.AdapterFailedException;
 import org.envirocar.obdig.protocol.exception.ConnectionLostException;
 import org.envirocar.obdig.protocol.exception.UnmatchedCommandResponseException;
+import org.envirocar.obdig.protocol.subscription.PIDSubscriptions;
 import org.envirocar.obdig.util.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,8 +91,12 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 	private static final int SLEEP_TIME = 25;
 	private static final int MAX_SLEEP_TIME = 5000;
 	private static final int MAX_INVALID_RESPONSE_COUNT = 5;
-	private static final int MIN_BACKLIST_COUNT = 5;
 	private static final int MAX_SEARCHING_COUNT_IN_A_ROW = 10;
+	private static final int DEFAULT_RESPONSE_BUFFER_SIZE = 272;
+	private static final long RECOVERY_TIMEOUT = 2000;
+	private static final int MAX_RESYNC_LINES = 3;
+	private static final long MIN_COMMAND_STALL_TIMEOUT = 300;
+	private static final char ABORT_CHAR = ' ';
 	private static Set<String> whitelistedCommandNames = new HashSet<String>();
 	
 	private InputStream inputStream;
@@ -93,14 +104,24 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 	private boolean connectionEstablished;
 	private boolean staleConnection;
 	private int invalidResponseCount;
-	private Map<String, AtomicInteger> blacklistCandidates = new HashMap<String, AtomicInteger>();
-	private Set<String> blacklistedCommandNames = new HashSet<String>();
 	
 	private int searchingCountInARow;
-	private Set<PID> supportedPIDs;
 	private int cycle = 0;
-	private String preferredLambdaProbe;
+	private boolean headersEnabled;
+	private SessionState sessionState = new SessionState();
+	private int cycleByteCount;
+	private int cycleFilteredByteCount;
+	private int lastCycleByteCount = -1;
+	private int lastCycleFilteredByteCount = -1;
+	private long lastCommandTime;
 	private ExecutorService initializationExecutor = Executors.newSingleThreadExecutor();
+	private long averageLatency;
+	private final Object outputLock = new Object();
+	private long commandSequence;
+	private volatile long inFlightSequence;
+	private boolean recovering;
+	private volatile boolean recoveryExpired;
+	private volatile boolean cycleCongested;
 	
 	static {
 //		whitelistedCommandNames.add(new FuelSystemStatus().getCommandName());
@@ -136,12 +157,36 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 	}
 	
 	protected List<AbstractCommand> getRequestCommands() {
+		EngineStateTracker engineState = sessionState.getEngineStateTracker();
+		if (engineState.isEngineOff()) {
+			/*
+			 * the car is parked: only probe for the next engine start
+			 */
+			List<AbstractCommand> probe = new ArrayList<AbstractCommand>();
+			if (engineState.onKeepAliveDue(currentTimeMillis())) {
+				probe.add(new RPM());
+				probe.add(new Speed());
+			}
+			return probe;
+		}
+		
+		PIDSubscriptions subscriptions = sessionState.getPIDSubscriptions();
+		if (!subscriptions.isEmpty()) {
+			return getSubscribedCommands(subscriptions);
+		}
+		
 		List<AbstractCommand> requestCommands;
+		Set<PID> supportedPIDs = sessionState.getSupportedPIDs();
 		if (supportedPIDs != null && supportedPIDs.size() != 0) {
 			requestCommands = new ArrayList<AbstractCommand>();
 			for (PID pid : supportedPIDs) {
 				AbstractCommand cmd = PIDUtil.instantiateCommand(pid);
-				if (cmd != null) {
+				
+				/*
+				 * the lambda probes are added after their discovery, the
+				 * capability request is only part of the discovery
+				 */
+				if (cmd != null && !(cmd instanceof O2LambdaProbe) && !(cmd instanceof O2SensorsPresent)) {
 					requestCommands.add(cmd);
 				}
 			}
@@ -159,10 +204,19 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 		}
 		
 		/*
-		 * XXX: Tryout for Lambda probes. better: do via PIDSupported
-		 * 
+		 * O2 sensors: sample the discovered ones. Only if the car did
+		 * not report its capabilities, probe one sensor per cycle
 		 */
-		if (this.preferredLambdaProbe == null || this.preferredLambdaProbe.isEmpty()) {
+		List<PID> oxygenSensors = sessionState.getOxygenSensorPIDs();
+		String preferredLambdaProbe = sessionState.getPreferredLambdaProbe();
+		if (oxygenSensors != null) {
+			if (cycle % FeatureFlags.getO2SensorSamplingInterval() == 0) {
+				for (PID pid : oxygenSensors) {
+					requestCommands.add(O2LambdaProbe.fromPIDEnum(pid));
+				}
+			}
+		}
+		else if (preferredLambdaProbe == null || preferredLambdaProbe.isEmpty()) {
 			if (cycle % 8 == 0) {
 				requestCommands.add(O2LambdaProbe.fromPIDEnum(PID.O2_LAMBDA_PROBE_1_VOLTAGE));
 				requestCommands.add(O2LambdaProbe.fromPIDEnum(PID.O2_LAMBDA_PROBE_1_CURRENT));	
@@ -204,49 +258,127 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 		}
 		
 		
-		requestCommands.add(new FuelSystemStatus());
-		requestCommands.add(new ShortTermTrimBank1());
-		requestCommands.add(new LongTermTrimBank1());
+		addIfAbsent(requestCommands, new FuelSystemStatus());
+		addIfAbsent(requestCommands, new ShortTermTrimBank1());
+		addIfAbsent(requestCommands, new LongTermTrimBank1());
+		
+		/*
+		 * configured PIDs, decoded via the PID registry if there
+		 * is no dedicated command
+		 */
+		for (String pid : FeatureFlags.getRequestedPIDs()) {
+			AbstractCommand cmd = PIDUtil.instantiateCommand(pid);
+			if (cmd != null) {
+				addIfAbsent(requestCommands, cmd);
+			}
+			else {
+				logger.debug("No decodable definition for requested PID "+pid);
+			}
+		}
+		
+		cycle++;
+		
+		return requestCommands;
+	}
+
+	/**
+	 * @return the commands for the subscribed PIDs which are due in
+	 * this cycle. PIDs reported as unsupported are skipped.
+	 */
+	private List<AbstractCommand> getSubscribedCommands(PIDSubscriptions subscriptions) {
+		long now = System.currentTimeMillis();
+		subscriptions.onCycle(now);
+		
+		Set<PID> supportedPIDs = sessionState.getSupportedPIDs();
+		List<AbstractCommand> requestCommands = new ArrayList<AbstractCommand>();
+		for (String pid : subscriptions.getSubscribedPIDs()) {
+			PID known = PIDUtil.fromString(pid);
+			if (known != null && supportedPIDs != null && !supportedPIDs.isEmpty()
+					&& !supportedPIDs.contains(known)) {
+				continue;
+			}
+			
+			int pidByte = PIDUtil.toPIDByte(pid);
+			if (!subscriptions.isDue(pidByte, now)) {
+				continue;
+			}
+			
+			AbstractCommand cmd = PIDUtil.instantiateCommand(pid);
+			if (cmd != null) {
+				requestCommands.add(cmd);
+				subscriptions.onRequested(pidByte, now);
+			}
+		}
 		
 		cycle++;
 		
 		return requestCommands;
 	}
 
+	private void addIfAbsent(List<AbstractCommand> requestCommands, AbstractCommand cmd) {
+		for (AbstractCommand c : requestCommands) {
+			if (c.getPIDAsString().equals(cmd.getPIDAsString())) {
+				return;
+			}
+		}
+		requestCommands.add(cmd);
+	}
+
 	private void onInitializationCommand(AbstractCommand cmd) {
 		if (cmd instanceof PIDSupported && FeatureFlags.usePIDSupported()) {
 			if (!(cmd.getCommandState() == CommonCommandState.EXECUTION_ERROR)) {
-				this.supportedPIDs = ((PIDSupported) cmd).getSupportedPIDs();
+				Set<PID> pids = ((PIDSupported) cmd).getSupportedPIDs();
+				Set<PID> known = sessionState.getSupportedPIDs();
+				if (known != null && !"00".equals(cmd.getPIDAsString())) {
+					/*
+					 * a subsequent group, keep the ones of the previous groups
+					 */
+					known.addAll(pids);
+				}
+				else {
+					sessionState.setSupportedPIDs(pids);
+				}
 			}
 		}
 		processInitializationCommand(cmd);
 	}
 	
+	/**
+	 * @return the time base of the engine-off polling in ms
+	 */
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+	
 	private void onBlacklistCandidate(AbstractCommand cmd) {
 		String name = cmd.getCommandName();
 		
-		if (blacklistedCommandNames.contains(name)) return;
-		
 		/*
 		 * whiteliste, basically for testing via user study
 		 */
 		if (whitelistedCommandNames.contains(name)) return;
 		
-		AtomicInteger candidate = blacklistCandidates.get(name);
-		
-		if (candidate != null) {
-			int count = candidate.incrementAndGet();
-			if (count > MIN_BACKLIST_COUNT) {
-				logger.info("Blacklisting command: "+name);
-				blacklistedCommandNames.add(name);
-			}
+		int skipped = sessionState.getPIDHealth().onFailure(PIDHealth.toPIDByte(cmd));
+		if (skipped > 0) {
+			logger.info("Backing off command "+name+" for "+skipped+" cycles");
 		}
-		else {
-			blacklistCandidates.put(name, new AtomicInteger(0));
+	}
+	
+	/**
+	 * the signal is kept for the current cycle regardless of the
+	 * pacing mode, which might never apply it
+	 */
+	private void onCongestion() {
+		cycleCongested = true;
+		sessionState.getPacingController().onCongestion();
+	}
+	
+	private void onHealthyResponse(AbstractCommand cmd) {
+		if (sessionState.getPIDHealth().onSuccess(PIDHealth.toPIDByte(cmd))) {
+			logger.info("Command recovered: "+cmd.getCommandName());
 		}
 	}
 	
-
 	/**
 	 * "Run" the provided command. This includes sending (writing bytes to stream)
 	 * and reading and parsing the response stream.
@@ -256,8 +388,20 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 	 */
 	private void runCommand(AbstractCommand cmd)
 			throws IOException {
-		logger.debug("Sending command " +cmd.getCommandName()+ " / "+ new String(cmd.getOutgoingBytes()));
+		if (logger.isDebugEnabled()) {
+			logger.debug("Sending command " +cmd.getCommandName()+ " / "+ new String(cmd.getOutgoingBytes()));
+		}
+		
+		long gap = getMinimumCommandGap() - (System.currentTimeMillis() - lastCommandTime);
+		if (gap > 0) {
+			try {
+				Thread.sleep(gap);
+			} catch (InterruptedException e) {
+				logger.warn(e.getMessage(), e);
+			}
+		}
 		
+		int bytesBefore = cycleByteCount;
 		try {
 			sendCommand(cmd);	
 		} catch (RuntimeException e) {
@@ -271,12 +415,73 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 		// waiting with InputStream#available() does not work on all devices (and cars?!)
 //		waitForResult(cmd);
 		
+		/*
+		 * the probes of a parked car may take long, the loss
+		 * of the connection is detected by the looper then
+		 */
+		StallWatchdog.Watch watch = sessionState.getCommandWatch();
+		boolean watched = watch != null && !sessionState.getEngineStateTracker().isEngineOff();
+		long sequence = ++commandSequence;
+		inFlightSequence = sequence;
+		if (watched) {
+			watch.arm(getCommandStallTimeout(), sequence);
+		}
+		
+		long sent = System.nanoTime();
 		try {
 			readResult(cmd);	
 		} catch (RuntimeException e) {
 			logger.warn("Error while sending command '" + cmd.toString() + "': "+e.getMessage(), e);
 			cmd.setCommandState(CommonCommandState.EXECUTION_ERROR);
+		} finally {
+			synchronized (outputLock) {
+				inFlightSequence = 0;
+			}
+			if (watched) {
+				watch.disarm();
+			}
+		}
+		
+		long latency = System.nanoTime() - sent;
+		averageLatency = averageLatency == 0 ? latency : (averageLatency * 7 + latency) / 8;
+		if (connectionEstablished) {
+			onResponseReceived(cmd, latency);
 		}
+		
+		Instrumentation instrumentation = InstrumentationProvider.get();
+		if (instrumentation.isEnabled()) {
+			instrumentation.onCommandRoundTrip(sessionState, cmd, cycleByteCount - bytesBefore, latency);
+		}
+	}
+	
+	/**
+	 * @return the time in ms after which the response of the in-flight
+	 * command is considered as stalled
+	 */
+	private long getCommandStallTimeout() {
+		long timeout = StallWatchdog.STALL_FACTOR * TimeUnit.NANOSECONDS.toMillis(averageLatency);
+		return Math.min(getMaxTimeout(), Math.max(MIN_COMMAND_STALL_TIMEOUT, timeout));
+	}
+	
+	/**
+	 * Called after the response of a data request command has been
+	 * read and parsed.
+	 * 
+	 * @param cmd the executed command
+	 * @param latencyNanos the time between sending the request and receiving the response
+	 */
+	protected void onResponseReceived(AbstractCommand cmd, long latencyNanos) {
+	}
+	
+	/**
+	 * A sub-class may provide adapter commands (e.g. timing adjustments)
+	 * which are executed before the next batch of request commands.
+	 * Their responses are not forwarded to the listener.
+	 * 
+	 * @return the list of adapter commands, may be empty
+	 */
+	protected List<AbstractCommand> getCycleSetupCommands() {
+		return Collections.emptyList();
 	}
 	
 	
@@ -291,9 +496,41 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 	 */
 	private void sendCommand(AbstractCommand cmd) throws IOException {
 		// write to OutputStream, or in this case a BluetoothSocket
-		outputStream.write(cmd.getOutgoingBytes());
-		outputStream.write(cmd.getEndOfLineSend());
-		outputStream.flush();
+		byte[] bytes = getOutgoingBytes(cmd);
+		synchronized (outputLock) {
+			outputStream.write(bytes);
+			outputStream.write(cmd.getEndOfLineSend());
+			outputStream.flush();
+		}
+		lastCommandTime = System.currentTimeMillis();
+		cycleByteCount += bytes.length + 1;
+		sessionState.getFrameTrace().transmit(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * A sub-class may use an adapter specific framing for
+	 * the request of a command.
+	 * 
+	 * @param cmd the command to send
+	 * @return the bytes to write, excluding the end of line
+	 */
+	protected byte[] getOutgoingBytes(AbstractCommand cmd) {
+		return cmd.getOutgoingBytes();
+	}
+	
+	/**
+	 * @return the minimum gap in ms between two commands. Only
+	 * required by adapters which cannot handle fast requests.
+	 */
+	protected long getMinimumCommandGap() {
+		return 0;
+	}
+	
+	/**
+	 * @return the maximum number of bytes of a response
+	 */
+	protected int getResponseBufferSize() {
+		return DEFAULT_RESPONSE_BUFFER_SIZE;
 	}
 	
 	/**
@@ -338,33 +575,142 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 		byte[] rawData = readResponseLine(cmd);
 		cmd.setResultTime(System.currentTimeMillis());
 
+		if (isHeaderAware(cmd)) {
+			Map<String, byte[]> responses = ECUResponseDemultiplexer.demultiplex(rawData);
+			if (responses != null) {
+				parseECUResponses(cmd, responses);
+				return;
+			}
+			rawData = removeLineSeparators(rawData);
+		}
+		
 		// read string each two chars
 		cmd.parseRawData(rawData);
 	}
 
+	/**
+	 * parse the response of the pinned ECU. If no ECU is pinned yet,
+	 * the first ECU providing a valid response gets pinned.
+	 */
+	private void parseECUResponses(AbstractCommand cmd, Map<String, byte[]> responses) {
+		List<String> candidates = new ArrayList<String>(responses.keySet());
+		String pinnedECU = sessionState.getPinnedECU();
+		if (pinnedECU != null && candidates.remove(pinnedECU)) {
+			candidates.add(0, pinnedECU);
+		}
+		
+		for (String ecu : candidates) {
+			cmd.parseRawData(responses.get(ecu));
+			
+			if (cmd.getCommandState() == CommonCommandState.FINISHED) {
+				cmd.setSourceECU(ecu);
+				if (pinnedECU == null) {
+					logger.info("Pinning requests to ECU "+ ecu +"; responding ECUs: "+ responses.keySet());
+					sessionState.setPinnedECU(ecu);
+				}
+				return;
+			}
+		}
+		
+		/*
+		 * no valid response, provide the state of the primary ECU
+		 */
+		cmd.setSourceECU(candidates.get(0));
+		cmd.parseRawData(responses.get(candidates.get(0)));
+	}
+
+	private byte[] removeLineSeparators(byte[] rawData) {
+		byte[] result = new byte[rawData.length];
+		int index = 0;
+		for (byte b : rawData) {
+			if (b != AbstractCommand.COMMAND_SEND_END) {
+				result[index++] = b;
+			}
+		}
+		return Arrays.copyOf(result, index);
+	}
+
+	/**
+	 * @return true if the response of the command carries headers. Adapter
+	 * commands ({@link StringResultCommand}s) are passed through as is.
+	 */
+	private boolean isHeaderAware(AbstractCommand cmd) {
+		return headersEnabled && !(cmd instanceof StringResultCommand);
+	}
+
 	private byte[] readResponseLine(AbstractCommand cmd) throws IOException {
 		byte b = 0;
 
 		Set<Character> ignored = cmd.getIgnoredChars();
+		boolean keepLines = isHeaderAware(cmd);
 		
-		byte[] buffer = new byte[272];
+		byte[] buffer = new byte[getResponseBufferSize()];
 		int index = 0;
 		// read until '>' arrives
 		while (index < buffer.length && (char) (b = (byte) inputStream.read()) != cmd.getEndOfLineReceive()) {
-			if (!ignored.contains((char) b)){
+			cycleByteCount++;
+			if (keepLines && b == AbstractCommand.COMMAND_SEND_END) {
+				/*
+				 * lines separate the frames of the responding ECUs
+				 */
 				buffer[index++] = b;
 			}
+			else if (!ignored.contains((char) b)){
+				buffer[index++] = b;
+			}
+			else {
+				cycleFilteredByteCount++;
+			}
 		}
+		cycleByteCount++;
 		
 		if (index > 0) {
-			logger.debug("Response read. Data (base64): "+
-					Base64.encodeBytes(buffer, 0, index));
+			sessionState.getFrameTrace().receive(buffer, 0, index);
+			
+			if (logger.isDebugEnabled()) {
+				logger.debug("Response read. Data (base64): "+
+						Base64.encodeBytes(buffer, 0, index));
+			}
 		}
 
 		return Arrays.copyOf(buffer, index);
 	}
 
 
+	/**
+	 * Enable or disable the parsing of responses with headers. If enabled,
+	 * responses of several ECUs are demultiplexed and requests get
+	 * pinned to the first ECU providing valid responses.
+	 * 
+	 * @param headersEnabled true if the adapter sends headers (AT H1)
+	 */
+	protected void setHeadersEnabled(boolean headersEnabled) {
+		this.headersEnabled = headersEnabled;
+	}
+	
+	/**
+	 * @return the number of bytes sent and received during the
+	 * last request cycle, or -1 if no cycle has been completed
+	 */
+	protected int getLastCycleByteCount() {
+		return lastCycleByteCount;
+	}
+	
+	/**
+	 * @return the number of received bytes of the last request cycle
+	 * which were filtered (e.g. spaces), or -1 if no cycle has been completed
+	 */
+	protected int getLastCycleFilteredByteCount() {
+		return lastCycleFilteredByteCount;
+	}
+	
+	/**
+	 * @return the ID of the ECU the requests are pinned to (e.g. 7E8), or null
+	 */
+	protected String getPinnedECU() {
+		return sessionState.getPinnedECU();
+	}
+
 	public int getMaxTimeout() {
 		return MAX_SLEEP_TIME;
 	}
@@ -389,7 +735,9 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 				public Boolean call() throws Exception {
 					try {
 						executeCommands(cmds);
-						executeCommand(new PIDSupported());
+						PIDSupported baseGroup = new PIDSupported();
+						executeCommand(baseGroup);
+						discoverOxygenSensors(baseGroup);
 						return true;
 					} catch (UnmatchedCommandResponseException e) {
 						logger.warn("This should never happen!", e);
@@ -411,6 +759,13 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 				throw new AdapterFailedException("Init commands took too long.");
 			}
 			
+			/*
+			 * all responses have been processed, so this is definitive
+			 */
+			if (connectionState() != ConnectionState.CONNECTED) {
+				throw new AdapterFailedException("Init responses not accepted by "+ getClass().getSimpleName());
+			}
+			
 		} catch (InterruptedException e) {
 			throw new AdapterFailedException(e.getMessage());
 		} catch (ExecutionException e) {
@@ -423,12 +778,35 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 	
 	@Override
 	public List<AbstractCommand> executeRequestCommands() throws IOException, AdapterFailedException, ConnectionLostException {
+		cycleByteCount = 0;
+		cycleFilteredByteCount = 0;
+		
+		for (AbstractCommand cmd : getCycleSetupCommands()) {
+			try {
+				executeCommand(cmd);
+			} catch (UnmatchedCommandResponseException e) {
+				logger.warn("Unmatched Response detected! trying to read another line.");
+				readResponseLine(cmd);
+			}
+		}
+		
 		List<AbstractCommand> list = getRequestCommands();
+		PIDHealth health = sessionState.getPIDHealth();
+		CommandQueue injected = sessionState.getCommandQueue();
+		health.nextCycle();
+		cycleCongested = false;
+		boolean keepAlive = sessionState.getEngineStateTracker().isEngineOff();
 		
 		for (AbstractCommand cmd : list) {
-			if (blacklistedCommandNames.contains(cmd.getCommandName())) {
+			/*
+			 * injected commands of high priority take the next slot
+			 */
+			executeInjectedCommands(injected, CommandPriority.HIGH);
+			
+			if (!keepAlive && !health.isDue(PIDHealth.toPIDByte(cmd))) {
 				/*
-				 * we have received enough failed responses for this command
+				 * the command failed too often and waits for its next re-probe.
+				 * the keep-alive probe is always sent, it detects the engine start
 				 */
 				continue;
 			}
@@ -448,11 +826,110 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 			}
 		}
 		
+		executeInjectedCommands(injected, CommandPriority.HIGH);
+		
+		/*
+		 * low priority commands only use the capacity left by
+		 * a cycle without signs of overload
+		 */
+		if (!cycleCongested) {
+			CommandFuture future = injected.poll(CommandPriority.LOW);
+			if (future != null) {
+				executeInjectedCommand(future);
+			}
+		}
+		
+		lastCycleByteCount = cycleByteCount;
+		lastCycleFilteredByteCount = cycleFilteredByteCount;
+		
 		return list;
 	}
 	
+	private void executeInjectedCommands(CommandQueue queue, CommandPriority priority)
+			throws AdapterFailedException, IOException, ConnectionLostException {
+		CommandFuture future;
+		while ((future = queue.poll(priority)) != null) {
+			executeInjectedCommand(future);
+		}
+	}
+
+	/**
+	 * executes the command like a request command. The result is only
+	 * handed to the future, not to the data listener.
+	 */
+	private void executeInjectedCommand(CommandFuture future)
+			throws AdapterFailedException, IOException, ConnectionLostException {
+		AbstractCommand cmd = future.getCommand();
+		try {
+			try {
+				executeCommand(cmd);
+			} catch (UnmatchedCommandResponseException e) {
+				logger.warn("Unmatched Response detected for injected command! trying to read another line.");
+				readResponseLine(cmd);
+			}
+		} catch (AdapterFailedException e) {
+			future.fail(e);
+			throw e;
+		} catch (IOException e) {
+			future.fail(e);
+			throw e;
+		} catch (ConnectionLostException e) {
+			future.fail(e);
+			throw e;
+		} catch (RuntimeException e) {
+			future.fail(e);
+			throw e;
+		}
+		
+		future.complete();
+	}
+	
+	@Override
+	public Future<AbstractCommand> submitCommand(AbstractCommand cmd, CommandPriority priority) {
+		return sessionState.getCommandQueue().submit(cmd, priority);
+	}
+	
+	/**
+	 * Resolves the O2 sensors from PID 13/1D and the PID supported
+	 * group 20. Only the sensors found are sampled afterwards.
+	 * 
+	 * @param baseGroup the response of the PID supported group 00
+	 */
+	private void discoverOxygenSensors(PIDSupported baseGroup) throws AdapterFailedException, IOException, ConnectionLostException {
+		if (sessionState.getOxygenSensorPIDs() != null) {
+			/*
+			 * already known from a previous initialization
+			 */
+			return;
+		}
+		
+		O2SensorsPresent present = OxygenSensorDiscovery.createPresenceCommand(baseGroup);
+		PIDSupported sensorGroup = null;
+		try {
+			if (present != null) {
+				executeCommand(present);
+			}
+			if (OxygenSensorDiscovery.isSensorGroupAvailable(baseGroup)) {
+				sensorGroup = new PIDSupported("20");
+				executeCommand(sensorGroup);
+			}
+		} catch (UnmatchedCommandResponseException e) {
+			logger.warn("Unmatched response during O2 sensor discovery.");
+		}
+		
+		List<PID> pids = OxygenSensorDiscovery.resolve(present, sensorGroup);
+		if (pids == null) {
+			logger.info("O2 sensor capabilities not reported. Falling back to probing.");
+		}
+		else {
+			logger.info("Discovered O2 sensors: "+pids);
+		}
+		sessionState.setOxygenSensorPIDs(pids);
+	}
+	
 	private void evaluateSupportedLambdaCommand(AbstractCommand cmd) {
-		if (this.preferredLambdaProbe != null && !this.preferredLambdaProbe.isEmpty()) {
+		String preferredLambdaProbe = sessionState.getPreferredLambdaProbe();
+		if (preferredLambdaProbe != null && !preferredLambdaProbe.isEmpty()) {
 			/*
 			 * no action required, we already got what we want
 			 */
@@ -460,7 +937,7 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 		}
 		
 		if (cmd instanceof O2LambdaProbe) {
-			this.preferredLambdaProbe = ((O2LambdaProbe) cmd).getPID();
+			sessionState.setPreferredLambdaProbe(((O2LambdaProbe) cmd).getPID());
 		}
 	}
 
@@ -523,6 +1000,9 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 					if (cmd instanceof PIDSupported) {
 						onInitializationCommand(cmd);
 					}
+					else {
+						onHealthyResponse(cmd);
+					}
 					if (staleConnection) {
 						staleConnection = false;
 						invalidResponseCount = 0;
@@ -531,22 +1011,53 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 				}
 				break;
 			case EXECUTION_ERROR:
-				String raw = cmd.getRawData() == null ? "null" : new String(cmd.getRawData());
-				logger.debug("Execution Error for " +cmd.getCommandName() +": "+raw);
+				sessionState.getFrameTrace().event(FrameTrace.Event.COMMAND_ERROR, cmd.getPIDAsString());
+				if (logger.isDebugEnabled()) {
+					String raw = cmd.getRawData() == null ? "null" : new String(cmd.getRawData());
+					logger.debug("Execution Error for " +cmd.getCommandName() +": "+raw);
+				}
+				
+				/*
+				 * NO DATA for a PID which responded before: the ECU
+				 * did not keep up with the adapter timeout
+				 */
+				if (sessionState.getEngineStateTracker().isEngineOff()) {
+					/*
+					 * a parked car answers the keep-alive probe with NODATA,
+					 * which is neither a sign of overload nor of a dead PID
+					 */
+					break;
+				}
+				if (cmd instanceof NumberResultCommand && ((NumberResultCommand) cmd).isNoData()
+						&& sessionState.getPIDHealth().hasResponded(PIDHealth.toPIDByte(cmd))) {
+					onCongestion();
+				}
 				this.onBlacklistCandidate(cmd);
 				break;
 				
 			case SEARCHING:
-				logger.info("Adapter searching. Continuing. Response for " +cmd.getCommandName() +": "+new String(cmd.getRawData()));
+				sessionState.getFrameTrace().event(FrameTrace.Event.COMMAND_SEARCHING, cmd.getPIDAsString());
+				if (logger.isDebugEnabled()) {
+					logger.debug("Adapter searching. Continuing. Response for " +cmd.getCommandName());
+				}
 				staleConnection = true;
 				
 				if (searchingCountInARow++ > MAX_SEARCHING_COUNT_IN_A_ROW) {
 					throw new ConnectionLostException("Adapter is SEARCHING mode for too long.");
 				}
 				
+				break;
+			case QUEUE_ERROR:
+				sessionState.getFrameTrace().event(FrameTrace.Event.COMMAND_OVERLOAD, cmd.getPIDAsString());
+				if (logger.isDebugEnabled()) {
+					logger.debug("Adapter overloaded. Response for " +cmd.getCommandName());
+				}
+				onCongestion();
 				break;
 			case UNMATCHED_RESULT:
-				logger.warn("Did not receive the expected result! Expected: "+cmd.getPIDAsString());
+				sessionState.getFrameTrace().event(FrameTrace.Event.COMMAND_UNMATCHED, cmd.getPIDAsString());
+				logger.warn("Did not receive the expected result!");
+				onCongestion();
 				
 				if (staleConnection && invalidResponseCount++ > MAX_INVALID_RESPONSE_COUNT) {
 					throw new ConnectionLostException("Received too many unmatched responses.");
@@ -567,12 +1078,152 @@ public abstract class AbstractSequentialConnector implements OBDConnector {
 	public void startExecutions(CommandExecutor exec) {
 	}
 	
+	@Override
+	public void setSessionState(SessionState state) {
+		this.sessionState = state;
+	}
+	
+	protected SessionState getSessionState() {
+		return sessionState;
+	}
+	
+	/**
+	 * A sub-class shall provide the adapter commands to recover
+	 * the communication at the given level. The recovery succeeds
+	 * if a data request returns a valid response afterwards.
+	 * 
+	 * @param level the recovery level
+	 * @return the list of adapter commands, may be empty
+	 */
+	protected List<AbstractCommand> getRecoveryCommands(RecoveryLevel level) {
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * The recovery runs on the calling thread, so no other thread keeps
+	 * reading the stream after a timeout. Once the recovery timeout has
+	 * passed, the adapter is interrupted and the recovery gives up.
+	 */
+	@Override
+	public boolean recoverConnection(final RecoveryLevel level) throws IOException {
+		StallWatchdog.Watch watch = StallWatchdog.getDefault().register(new StallListener() {
+			
+			@Override
+			public void onStall(StallWatchdog.Watch w, long tag, long overdueMillis) {
+				synchronized (outputLock) {
+					if (!recovering) {
+						return;
+					}
+					
+					logger.info("Recovery "+ level +" took too long.");
+					recoveryExpired = true;
+					try {
+						outputStream.write(ABORT_CHAR);
+						outputStream.flush();
+					} catch (IOException e) {
+						logger.warn("Could not abort the recovery: "+e.getMessage(), e);
+					}
+				}
+			}
+		});
+		
+		synchronized (outputLock) {
+			recoveryExpired = false;
+			recovering = true;
+		}
+		watch.arm(RECOVERY_TIMEOUT);
+		try {
+			return executeRecovery(level);
+		}
+		finally {
+			synchronized (outputLock) {
+				recovering = false;
+			}
+			watch.cancel();
+		}
+	}
+
+	private boolean executeRecovery(RecoveryLevel level) throws IOException {
+		/*
+		 * discard what is left of the previous responses. available()
+		 * might not be reliable, so the acknowledgements are checked as well
+		 */
+		while (inputStream.available() > 0) {
+			inputStream.read();
+		}
+		
+		staleConnection = false;
+		invalidResponseCount = 0;
+		searchingCountInARow = 0;
+		
+		try {
+			for (AbstractCommand cmd : getRecoveryCommands(level)) {
+				executeCommand(cmd);
+				
+				int lines = 0;
+				while (!isAcknowledged(cmd) && !recoveryExpired && lines++ < MAX_RESYNC_LINES) {
+					cmd.parseRawData(readResponseLine(cmd));
+				}
+				
+				if (recoveryExpired) {
+					return false;
+				}
+			}
+			
+			AbstractCommand probe = new Speed();
+			executeCommand(probe);
+			return !recoveryExpired && probe.getCommandState() == CommonCommandState.FINISHED;
+		} catch (AdapterFailedException e) {
+			logger.info(e.getMessage());
+		} catch (UnmatchedCommandResponseException e) {
+			logger.info("Unmatched response during recovery "+ level);
+		} catch (ConnectionLostException e) {
+			logger.info(e.getMessage());
+		}
+		return false;
+	}
+
+	private boolean isAcknowledged(AbstractCommand cmd) {
+		if (!cmd.awaitsResults() || !(cmd instanceof StringResultCommand)) {
+			return true;
+		}
+		return cmd.getRawData() != null && ((StringResultCommand) cmd).getStringResult().contains("OK");
+	}
+	
 	@Override
 	public void shutdown() {
 		if (initializationExecutor != null) {
 			initializationExecutor.shutdown();
 		}
 	}
+	
+	/**
+	 * Any character interrupts an ELM327 compatible adapter. It answers
+	 * with STOPPED (treated as an overload) and the blocked read returns.
+	 * A space is used as it is ignored if the response arrived in the
+	 * meantime, while a CR at the prompt would repeat the last command.
+	 */
+	@Override
+	public void abortCommand(long sequence) {
+		synchronized (outputLock) {
+			if (sequence == 0 || inFlightSequence != sequence) {
+				return;
+			}
+			
+			try {
+				outputStream.write(ABORT_CHAR);
+				outputStream.flush();
+			} catch (IOException e) {
+				logger.warn("Could not abort the command: "+e.getMessage(), e);
+			}
+		}
+		
+		/*
+		 * a timeout is a sign of overload, even if the adapter
+		 * does not report the interruption
+		 */
+		onCongestion();
+	}
 
 	
 }
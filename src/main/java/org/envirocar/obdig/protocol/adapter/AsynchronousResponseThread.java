@@ -32,6 +32,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.instrumentation.Instrumentation;
+import org.envirocar.obdig.instrumentation.InstrumentationProvider;
 import org.envirocar.obdig.protocol.CommandExecutor;
 import org.envirocar.obdig.protocol.exception.LooperStoppedException;
 import org.slf4j.Logger;
@@ -41,7 +43,7 @@ import org.slf4j.LoggerFactory;
 public class AsynchronousResponseThread {
 	
 	private static final Logger logger = LoggerFactory.getLogger(AsynchronousResponseThread.class);
-	private static final int MAX_BUFFER_SIZE = 32;
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 32;
 	private CommandExecutor handler;
 	private InputStream inputStream;
 	
@@ -52,14 +54,29 @@ public class AsynchronousResponseThread {
 	protected boolean running = true;
 	private byte[] globalBuffer = new byte[64];
 	private int globalIndex;
+	private boolean lineOverflow;
 	private ResponseParser responseParser;
+	private int maxBufferSize;
+	private long responseLineCount;
+	private SessionState sessionState;
+	private FrameTrace frameTrace;
 
 	public AsynchronousResponseThread(final InputStream in, ResponseParser responseParser, CommandExecutor executor) {
+		this(in, responseParser, executor, DEFAULT_MAX_BUFFER_SIZE);
+	}
+	
+	/**
+	 * @param maxBufferSize the number of commands to keep until
+	 * they are pulled. Further responses are dropped.
+	 */
+	public AsynchronousResponseThread(final InputStream in, ResponseParser responseParser,
+			CommandExecutor executor, int maxBufferSize) {
 //		super("AsynchronousResponseThread");
 		this.handler = executor;
 		this.inputStream = in;
 		
 		this.responseParser = responseParser;
+		this.maxBufferSize = maxBufferSize;
 		
 		this.readInputStreamRunnable = new Runnable() {
 			
@@ -73,10 +90,13 @@ public class AsynchronousResponseThread {
 						
 						if (cmd != null) {
 							synchronized (AsynchronousResponseThread.this) {
-								buffer.add(cmd);	
+								buffer.add(cmd);
+								updateQueueDepth();
 							}	
 						}
 						
+						pullBufferedResponses();
+						
 					} catch (IOException e) {
 						logger.warn(e.getMessage(), e);
 						running = false;
@@ -107,25 +127,95 @@ public class AsynchronousResponseThread {
 					/*
 					 * are we fed?
 					 */
-					isReplete = buffer.size() > MAX_BUFFER_SIZE;
+					isReplete = buffer.size() > maxBufferSize;
 				}
 				
 				AbstractCommand result = null;
-				if (!isReplete) {
+				if (lineOverflow) {
+					logger.warn("Dropping response exceeding "+globalBuffer.length+" bytes.");
+					reportDrop(Instrumentation.DROP_LINE_OVERFLOW, globalBuffer.length);
+				}
+				else if (!isReplete) {
 					result = responseParser.processResponse(globalBuffer,
 							0, globalIndex);	
 				}
+				else {
+					reportDrop(Instrumentation.DROP_BUFFER_FULL, globalIndex);
+				}
+				
+				if (frameTrace != null) {
+					frameTrace.receive(globalBuffer, 0, globalIndex);
+				}
 				
 				globalIndex = 0;
+				lineOverflow = false;
+				
+				synchronized (this) {
+					responseLineCount++;
+					notifyAll();
+				}
 				return result;
-			} else {
+			} else if (globalIndex < globalBuffer.length) {
 				globalBuffer[globalIndex++] = byteIn;
 			}
+			else {
+				lineOverflow = true;
+			}
 		}
 		
 		return null;
 	}
 	
+	/**
+	 * @param state the session to record the received lines and
+	 * the buffer depth to
+	 */
+	public void setSessionState(SessionState state) {
+		this.sessionState = state;
+		this.frameTrace = state != null ? state.getFrameTrace() : null;
+	}
+	
+	private void pullBufferedResponses() {
+		if (!(responseParser instanceof BufferingResponseParser)) {
+			return;
+		}
+		
+		BufferingResponseParser parser = (BufferingResponseParser) responseParser;
+		AbstractCommand cmd;
+		while ((cmd = parser.pollBufferedResponse()) != null) {
+			boolean dropped;
+			synchronized (this) {
+				dropped = buffer.size() > maxBufferSize;
+				if (!dropped) {
+					buffer.add(cmd);
+					updateQueueDepth();
+				}
+			}
+			if (dropped) {
+				reportDrop(Instrumentation.DROP_BUFFER_FULL, 0);
+			}
+		}
+	}
+	
+	private void reportDrop(String reason, int length) {
+		if (sessionState != null && Instrumentation.DROP_BUFFER_FULL.equals(reason)) {
+			sessionState.getPacingController().onCongestion();
+		}
+		
+		Instrumentation instrumentation = InstrumentationProvider.get();
+		if (instrumentation.isEnabled()) {
+			instrumentation.onResponseDropped(sessionState, reason, length);
+		}
+	}
+	
+	/**
+	 * callers hold the lock of this object
+	 */
+	private void updateQueueDepth() {
+		if (sessionState != null) {
+			sessionState.setResponseQueueDepth(buffer.size());
+		}
+	}
 
 //	@Override
 //	public void run() {
@@ -139,12 +229,42 @@ public class AsynchronousResponseThread {
 //		}
 //	}
 
+	/**
+	 * @return the number of response lines received so far
+	 */
+	public synchronized long getResponseLineCount() {
+		return responseLineCount;
+	}
+	
+	/**
+	 * wait until a response line arrived after the given count
+	 * 
+	 * @param previousCount the result of {@link #getResponseLineCount()} before sending a command
+	 * @param timeout the deadline in ms
+	 * @return true if a line arrived, false if the deadline exceeded
+	 */
+	public synchronized boolean awaitResponseLine(long previousCount, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (running && responseLineCount <= previousCount && remaining > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				logger.warn(e.getMessage(), e);
+				return false;
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return responseLineCount > previousCount;
+	}
+
 	public List<AbstractCommand> pullAvailableCommands() {
 		List<AbstractCommand> result;
 		synchronized (this) {
 			result = new ArrayList<AbstractCommand>(buffer.size());
 			result.addAll(buffer);
 			buffer.clear();
+			updateQueueDepth();
 		}
 		return result;
 	}
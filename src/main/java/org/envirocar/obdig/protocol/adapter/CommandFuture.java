@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+
+/**
+ * The pending result of an injected command. It completes with the
+ * executed command, whose state tells whether the car provided a valid
+ * response. It fails if the connection broke while the command was
+ * executed or the session ended before. A command which is not yet
+ * executed can be cancelled.
+ */
+public class CommandFuture implements Future<AbstractCommand> {
+
+	private enum State {
+		QUEUED, RUNNING, DONE, CANCELLED
+	}
+	
+	private final AbstractCommand command;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private State state = State.QUEUED;
+	private Throwable failure;
+	
+	CommandFuture(AbstractCommand command) {
+		this.command = command;
+	}
+	
+	/**
+	 * @return the injected command
+	 */
+	public AbstractCommand getCommand() {
+		return command;
+	}
+	
+	/**
+	 * marks the command as being executed
+	 * 
+	 * @return false if the future has been cancelled or completed
+	 */
+	synchronized boolean start() {
+		if (state != State.QUEUED) {
+			return false;
+		}
+		state = State.RUNNING;
+		return true;
+	}
+	
+	void complete() {
+		finish(State.DONE, null);
+	}
+	
+	void fail(Throwable cause) {
+		finish(State.DONE, cause);
+	}
+	
+	private void finish(State target, Throwable cause) {
+		synchronized (this) {
+			if (state == State.DONE || state == State.CANCELLED) {
+				return;
+			}
+			state = target;
+			failure = cause;
+		}
+		done.countDown();
+	}
+	
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		/*
+		 * check and transition at once, a command picked up
+		 * in between has to complete regularly
+		 */
+		synchronized (this) {
+			if (state != State.QUEUED) {
+				return false;
+			}
+			state = State.CANCELLED;
+		}
+		done.countDown();
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return state == State.CANCELLED;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return state == State.DONE || state == State.CANCELLED;
+	}
+
+	@Override
+	public AbstractCommand get() throws InterruptedException, ExecutionException {
+		done.await();
+		return result();
+	}
+
+	@Override
+	public AbstractCommand get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException("No result for "+ command.getCommandName() +" yet.");
+		}
+		return result();
+	}
+	
+	private synchronized AbstractCommand result() throws ExecutionException {
+		if (state == State.CANCELLED) {
+			throw new CancellationException();
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return command;
+	}
+	
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.LinkedList;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.CommandPriority;
+
+/**
+ * The commands injected by the application (e.g. a single PID refresh
+ * or a diagnostic request), executed by a sequential connector between
+ * its request cycle commands. It is part of the {@link SessionState},
+ * so queued commands survive a reconnect.
+ */
+public class CommandQueue {
+
+	/**
+	 * the number of queued commands per priority
+	 */
+	public static final int MAX_SIZE = 32;
+	
+	private final LinkedList<CommandFuture> high = new LinkedList<CommandFuture>();
+	private final LinkedList<CommandFuture> low = new LinkedList<CommandFuture>();
+	
+	/**
+	 * @param cmd the command to execute
+	 * @param priority the priority
+	 * @return the future completed with the executed command
+	 * @throws RejectedExecutionException if too many commands are queued
+	 */
+	public synchronized CommandFuture submit(AbstractCommand cmd, CommandPriority priority) {
+		if (cmd == null) throw new IllegalArgumentException("cmd must not be null!");
+		if (priority == null) throw new IllegalArgumentException("priority must not be null!");
+		if (cmd.getCommandState() != CommonCommandState.NEW) {
+			throw new IllegalArgumentException("cmd has already been executed!");
+		}
+		
+		LinkedList<CommandFuture> queue = priority == CommandPriority.HIGH ? high : low;
+		if (queue.size() >= MAX_SIZE) {
+			throw new RejectedExecutionException("Too many queued commands of priority "+ priority);
+		}
+		
+		CommandFuture result = new CommandFuture(cmd);
+		queue.add(result);
+		return result;
+	}
+	
+	/**
+	 * @param priority the priority
+	 * @return the next command of the priority which was not cancelled
+	 * and has been marked as running, or null
+	 */
+	public synchronized CommandFuture poll(CommandPriority priority) {
+		LinkedList<CommandFuture> queue = priority == CommandPriority.HIGH ? high : low;
+		while (!queue.isEmpty()) {
+			CommandFuture next = queue.removeFirst();
+			if (next.start()) {
+				return next;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the number of queued commands
+	 */
+	public synchronized int size() {
+		return high.size() + low.size();
+	}
+	
+	/**
+	 * fails all queued commands, e.g. when the session ends
+	 * 
+	 * @param cause the reason
+	 */
+	public void rejectAll(Throwable cause) {
+		LinkedList<CommandFuture> pending = new LinkedList<CommandFuture>();
+		synchronized (this) {
+			pending.addAll(high);
+			pending.addAll(low);
+			high.clear();
+			low.clear();
+		}
+		
+		for (CommandFuture future : pending) {
+			future.fail(cause);
+		}
+	}
+	
+}
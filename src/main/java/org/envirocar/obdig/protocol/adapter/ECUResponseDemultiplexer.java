@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Splits a response received with headers enabled (AT H1, spaces removed)
+ * into the payloads of the answering ECUs. Each line of the response
+ * is one frame. Supported formats are:
+ * 
+ * <ul>
+ * <li>CAN 11 bit: "7E8" + PCI + data</li>
+ * <li>CAN 29 bit: "18DAF110" + PCI + data</li>
+ * <li>other protocols: 3 header bytes + data + checksum (source address is the third header byte)</li>
+ * </ul>
+ * 
+ * Multi-frame CAN responses (ISO 15765-2 first and consecutive frames)
+ * are concatenated per ECU. The payloads are encoded as HEX characters, just
+ * like a response received with headers disabled.
+ */
+public class ECUResponseDemultiplexer {
+	
+	private static final char LINE_SEPARATOR = '\r';
+	private static final String CAN_29_BIT_PREFIX = "18DA";
+	
+	private ECUResponseDemultiplexer() {
+	}
+
+	/**
+	 * @param data the raw response, lines separated by carriage returns
+	 * @return the payloads per ECU ID, in order of appearance. null if the
+	 * response does not contain any frame (e.g. NODATA or SEARCHING)
+	 */
+	public static Map<String, byte[]> demultiplex(byte[] data) {
+		Map<String, FrameAccumulator> frames = new LinkedHashMap<String, FrameAccumulator>();
+		
+		int lineStart = 0;
+		for (int i = 0; i <= data.length; i++) {
+			if (i == data.length || data[i] == LINE_SEPARATOR) {
+				if (i > lineStart) {
+					processLine(data, lineStart, i - lineStart, frames);
+				}
+				lineStart = i + 1;
+			}
+		}
+		
+		if (frames.isEmpty()) {
+			return null;
+		}
+		
+		Map<String, byte[]> result = new LinkedHashMap<String, byte[]>(frames.size());
+		for (Map.Entry<String, FrameAccumulator> e : frames.entrySet()) {
+			result.put(e.getKey(), e.getValue().toBytes());
+		}
+		return result;
+	}
+
+	private static void processLine(byte[] data, int start, int count,
+			Map<String, FrameAccumulator> frames) {
+		for (int i = start; i < start + count; i++) {
+			if (Character.digit((char) data[i], 16) < 0) {
+				/*
+				 * not a frame (e.g. "SEARCHING..." or "NODATA")
+				 */
+				return;
+			}
+		}
+		
+		if (count % 2 == 1) {
+			processCANFrame(data, start, count, 3, frames);
+		}
+		else if (count > 10 && new String(data, start, 4).equals(CAN_29_BIT_PREFIX)) {
+			processCANFrame(data, start, count, 8, frames);
+		}
+		else if (count >= 10) {
+			/*
+			 * 3 header bytes, data and one checksum byte
+			 */
+			String ecu = new String(data, start + 4, 2);
+			accumulator(ecu, frames).append(data, start + 6, count - 8);
+		}
+	}
+
+	private static void processCANFrame(byte[] data, int start, int count,
+			int headerLength, Map<String, FrameAccumulator> frames) {
+		if (count < headerLength + 2) {
+			return;
+		}
+		
+		String ecu = new String(data, start, headerLength);
+		FrameAccumulator acc = accumulator(ecu, frames);
+		
+		int pci = start + headerLength;
+		int type = Character.digit((char) data[pci], 16);
+		int payloadStart;
+		
+		switch (type) {
+		case 0:
+			/*
+			 * single frame: length in the low nibble
+			 */
+			acc.expected = Character.digit((char) data[pci + 1], 16);
+			payloadStart = pci + 2;
+			break;
+		case 1:
+			/*
+			 * first frame: 12 bit length
+			 */
+			if (count < headerLength + 4) return;
+			acc.expected = Character.digit((char) data[pci + 1], 16) << 8
+					| hexByte(data, pci + 2);
+			payloadStart = pci + 4;
+			break;
+		case 2:
+			/*
+			 * consecutive frame
+			 */
+			payloadStart = pci + 2;
+			break;
+		default:
+			return;
+		}
+		
+		acc.append(data, payloadStart, start + count - payloadStart);
+	}
+
+	private static int hexByte(byte[] data, int index) {
+		return Character.digit((char) data[index], 16) << 4
+				| Character.digit((char) data[index + 1], 16);
+	}
+
+	private static FrameAccumulator accumulator(String ecu,
+			Map<String, FrameAccumulator> frames) {
+		FrameAccumulator acc = frames.get(ecu);
+		if (acc == null) {
+			acc = new FrameAccumulator();
+			frames.put(ecu, acc);
+		}
+		return acc;
+	}
+	
+	/**
+	 * @param ecu the ID of a responding ECU
+	 * @return the header to address requests to the given ECU, or null if
+	 * the ID is not a CAN 11 bit OBD response ID (7E8 - 7EF)
+	 */
+	public static String requestHeaderFor(String ecu) {
+		if (ecu == null || ecu.length() != 3) {
+			return null;
+		}
+		
+		int id;
+		try {
+			id = Integer.parseInt(ecu, 16);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+		
+		if (id < 0x7E8 || id > 0x7EF) {
+			return null;
+		}
+		
+		return Integer.toHexString(id - 8).toUpperCase(Locale.US);
+	}
+	
+	private static class FrameAccumulator {
+		
+		private byte[] bytes = new byte[16];
+		private int size;
+		private int expected = -1;
+		
+		void append(byte[] data, int start, int count) {
+			if (count <= 0) return;
+			
+			if (size + count > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+			}
+			System.arraycopy(data, start, bytes, size, count);
+			size += count;
+		}
+		
+		byte[] toBytes() {
+			/*
+			 * CAN frames are padded, cut off at the announced length
+			 */
+			int length = size;
+			if (expected >= 0 && expected * 2 < length) {
+				length = expected * 2;
+			}
+			return Arrays.copyOf(bytes, length);
+		}
+	}
+	
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.NumberResultCommand;
+import org.envirocar.obdig.commands.numeric.MAF;
+import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks whether the engine is running, so a parked car is not polled
+ * at full rate. Explicit engine events of the adapter (DriveDeck) switch
+ * the state at once. Otherwise the engine is considered off once all
+ * cycles during {@link #ENGINE_OFF_DELAY} reported an RPM of 0 or only
+ * NODATA (the ECU went to sleep). Any RPM, speed or MAF above 0 marks
+ * it as running again immediately, so a hybrid driving electrically or
+ * a car waiting in start-stop keeps its full polling. Once the adapter
+ * reported an explicit event,
+ * the responses only count as activity and no longer change the state.
+ * <p>
+ * While the engine is off, a probe (RPM and speed) is sent every
+ * {@link #KEEP_ALIVE_PERIOD} to detect the next engine start.
+ */
+public class EngineStateTracker {
+
+	private static final Logger logger = LoggerFactory.getLogger(EngineStateTracker.class);
+	
+	public enum EngineState {
+		UNKNOWN, RUNNING, OFF
+	}
+	
+	/**
+	 * the time in ms the idle pattern has to last
+	 */
+	public static final long ENGINE_OFF_DELAY = 20000;
+	
+	/**
+	 * the period in ms of the probe while the engine is off
+	 */
+	public static final long KEEP_ALIVE_PERIOD = 5000;
+	
+	/**
+	 * the period in ms the looper checks for an engine start while
+	 * the engine is off
+	 */
+	public static final long ENGINE_OFF_POLL_PERIOD = 500;
+	
+	private static final String NODATA = "NODATA";
+	
+	private EngineState state = EngineState.UNKNOWN;
+	private boolean explicitEvents;
+	private long idleSince;
+	private long lastKeepAlive;
+	private long lastActivity;
+	
+	/**
+	 * an explicit engine event reported by the adapter
+	 * 
+	 * @param running true if the engine has been started, false if it stopped
+	 * @param now the current time in ms
+	 */
+	public synchronized void onEngineEvent(boolean running, long now) {
+		lastActivity = now;
+		idleSince = 0;
+		explicitEvents = true;
+		setState(running ? EngineState.RUNNING : EngineState.OFF, now);
+	}
+	
+	/**
+	 * evaluates the responses of a request cycle
+	 * 
+	 * @param cmds the executed commands
+	 * @param now the current time in ms
+	 */
+	public synchronized void onCycle(List<AbstractCommand> cmds, long now) {
+		int finished = 0;
+		int noData = 0;
+		boolean rpmZero = false;
+		boolean moving = false;
+		
+		for (AbstractCommand cmd : cmds) {
+			if (cmd.getCommandState() == CommonCommandState.FINISHED) {
+				finished++;
+				if (cmd instanceof RPM) {
+					if (isPositive((RPM) cmd)) {
+						moving = true;
+					}
+					else {
+						rpmZero = true;
+					}
+				}
+				else if ((cmd instanceof Speed || cmd instanceof MAF)
+						&& isPositive((NumberResultCommand) cmd)) {
+					moving = true;
+				}
+			}
+			else if (isNoData(cmd)) {
+				noData++;
+			}
+		}
+		
+		if (finished > 0 || noData > 0) {
+			lastActivity = now;
+		}
+		
+		if (explicitEvents) {
+			return;
+		}
+		
+		if (moving) {
+			idleSince = 0;
+			setState(EngineState.RUNNING, now);
+			return;
+		}
+		
+		boolean idle = rpmZero || (finished == 0 && noData > 0);
+		if (!idle) {
+			if (finished > 0) {
+				idleSince = 0;
+			}
+			return;
+		}
+		
+		if (idleSince == 0) {
+			idleSince = now;
+		}
+		else if (state != EngineState.OFF && now - idleSince >= ENGINE_OFF_DELAY) {
+			setState(EngineState.OFF, now);
+		}
+	}
+	
+	private boolean isPositive(NumberResultCommand cmd) {
+		Number value = cmd.getNumberResult();
+		return value != null && value.doubleValue() > 0;
+	}
+	
+	private boolean isNoData(AbstractCommand cmd) {
+		return cmd.getCommandState() == CommonCommandState.EXECUTION_ERROR
+				&& cmd.getRawData() != null && new String(cmd.getRawData()).contains(NODATA);
+	}
+	
+	private void setState(EngineState target, long now) {
+		if (state == target) {
+			return;
+		}
+		
+		logger.info("Engine state changed from "+ state +" to "+ target);
+		state = target;
+		
+		if (target == EngineState.OFF) {
+			lastKeepAlive = now;
+		}
+	}
+	
+	/**
+	 * @return true if the polling shall be reduced to the keep-alive probe
+	 */
+	public synchronized boolean isEngineOff() {
+		return state == EngineState.OFF;
+	}
+	
+	public synchronized EngineState getState() {
+		return state;
+	}
+	
+	/**
+	 * @param now the current time in ms
+	 * @return true if the keep-alive probe shall be sent. The probe
+	 * is considered as sent.
+	 */
+	public synchronized boolean onKeepAliveDue(long now) {
+		if (now - lastKeepAlive < KEEP_ALIVE_PERIOD) {
+			return false;
+		}
+		lastKeepAlive = now;
+		return true;
+	}
+	
+	/**
+	 * @return the time in ms of the last response or engine event,
+	 * including NODATA responses
+	 */
+	public synchronized long getLastActivity() {
+		return lastActivity;
+	}
+	
+}
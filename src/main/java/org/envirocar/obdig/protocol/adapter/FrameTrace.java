@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+/**
+ * Keeps the last frames sent to and received from the adapter, as well
+ * as notable events (e.g. error responses), in a preallocated ring
+ * buffer. Recording only copies bytes; the entries are formatted when
+ * {@link #dump()} is called after a failure. A trace of size 0 is
+ * disabled and records nothing.
+ */
+public class FrameTrace {
+
+	public enum Event {
+		COMMAND_SEARCHING,
+		COMMAND_ERROR,
+		COMMAND_UNMATCHED,
+		COMMAND_OVERLOAD,
+		COMMAND_STALL,
+		CYCLE_STALL,
+		CONNECTION_LOST,
+		RECOVERY_SUCCEEDED,
+		RECOVERY_FAILED,
+		PHASE_INITIALIZATION,
+		PHASE_COMMAND_EXECUTION
+	}
+	
+	public static final int DEFAULT_SIZE = 128;
+	
+	/**
+	 * longer frames are truncated
+	 */
+	public static final int MAX_FRAME_LENGTH = 64;
+	
+	private static final byte TRANSMIT = 1;
+	private static final byte RECEIVE = 2;
+	private static final byte EVENT = 3;
+	
+	private final long[] timestamps;
+	private final byte[] kinds;
+	private final Event[] events;
+	private final int[] lengths;
+	private final byte[][] frames;
+	private int next;
+	private long count;
+	
+	public FrameTrace() {
+		this(DEFAULT_SIZE);
+	}
+	
+	/**
+	 * @param size the number of entries to keep, 0 to disable
+	 */
+	public FrameTrace(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("size must not be negative!");
+		}
+		this.timestamps = new long[size];
+		this.kinds = new byte[size];
+		this.events = new Event[size];
+		this.lengths = new int[size];
+		this.frames = new byte[size][MAX_FRAME_LENGTH];
+	}
+	
+	public boolean isEnabled() {
+		return kinds.length > 0;
+	}
+	
+	/**
+	 * @param data the bytes sent to the adapter
+	 */
+	public void transmit(byte[] data, int offset, int length) {
+		record(TRANSMIT, data, offset, length);
+	}
+	
+	/**
+	 * @param data the bytes received from the adapter
+	 */
+	public void receive(byte[] data, int offset, int length) {
+		record(RECEIVE, data, offset, length);
+	}
+	
+	/**
+	 * @param event the event
+	 * @param context a short context (e.g. the PID), may be null
+	 */
+	public void event(Event event, String context) {
+		if (!isEnabled()) {
+			return;
+		}
+		
+		synchronized (this) {
+			int index = advance(EVENT);
+			events[index] = event;
+			int length = context == null ? 0 : Math.min(context.length(), MAX_FRAME_LENGTH);
+			byte[] frame = frames[index];
+			for (int i = 0; i < length; i++) {
+				frame[i] = (byte) context.charAt(i);
+			}
+			lengths[index] = length;
+		}
+	}
+	
+	private void record(byte kind, byte[] data, int offset, int length) {
+		if (!isEnabled()) {
+			return;
+		}
+		
+		synchronized (this) {
+			int index = advance(kind);
+			events[index] = null;
+			int n = Math.min(length, MAX_FRAME_LENGTH);
+			System.arraycopy(data, offset, frames[index], 0, n);
+			lengths[index] = n;
+		}
+	}
+	
+	private int advance(byte kind) {
+		int index = next;
+		next = (next + 1) % kinds.length;
+		count++;
+		timestamps[index] = System.nanoTime();
+		kinds[index] = kind;
+		return index;
+	}
+	
+	/**
+	 * @return the number of entries recorded since the creation
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+	
+	/**
+	 * @return the kept entries, oldest first, with their age in millis
+	 */
+	public synchronized String dump() {
+		int size = (int) Math.min(count, kinds.length);
+		StringBuilder sb = new StringBuilder();
+		sb.append("Frame trace (last ").append(size).append(" of ").append(count).append(" entries):");
+		
+		long now = System.nanoTime();
+		int start = (next - size + kinds.length) % Math.max(1, kinds.length);
+		for (int i = 0; i < size; i++) {
+			int index = (start + i) % kinds.length;
+			sb.append("\n  -");
+			sb.append((now - timestamps[index]) / 1000000).append(" ms ");
+			
+			switch (kinds[index]) {
+			case TRANSMIT:
+				sb.append("TX ");
+				break;
+			case RECEIVE:
+				sb.append("RX ");
+				break;
+			default:
+				sb.append(events[index]).append(' ');
+				break;
+			}
+			appendPrintable(sb, frames[index], lengths[index]);
+		}
+		return sb.toString();
+	}
+
+	private void appendPrintable(StringBuilder sb, byte[] frame, int length) {
+		sb.append('"');
+		for (int i = 0; i < length; i++) {
+			char c = (char) (frame[i] & 0xff);
+			if (c == '\r') {
+				sb.append("\\r");
+			}
+			else if (c == '\n') {
+				sb.append("\\n");
+			}
+			else if (c < 0x20 || c > 0x7e) {
+				sb.append("\\x");
+				sb.append(Character.forDigit((c >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(c & 0xf, 16));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+	
+}
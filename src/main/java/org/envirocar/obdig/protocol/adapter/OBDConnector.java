@@ -30,9 +30,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.envirocar.obdig.commands.AbstractCommand;
 import org.envirocar.obdig.protocol.CommandExecutor;
+import org.envirocar.obdig.protocol.StallWatchdog;
 import org.envirocar.obdig.protocol.exception.AdapterFailedException;
 import org.envirocar.obdig.protocol.exception.ConnectionLostException;
 import org.envirocar.obdig.protocol.exception.UnmatchedCommandResponseException;
@@ -70,6 +73,40 @@ public interface OBDConnector {
 		VERIFIED
 	}
 	
+	/**
+	 * the levels of a connection recovery, from the lightest to the
+	 * heaviest. A full reset of the adapter is done by the looper.
+	 */
+	public enum RecoveryLevel {
+		
+		/**
+		 * discard pending bytes and resync on the prompt
+		 */
+		RESYNC_PROMPT,
+		
+		/**
+		 * let the adapter select the bus protocol again
+		 */
+		RESELECT_PROTOCOL
+	}
+	
+	/**
+	 * the priorities of injected commands
+	 */
+	public enum CommandPriority {
+		
+		/**
+		 * executed before the next command of the request cycle
+		 */
+		HIGH,
+		
+		/**
+		 * executed after a request cycle without signs of overload,
+		 * one per cycle
+		 */
+		LOW
+	}
+	
 	/**
 	 * provide the required stream objects to send and retrieve
 	 * commands.
@@ -149,5 +186,48 @@ public interface OBDConnector {
 	 */
 	public void startExecutions(CommandExecutor exec);
 
+	/**
+	 * provide the state learned during the session. An implementation
+	 * shall keep learned information (e.g. supported PIDs) there, so it
+	 * is available after a reconnect.
+	 * 
+	 * @param state the session state
+	 */
+	public void setSessionState(SessionState state);
+	
+	/**
+	 * an implementation shall try to recover a lost connection
+	 * without re-initializing the adapter.
+	 * 
+	 * @param level the recovery level to try
+	 * @return true if the connection is usable again
+	 * @throws IOException if an exception occurred while accessing the stream objects
+	 */
+	public boolean recoverConnection(RecoveryLevel level) throws IOException;
+	
+	/**
+	 * an implementation shall make the adapter answer the in-flight
+	 * command at once (e.g. by interrupting it), as its response is
+	 * overdue. Called from the thread of the {@link StallWatchdog}
+	 * while the looper is blocked waiting for the response.
+	 * 
+	 * @param sequence the tag the connector armed the command watch
+	 * with. Nothing shall be done if that command is no longer in flight.
+	 */
+	public void abortCommand(long sequence);
+	
+	/**
+	 * an implementation shall execute the command in between its
+	 * request commands, without breaking the pairing of requests
+	 * and responses. May be called from any thread.
+	 * 
+	 * @param cmd the command to execute
+	 * @param priority the priority
+	 * @return the future completed with the executed command
+	 * @throws RejectedExecutionException if the connector does not
+	 * support injected commands or too many are queued
+	 */
+	public Future<AbstractCommand> submitCommand(AbstractCommand cmd, CommandPriority priority);
+
 
 }
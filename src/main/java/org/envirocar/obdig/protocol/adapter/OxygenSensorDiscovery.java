@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.commands.numeric.O2SensorsPresent;
+import org.envirocar.obdig.commands.raw.PIDSupported;
+
+/**
+ * Resolves the O2 sensor PIDs to sample from the capabilities reported
+ * by the car: the sensors present (PID 13 or 1D) and the PID supported
+ * bitmap of group 20, which tells whether a sensor provides the
+ * wide-band current (PIDs 34-3B) or the equivalence ratio and
+ * voltage (PIDs 24-2B).
+ */
+public class OxygenSensorDiscovery {
+	
+	/**
+	 * the maximum number of O2 sensors, see PIDs 24-2B
+	 */
+	public static final int SENSOR_COUNT = 8;
+	
+	private static final int VOLTAGE_PID_OFFSET = 0x24;
+	private static final int CURRENT_PID_OFFSET = 0x34;
+	private static final PID[] VOLTAGE_PIDS = new PID[] {
+		PID.O2_LAMBDA_PROBE_1_VOLTAGE, PID.O2_LAMBDA_PROBE_2_VOLTAGE,
+		PID.O2_LAMBDA_PROBE_3_VOLTAGE, PID.O2_LAMBDA_PROBE_4_VOLTAGE,
+		PID.O2_LAMBDA_PROBE_5_VOLTAGE, PID.O2_LAMBDA_PROBE_6_VOLTAGE,
+		PID.O2_LAMBDA_PROBE_7_VOLTAGE, PID.O2_LAMBDA_PROBE_8_VOLTAGE
+	};
+	private static final PID[] CURRENT_PIDS = new PID[] {
+		PID.O2_LAMBDA_PROBE_1_CURRENT, PID.O2_LAMBDA_PROBE_2_CURRENT,
+		PID.O2_LAMBDA_PROBE_3_CURRENT, PID.O2_LAMBDA_PROBE_4_CURRENT,
+		PID.O2_LAMBDA_PROBE_5_CURRENT, PID.O2_LAMBDA_PROBE_6_CURRENT,
+		PID.O2_LAMBDA_PROBE_7_CURRENT, PID.O2_LAMBDA_PROBE_8_CURRENT
+	};
+	
+	/**
+	 * @param baseGroup the PID supported response of group 00, may be null
+	 * @return the O2 sensors present command to issue, or null if the car
+	 * reported neither PID 13 nor 1D as supported
+	 */
+	public static O2SensorsPresent createPresenceCommand(PIDSupported baseGroup) {
+		if (!isKnown(baseGroup) || baseGroup.isSupported(0x13)) {
+			return new O2SensorsPresent(PID.O2_SENSORS_PRESENT);
+		}
+		if (baseGroup.isSupported(0x1D)) {
+			return new O2SensorsPresent(PID.O2_SENSORS_PRESENT_4_BANKS);
+		}
+		return null;
+	}
+	
+	/**
+	 * @param baseGroup the PID supported response of group 00, may be null
+	 * @return true if group 20 shall be queried
+	 */
+	public static boolean isSensorGroupAvailable(PIDSupported baseGroup) {
+		return !isKnown(baseGroup) || baseGroup.isSupported(0x20);
+	}
+	
+	/**
+	 * @param present the sensors present response, may be null
+	 * @param sensorGroup the PID supported response of group 20, may be null
+	 * @return the PIDs to sample (one per present sensor, wide-band current
+	 * preferred), or null if the capabilities are unknown
+	 */
+	public static List<PID> resolve(O2SensorsPresent present, PIDSupported sensorGroup) {
+		boolean presenceKnown = present != null && present.getCommandState() == CommonCommandState.FINISHED
+				&& present.getNumberResult() != null;
+		boolean groupKnown = isKnown(sensorGroup);
+		
+		if (!presenceKnown && !groupKnown) {
+			return null;
+		}
+		
+		List<PID> result = new ArrayList<PID>();
+		for (int sensor = 0; sensor < SENSOR_COUNT; sensor++) {
+			if (presenceKnown && !present.isPresent(sensor)) {
+				continue;
+			}
+			
+			if (!groupKnown) {
+				/*
+				 * present, but we do not know which PIDs it provides
+				 */
+				result.add(VOLTAGE_PIDS[sensor]);
+			}
+			else if (sensorGroup.isSupported(CURRENT_PID_OFFSET + sensor)) {
+				result.add(CURRENT_PIDS[sensor]);
+			}
+			else if (sensorGroup.isSupported(VOLTAGE_PID_OFFSET + sensor)) {
+				result.add(VOLTAGE_PIDS[sensor]);
+			}
+		}
+		
+		return result;
+	}
+
+	private static boolean isKnown(PIDSupported group) {
+		return group != null && group.getCommandState() == CommonCommandState.FINISHED;
+	}
+	
+}
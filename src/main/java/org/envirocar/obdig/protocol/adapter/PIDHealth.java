@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.Arrays;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.PIDUtil;
+
+/**
+ * Tracks the health of the Mode 01 PIDs during a session. A PID which
+ * failed repeatedly is not removed for good but put into an exponential
+ * backoff: it is re-probed once after 2, 4, 8, ... request cycles (up to
+ * {@link #MAX_BACKOFF_EXPONENT}). A successful response restores the PID
+ * immediately, and every success halves its error count so sporadic
+ * errors do not add up over a long session.
+ * <p>
+ * The state is kept in primitive arrays indexed by the PID byte, so
+ * the checks in the request loop neither allocate nor hash.
+ */
+public class PIDHealth {
+
+	/**
+	 * value for commands which do not carry a Mode 01 PID
+	 */
+	public static final int NO_PID = -1;
+	
+	/**
+	 * the number of errors after which a PID is backed off
+	 */
+	public static final int ERROR_THRESHOLD = 5;
+	
+	/**
+	 * a dead PID is re-probed at least every 2^8 cycles
+	 */
+	public static final int MAX_BACKOFF_EXPONENT = 8;
+	
+	private static final int PID_COUNT = 0x100;
+	private static final byte[] MODE_01 = "01".getBytes();
+	
+	private final byte[] errorCounts = new byte[PID_COUNT];
+	private final byte[] backoffExponents = new byte[PID_COUNT];
+	private final int[] nextProbeCycles = new int[PID_COUNT];
+	private final boolean[] responded = new boolean[PID_COUNT];
+	private int cycle;
+	
+	/**
+	 * @param cmd the command
+	 * @return the PID byte of the command, or {@link #NO_PID} if it is
+	 * not a Mode 01 request or does not carry a hexadecimal PID
+	 */
+	public static int toPIDByte(AbstractCommand cmd) {
+		if (!Arrays.equals(MODE_01, cmd.getModeBytes())) {
+			return NO_PID;
+		}
+		
+		int pid = PIDUtil.toPIDByte(cmd.getPIDAsString());
+		return pid < 0 ? NO_PID : pid;
+	}
+	
+	/**
+	 * advances the cycle counter. Called once per request cycle.
+	 */
+	public synchronized void nextCycle() {
+		cycle++;
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @return true if the PID shall be requested in the current cycle
+	 */
+	public synchronized boolean isDue(int pid) {
+		if (pid == NO_PID) {
+			return true;
+		}
+		return cycle - nextProbeCycles[pid] >= 0;
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @return true if the PID currently is in backoff
+	 */
+	public synchronized boolean isBackedOff(int pid) {
+		if (pid == NO_PID) {
+			return false;
+		}
+		return backoffExponents[pid] > 0;
+	}
+	
+	/**
+	 * @return the number of PIDs currently in backoff
+	 */
+	public synchronized int getBackedOffCount() {
+		int result = 0;
+		for (int i = 0; i < PID_COUNT; i++) {
+			if (backoffExponents[i] > 0) {
+				result++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @return the current (decayed) error count of the PID
+	 */
+	public synchronized int getErrorCount(int pid) {
+		if (pid == NO_PID) {
+			return 0;
+		}
+		return errorCounts[pid];
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @return true if the PID responded validly at least once in the session
+	 */
+	public synchronized boolean hasResponded(int pid) {
+		if (pid == NO_PID) {
+			return false;
+		}
+		return responded[pid];
+	}
+	
+	/**
+	 * registers a valid response for the PID. A backed off PID is
+	 * restored and its error count decays.
+	 * 
+	 * @param pid the PID byte
+	 * @return true if the PID had been backed off before
+	 */
+	public synchronized boolean onSuccess(int pid) {
+		if (pid == NO_PID) {
+			return false;
+		}
+		
+		boolean recovered = backoffExponents[pid] > 0;
+		responded[pid] = true;
+		errorCounts[pid] = (byte) (errorCounts[pid] >> 1);
+		backoffExponents[pid] = 0;
+		nextProbeCycles[pid] = cycle;
+		return recovered;
+	}
+	
+	/**
+	 * registers an error response for the PID. Once the error count
+	 * exceeds the threshold, the re-probe interval is doubled.
+	 * 
+	 * @param pid the PID byte
+	 * @return the number of cycles the PID is skipped, 0 if it
+	 * is still requested every cycle
+	 */
+	public synchronized int onFailure(int pid) {
+		if (pid == NO_PID) {
+			return 0;
+		}
+		
+		if (errorCounts[pid] <= ERROR_THRESHOLD) {
+			errorCounts[pid]++;
+		}
+		
+		if (errorCounts[pid] <= ERROR_THRESHOLD) {
+			return 0;
+		}
+		
+		if (backoffExponents[pid] < MAX_BACKOFF_EXPONENT) {
+			backoffExponents[pid]++;
+		}
+		
+		int skipped = 1 << backoffExponents[pid];
+		nextProbeCycles[pid] = cycle + skipped;
+		return skipped;
+	}
+	
+}
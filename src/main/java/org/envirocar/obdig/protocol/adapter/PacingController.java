@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+/**
+ * Adapts the request period of the looper to the link (AIMD, as in
+ * TCP congestion control): every clean request cycle shortens the
+ * period by a constant step, while a cycle with signs of overload
+ * (unmatched responses, BUFFER FULL/STOPPED, command timeouts, NO DATA
+ * for a PID which responded before, dropped responses, a lost connection)
+ * doubles it. This way every vehicle and adapter settles
+ * around its own highest stable throughput.
+ * <p>
+ * The congestion signals may arrive from several threads; the period
+ * is only changed once per cycle in {@link #onCycleCompleted()}.
+ */
+public class PacingController {
+
+	/**
+	 * the shortest period in ms, so the looper never spins
+	 */
+	public static final long MIN_REQUEST_PERIOD = 10;
+	
+	/**
+	 * the period never exceeds the preferred period of the connector
+	 * by more than this factor
+	 */
+	static final int MAX_BACKOFF_FACTOR = 8;
+	
+	/**
+	 * the preferred period is approached in this many additive steps
+	 */
+	static final int STEPS_PER_PERIOD = 20;
+	
+	private long preferredPeriod;
+	private long minPeriod;
+	private long requestPeriod;
+	private long step;
+	private boolean congested;
+	private int congestionCount;
+	
+	/**
+	 * (re-)starts the pacing for a connector. The period learned for
+	 * the session is kept if the connector prefers the same period
+	 * as the previous one (e.g. after a recovery).
+	 * 
+	 * @param preferredPeriod the period preferred by the connector in ms
+	 * @return the period to use for the first cycle
+	 */
+	public synchronized long start(long preferredPeriod) {
+		if (preferredPeriod != this.preferredPeriod) {
+			this.preferredPeriod = preferredPeriod;
+			this.requestPeriod = preferredPeriod;
+			this.minPeriod = Math.min(MIN_REQUEST_PERIOD, preferredPeriod);
+			this.step = Math.max(1, preferredPeriod / STEPS_PER_PERIOD);
+		}
+		congested = false;
+		return requestPeriod;
+	}
+	
+	/**
+	 * registers a sign of overload for the current cycle
+	 */
+	public synchronized void onCongestion() {
+		congested = true;
+	}
+	
+	/**
+	 * applies the outcome of the finished cycle
+	 * 
+	 * @return the period to wait until the next cycle in ms
+	 */
+	public synchronized long onCycleCompleted() {
+		if (congested) {
+			requestPeriod = Math.min(Math.max(requestPeriod * 2, MIN_REQUEST_PERIOD),
+					Math.max(preferredPeriod * MAX_BACKOFF_FACTOR, MIN_REQUEST_PERIOD));
+			congestionCount++;
+			congested = false;
+		}
+		else {
+			requestPeriod = Math.max(minPeriod, requestPeriod - step);
+		}
+		return requestPeriod;
+	}
+	
+	/**
+	 * @return the current request period in ms
+	 */
+	public synchronized long getRequestPeriod() {
+		return requestPeriod;
+	}
+	
+	/**
+	 * @return the current request rate in cycles per second, not
+	 * counting the time spent executing a cycle
+	 */
+	public synchronized double getRequestRate() {
+		return requestPeriod > 0 ? 1000.0 / requestPeriod : 0;
+	}
+	
+	/**
+	 * @return the number of cycles which backed off so far
+	 */
+	public synchronized int getCongestionCount() {
+		return congestionCount;
+	}
+	
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.envirocar.obdig.FeatureFlags;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.protocol.StallWatchdog;
+import org.envirocar.obdig.protocol.subscription.PIDSubscriptions;
+
+/**
+ * The state a connector learns about the car during a session (e.g.
+ * the supported PIDs). It is owned by the looper and handed to every
+ * connector, so it survives reconnects and adapter re-initialization.
+ */
+public class SessionState {
+
+	private static final AtomicInteger SESSION_COUNT = new AtomicInteger();
+	
+	private final int id = SESSION_COUNT.incrementAndGet();
+	private Set<PID> supportedPIDs;
+	private PIDHealth pidHealth = new PIDHealth();
+	private PacingController pacingController = new PacingController();
+	private PIDSubscriptions pidSubscriptions = new PIDSubscriptions();
+	private CommandQueue commandQueue = new CommandQueue();
+	private EngineStateTracker engineStateTracker = new EngineStateTracker();
+	private FrameTrace frameTrace = new FrameTrace(FeatureFlags.getFrameTraceSize());
+	private String preferredLambdaProbe;
+	private List<PID> oxygenSensorPIDs;
+	private String pinnedECU;
+	private volatile int responseQueueDepth;
+	private volatile StallWatchdog.Watch commandWatch;
+
+	/**
+	 * @return the ID of this session, unique within the VM
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the PIDs reported as supported, or null if unknown
+	 */
+	public Set<PID> getSupportedPIDs() {
+		return supportedPIDs;
+	}
+
+	public void setSupportedPIDs(Set<PID> supportedPIDs) {
+		this.supportedPIDs = supportedPIDs;
+	}
+
+	/**
+	 * @return the health of the requested PIDs, used to back off failing ones
+	 */
+	public PIDHealth getPIDHealth() {
+		return pidHealth;
+	}
+
+	/**
+	 * @return the pacing of the request cycles
+	 */
+	public PacingController getPacingController() {
+		return pacingController;
+	}
+
+	/**
+	 * @return the PIDs consumers subscribed to
+	 */
+	public PIDSubscriptions getPIDSubscriptions() {
+		return pidSubscriptions;
+	}
+
+	/**
+	 * @return the commands injected by the application
+	 */
+	public CommandQueue getCommandQueue() {
+		return commandQueue;
+	}
+
+	/**
+	 * @return the tracker of the engine state
+	 */
+	public EngineStateTracker getEngineStateTracker() {
+		return engineStateTracker;
+	}
+
+	/**
+	 * @return the trace of the last frames, dumped on failures
+	 */
+	public FrameTrace getFrameTrace() {
+		return frameTrace;
+	}
+
+	/**
+	 * @return the PID of the lambda probe which provided a response, or null
+	 */
+	public String getPreferredLambdaProbe() {
+		return preferredLambdaProbe;
+	}
+
+	public void setPreferredLambdaProbe(String preferredLambdaProbe) {
+		this.preferredLambdaProbe = preferredLambdaProbe;
+	}
+
+	/**
+	 * @return the O2 sensor PIDs resolved from the reported capabilities,
+	 * an empty list if no usable sensor is present, or null if unknown
+	 */
+	public List<PID> getOxygenSensorPIDs() {
+		return oxygenSensorPIDs;
+	}
+
+	public void setOxygenSensorPIDs(List<PID> oxygenSensorPIDs) {
+		this.oxygenSensorPIDs = oxygenSensorPIDs;
+	}
+
+	/**
+	 * @return the ID of the ECU the requests are pinned to (e.g. 7E8), or null
+	 */
+	public String getPinnedECU() {
+		return pinnedECU;
+	}
+
+	public void setPinnedECU(String pinnedECU) {
+		this.pinnedECU = pinnedECU;
+	}
+
+	/**
+	 * @return the number of responses an asynchronous connector
+	 * received but the looper did not pull yet
+	 */
+	public int getResponseQueueDepth() {
+		return responseQueueDepth;
+	}
+
+	public void setResponseQueueDepth(int responseQueueDepth) {
+		this.responseQueueDepth = responseQueueDepth;
+	}
+
+	/**
+	 * @return the watch of the in-flight commands, or null if
+	 * the commands are not watched
+	 */
+	public StallWatchdog.Watch getCommandWatch() {
+		return commandWatch;
+	}
+
+	public void setCommandWatch(StallWatchdog.Watch commandWatch) {
+		this.commandWatch = commandWatch;
+	}
+	
+}
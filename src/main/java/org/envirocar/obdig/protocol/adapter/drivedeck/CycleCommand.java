@@ -89,6 +89,13 @@ public class CycleCommand extends AbstractCommand {
 			}
 		};
 		
+		/**
+		 * @return the OBD-II PID number this cycle entry requests
+		 */
+		public int getOBDPID() {
+			return Integer.parseInt(toString()) - 13;
+		}
+		
 		protected String convert(String string) {
 			return Integer.toString(incrementBy13(hexToInt(string)));
 		}
@@ -27,24 +27,19 @@
 package org.envirocar.obdig.protocol.adapter.drivedeck;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 import org.envirocar.obdig.commands.AbstractCommand;
 import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
-import org.envirocar.obdig.commands.numeric.IntakePressure;
-import org.envirocar.obdig.commands.numeric.IntakeTemperature;
-import org.envirocar.obdig.commands.numeric.MAF;
-import org.envirocar.obdig.commands.numeric.O2LambdaProbe;
-import org.envirocar.obdig.commands.numeric.RPM;
-import org.envirocar.obdig.commands.numeric.Speed;
-import org.envirocar.obdig.commands.raw.PIDSupported;
+import org.envirocar.obdig.commands.NumberResultCommand;
+import org.envirocar.obdig.commands.PIDUtil;
 import org.envirocar.obdig.protocol.adapter.AbstractAsynchronousConnector;
 import org.envirocar.obdig.protocol.adapter.ResponseParser;
 import org.envirocar.obdig.protocol.adapter.drivedeck.CycleCommand.PID;
+import org.envirocar.obdig.protocol.subscription.PIDSubscriptions;
 import org.envirocar.obdig.util.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,35 +50,126 @@ public class DriveDeckSportConnector extends AbstractAsynchronousConnector {
 	private static final char CARRIAGE_RETURN = '\r';
 	static final char END_OF_LINE_RESPONSE = '>';
 	private static final long SEND_CYCLIC_COMMAND_DELTA = 2500;
+	private static final int PID_RESPONSE_LENGTH = 2;
+	private static final PIDUtil.PID[] RESPONSE_PIDS = new PIDUtil.PID[256];
 	private Protocol protocol;
 	private String vin;
-	private CycleCommand cycleCommand;
+	private static final PID[] DEFAULT_CYCLE = new PID[] {PID.SPEED, PID.MAF, PID.RPM,
+		PID.IAP, PID.IAT, PID.O2_LAMBDA_PROBE_1_VOLTAGE, PID.O2_LAMBDA_PROBE_1_CURRENT};
+	
+	/**
+	 * the manual does not document the response codes of these, so
+	 * they are not requested until their responses can be decoded
+	 */
+	private static final PID[] UNDECODED_PIDS = new PID[] {PID.SHORT_TERM_FUEL_TRIM,
+		PID.LONG_TERM_FUEL_TRIM};
+	private static final int PID_GROUP_SIZE = 0x20;
+	private volatile CycleCommand cycleCommand;
+	private volatile boolean cycleChanged;
+	private List<PID> cyclePIDs;
+	private PIDSubscriptions cycleSubscriptions;
+	private int subscriptionVersion;
+	private final boolean[] supportedPIDs = new boolean[0x101];
+	private final boolean[] reportedGroups = new boolean[8];
 	private ResponseParser responseParser = new LocalResponseParser();
 	private ConnectionState state = ConnectionState.DISCONNECTED;
 	public long lastResult;
-	private Set<String> loggedPids = new HashSet<String>();
+	private boolean[] loggedPids = new boolean[256];
 	
 	private static enum Protocol {
 		CAN11500, CAN11250, CAN29500, CAN29250, KWP_SLOW, KWP_FAST, ISO9141
 	}
 	
+	/*
+	 * resulting HEX values are 0x0d additive to the
+	 * default PIDs of OBD. e.g. RPM = 0x19 = 0x0c + 0x0d
+	 */
+	static {
+		RESPONSE_PIDS[0x41] = PIDUtil.PID.SPEED;
+		RESPONSE_PIDS[0x42] = PIDUtil.PID.MAF;
+		RESPONSE_PIDS[0x52] = PIDUtil.PID.INTAKE_AIR_TEMP;
+		RESPONSE_PIDS[0x49] = PIDUtil.PID.INTAKE_MAP;
+		RESPONSE_PIDS[0x40] = PIDUtil.PID.RPM;
+		RESPONSE_PIDS[0x51] = PIDUtil.PID.RPM;
+		//TODO the current manual does not provide info on how to
+		//determine which probe value is returned.
+		RESPONSE_PIDS[0x4D] = PIDUtil.PID.O2_LAMBDA_PROBE_1_VOLTAGE;
+	}
+
 	public DriveDeckSportConnector() {
 		createCycleCommand();
-		logger.info("Static CycleCommand: "+new String(cycleCommand.getOutgoingBytes()));
+		logger.info("Initial CycleCommand: "+new String(cycleCommand.getOutgoingBytes()));
 	}
 	
-	private void createCycleCommand() {
+	/**
+	 * composes the cycle from the PIDs reported as supported by the car.
+	 * As long as the report for a PID group is missing, the
+	 * {@link #DEFAULT_CYCLE} members of that group are requested.
+	 * If consumers subscribed to PIDs, only those are part of the cycle.
+	 * The device streams the cycle at its own pace, so the periods
+	 * of the subscriptions do not apply.
+	 * <p>
+	 * Called from the looper thread and the response thread.
+	 */
+	private synchronized void createCycleCommand() {
+		PIDSubscriptions subscriptions = getSessionState().getPIDSubscriptions();
+		boolean subscribed = !subscriptions.isEmpty();
+		this.cycleSubscriptions = subscriptions;
+		this.subscriptionVersion = subscriptions.getVersion();
+		
 		List<PID> pidList = new ArrayList<PID>();
-		pidList.add(PID.SPEED);
-		pidList.add(PID.MAF);
-		pidList.add(PID.RPM);
-		pidList.add(PID.IAP);
-		pidList.add(PID.IAT);
-//		pidList.add(PID.SHORT_TERM_FUEL_TRIM);
-//		pidList.add(PID.LONG_TERM_FUEL_TRIM);
-		pidList.add(PID.O2_LAMBDA_PROBE_1_VOLTAGE);
-		pidList.add(PID.O2_LAMBDA_PROBE_1_CURRENT);
-		this.cycleCommand = new CycleCommand(pidList);
+		for (PID pid : PID.values()) {
+			if (isUndecodedPID(pid)) {
+				continue;
+			}
+			
+			int obdPid = pid.getOBDPID();
+			int group = (obdPid - 1) / PID_GROUP_SIZE;
+			
+			if (subscribed) {
+				if (subscriptions.isSubscribed(obdPid)
+						&& (!reportedGroups[group] || supportedPIDs[obdPid])) {
+					pidList.add(pid);
+				}
+			}
+			else if (reportedGroups[group]) {
+				if (supportedPIDs[obdPid]) {
+					pidList.add(pid);
+				}
+			}
+			else if (isDefaultCyclePID(pid)) {
+				pidList.add(pid);
+			}
+		}
+		
+		if (pidList.isEmpty()) {
+			logger.warn("None of the cycle PIDs is reported as supported or subscribed. Using the default cycle.");
+			pidList.addAll(Arrays.asList(DEFAULT_CYCLE));
+		}
+		
+		if (!pidList.equals(cyclePIDs)) {
+			this.cyclePIDs = pidList;
+			this.cycleCommand = new CycleCommand(pidList);
+			this.cycleChanged = true;
+		}
+	}
+
+	private boolean isUndecodedPID(PID pid) {
+		for (PID p : UNDECODED_PIDS) {
+			if (p == pid) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean isDefaultCyclePID(PID pid) {
+		for (PID p : DEFAULT_CYCLE) {
+			if (p == pid) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	@Override
@@ -95,42 +181,48 @@ public class DriveDeckSportConnector extends AbstractAsynchronousConnector {
 		logger.info("Discovered CUs... ");
 	}
 
+	/**
+	 * processes a supported PID report ("70"). The group is encoded
+	 * as two HEX characters, followed by the four binary bit mask bytes
+	 * (separated after the second byte).
+	 */
 	protected void processSupportedPID(byte[] bytes, int start, int count) {
-		String group = new String(bytes, start+6, 2);
+		if (count < 14) {
+			logger.warn("Incomplete supported PID report: "+ Base64.encodeBytes(bytes, start, count));
+			return;
+		}
 		
-		if (group.equals("00")) {
-			/*
-			 * this is the first group containing the PIDs of major interest
-			 */
-			PIDSupported pidCmd = new PIDSupported();
-			byte[] rawBytes = new byte[12];
-			rawBytes[0] = '4';
-			rawBytes[1] = '1';
-			rawBytes[2] = (byte) pidCmd.getPIDAsString().charAt(0);
-			rawBytes[3] = (byte) pidCmd.getPIDAsString().charAt(1);
-			int target = 4;
-			String hexTmp;
+		int high = Character.digit((char) bytes[start+6], 16);
+		int low = Character.digit((char) bytes[start+7], 16);
+		if (high < 0 || low < 0) {
+			return;
+		}
+		
+		int group = high << 4 | low;
+		if (group % PID_GROUP_SIZE != 0 || group / PID_GROUP_SIZE >= reportedGroups.length) {
+			return;
+		}
+		
+		synchronized (this) {
+			int bit = 1;
 			for (int i = 9; i < 14; i++) {
 				if (i == 11) continue;
-				hexTmp = oneByteToHex(bytes[i+start]);
-				rawBytes[target++] = (byte) hexTmp.charAt(0);
-				rawBytes[target++] = (byte) hexTmp.charAt(1);
+				int mask = bytes[start+i] & 0xff;
+				for (int shift = 7; shift >= 0; shift--) {
+					supportedPIDs[group + bit++] = ((mask >> shift) & 1) == 1;
+				}
 			}
+			reportedGroups[group / PID_GROUP_SIZE] = true;
 			
-			pidCmd.parseRawData(rawBytes);
-			
-			if (pidCmd.getCommandState() == CommonCommandState.FINISHED) {
-				logger.info(pidCmd.getSupportedPIDs().toArray().toString());
+			List<PID> previous = cyclePIDs;
+			createCycleCommand();
+			if (previous != cyclePIDs) {
+				logger.info("Supported PIDs of group " + Integer.toHexString(group) 
+						+ " changed the cycle to: " + cyclePIDs);
 			}
 		}
 	}
 
-	private String oneByteToHex(byte b) {
-		String result = Integer.toString(b & 0xff, 16).toUpperCase(Locale.US);
-		if (result.length() == 1) result = "0".concat(result);
-		return result;
-	}
-
 	private void processVIN(String vinInt) {
 		this.vin = vinInt;
 		logger.info("VIN is: "+this.vin);
@@ -200,45 +292,26 @@ public class DriveDeckSportConnector extends AbstractAsynchronousConnector {
 	}
 
 
-	private AbstractCommand parsePIDResponse(String pid,
-			byte[] rawBytes, long now) {
-		
-		/*
-		 * resulting HEX values are 0x0d additive to the
-		 * default PIDs of OBD. e.g. RPM = 0x19 = 0x0c + 0x0d
-		 */
+	/**
+	 * decode a PID response directly from the binary value bytes
+	 * 
+	 * @param code the response code (two HEX characters, e.g. 0x41 for "41")
+	 * @param bytes the buffer holding the value bytes
+	 * @param start the index of the first value byte
+	 * @param now the time of the response
+	 * @return the decoded command or null if the code is not supported
+	 */
+	private AbstractCommand parsePIDResponse(int code, byte[] bytes, int start, long now) {
 		AbstractCommand result = null;
-		if (pid.equals("41")) {
-			//Speed
-			result = new Speed();
-		}
-		else if (pid.equals("42")) {
-			//MAF
-			result = new MAF();
-		}
-		else if (pid.equals("52")) {
-			//IAP
-			result = new IntakeTemperature();
-		}
-		else if (pid.equals("49")) {
-			//IAT
-			result = new IntakePressure();
-		}
-		else if (pid.equals("40") || pid.equals("51")) {
-			//RPM
-			result = new RPM();
-		}
-		else if (pid.equals("4D")) {
-			//TODO the current manual does not provide info on how to
-			//determine which probe value is returned.
-			result = O2LambdaProbe.fromPIDEnum(org.envirocar.obdig.commands.PIDUtil.PID.O2_LAMBDA_PROBE_1_VOLTAGE);
+		PIDUtil.PID pid = RESPONSE_PIDS[code];
+		if (pid != null) {
+			result = PIDUtil.instantiateCommand(pid);
 		}
 
-		oneTimePIDLog(pid, rawBytes);
+		oneTimePIDLog(code, bytes, start);
 		
-		if (result != null) {
-			byte[] rawData = createRawData(rawBytes, result.getPIDAsString());
-			result.parseRawData(rawData);
+		if (result instanceof NumberResultCommand) {
+			((NumberResultCommand) result).parseBinaryData(bytes, start, PID_RESPONSE_LENGTH);
 			
 			if (result.getCommandState() == CommonCommandState.EXECUTION_ERROR ||
 					result.getCommandState() == CommonCommandState.SEARCHING) {
@@ -248,42 +321,29 @@ public class DriveDeckSportConnector extends AbstractAsynchronousConnector {
 			result.setCommandState(CommonCommandState.FINISHED);
 			result.setResultTime(now);
 			this.state = ConnectionState.VERIFIED;
+			return result;
 		}
 		
-		return result;
-	}
-
-	private void oneTimePIDLog(String pid, byte[] rawBytes) {
-		if (pid == null || rawBytes == null || rawBytes.length == 0)
-			return;
-		
-		if (!loggedPids.contains(pid)) {
-			logger.info("First response for PID: " +pid +"; Base64: "+
-					Base64.encodeBytes(rawBytes));
-			loggedPids.add(pid);
-		}
+		return null;
 	}
 
-	private byte[] createRawData(byte[] rawBytes, String type) {
-		byte[] result = new byte[4 + rawBytes.length*2];
-		byte[] typeBytes = type.getBytes();
-		result[0] = (byte) '4';
-		result[1] = (byte) '1';
-		result[2] = typeBytes[0];
-		result[3] = typeBytes[1];
-		for (int i = 0; i < rawBytes.length; i++) {
-			String hex = oneByteToHex(rawBytes[i]);
-			result[(i*2)+4] = (byte) hex.charAt(0);
-			result[(i*2)+1+4] = (byte) hex.charAt(1);
+	private void oneTimePIDLog(int code, byte[] bytes, int start) {
+		if (!loggedPids[code]) {
+			logger.info("First response for PID: " +Integer.toHexString(code).toUpperCase(Locale.US)
+					+"; Base64: "+ Base64.encodeBytes(bytes, start, PID_RESPONSE_LENGTH));
+			loggedPids[code] = true;
 		}
-		return result;
 	}
 
-
-
 	@Override
-	protected List<AbstractCommand> getRequestCommands() {
-		if (System.currentTimeMillis() - lastResult > SEND_CYCLIC_COMMAND_DELTA) {
+	protected synchronized List<AbstractCommand> getRequestCommands() {
+		PIDSubscriptions subscriptions = getSessionState().getPIDSubscriptions();
+		if (subscriptions != cycleSubscriptions || subscriptions.getVersion() != subscriptionVersion) {
+			createCycleCommand();
+		}
+		
+		if (cycleChanged || System.currentTimeMillis() - lastResult > SEND_CYCLIC_COMMAND_DELTA) {
+			cycleChanged = false;
 			return Collections.singletonList((AbstractCommand) cycleCommand);
 		}
 		else {
@@ -305,12 +365,6 @@ public class DriveDeckSportConnector extends AbstractAsynchronousConnector {
 	
 	@Override
 	protected List<AbstractCommand> getInitializationCommands() {
-		try {
-			Thread.sleep(500);
-		} catch (InterruptedException e) {
-			logger.warn(e.getMessage(), e);
-		}
-		
 		return Collections.singletonList((AbstractCommand) new CarriageReturnCommand());
 	}
 
@@ -321,6 +375,9 @@ public class DriveDeckSportConnector extends AbstractAsynchronousConnector {
 
 
 	public class LocalResponseParser implements ResponseParser {
+		
+		private final byte[] pidResponseValue = new byte[PID_RESPONSE_LENGTH];
+		
 		@Override
 		public AbstractCommand processResponse(byte[] bytes, int start, int count) {
 			if (count <= 0) return null;
@@ -328,58 +385,64 @@ public class DriveDeckSportConnector extends AbstractAsynchronousConnector {
 			char type = (char) bytes[start+0];
 			
 			if (type == CycleCommand.RESPONSE_PREFIX_CHAR) {
-				if ((char) bytes[start+4] == CycleCommand.TOKEN_SEPARATOR_CHAR) return null;
+				if (count < 3) return null;
+				if (count > 4 && (char) bytes[start+4] == CycleCommand.TOKEN_SEPARATOR_CHAR) return null;
 				
-				String pid = new String(bytes, start+1, 2);
+				int high = Character.digit((char) bytes[start+1], 16);
+				int low = Character.digit((char) bytes[start+2], 16);
+				if (high < 0 || low < 0) {
+					return null;
+				}
+				int code = high << 4 | low;
 				
 				/*
 				 * METADATA Stuff
 				 */
-				if (pid.equals("14")) {
+				switch (code) {
+				case 0x14:
 					logger.debug("Status: CONNECTING");
-				}
-				else if (pid.equals("15")) {
+					break;
+				case 0x15:
 					processVIN(new String(bytes, start+3, count-3));
-				}
-				else if (pid.equals("70")) {
-					/*
-					 * short term fix for #192: disable
-					 */
-//					processSupportedPID(bytes, start, count);
-				}
-				else if (pid.equals("71")) {
+					break;
+				case 0x70:
+					processSupportedPID(bytes, start, count);
+					break;
+				case 0x71:
 					processDiscoveredControlUnits(new String(bytes, start+3, count-3));
-				}
-				else if (pid.equals("31")) {
+					break;
+				case 0x31:
 					// engine on
 					logger.debug("Engine: On");
-				}
-				else if (pid.equals("32")) {
+					getSessionState().getEngineStateTracker().onEngineEvent(true, System.currentTimeMillis());
+					break;
+				case 0x32:
 					// engine off (= RPM < 500)
 					logger.debug("Engine: Off");
-				}
-				
-				else {
+					getSessionState().getEngineStateTracker().onEngineEvent(false, System.currentTimeMillis());
+					break;
+				default:
 					/*
 					 * A PID response
 					 */
 					long now = System.currentTimeMillis();
-					logger.trace("Processing PID Response:" +pid);
+					if (logger.isTraceEnabled()) {
+						logger.trace("Processing PID Response:" +Integer.toHexString(code));
+					}
 					
-					byte[] pidResponseValue = new byte[2];
-					int target;
-					for (int i = start+4; i <= count+start; i++) {
-						target = i-(start+4);
-						if (target >= pidResponseValue.length)
-							break;
-						
-						if ((char) bytes[i] == CycleCommand.TOKEN_SEPARATOR_CHAR)
+					int i = 0;
+					for (; i < PID_RESPONSE_LENGTH && start + 4 + i < start + count; i++) {
+						byte b = bytes[start + 4 + i];
+						if ((char) b == CycleCommand.TOKEN_SEPARATOR_CHAR)
 							break;
 						
-						pidResponseValue[target] = bytes[i];
+						pidResponseValue[i] = b;
+					}
+					for (; i < PID_RESPONSE_LENGTH; i++) {
+						pidResponseValue[i] = 0;
 					}
 					
-					AbstractCommand result = parsePIDResponse(pid, pidResponseValue, now);
+					AbstractCommand result = parsePIDResponse(code, pidResponseValue, 0, now);
 					
 					if (result != null) {
 						lastResult = now;
@@ -0,0 +1,416 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.monitor;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.elm327.CANAutoFormatting;
+import org.envirocar.obdig.commands.elm327.CANFilter;
+import org.envirocar.obdig.commands.elm327.CANMask;
+import org.envirocar.obdig.commands.elm327.EchoOff;
+import org.envirocar.obdig.commands.elm327.HeadersOn;
+import org.envirocar.obdig.commands.elm327.LineFeedOff;
+import org.envirocar.obdig.commands.elm327.MonitorAll;
+import org.envirocar.obdig.commands.elm327.ObdReset;
+import org.envirocar.obdig.commands.elm327.SelectAutoProtocol;
+import org.envirocar.obdig.commands.elm327.SpacesOff;
+import org.envirocar.obdig.commands.raw.PIDSupported;
+import org.envirocar.obdig.commands.stn.STNAddPassFilter;
+import org.envirocar.obdig.commands.stn.STNClearPassFilters;
+import org.envirocar.obdig.commands.stn.STNIdentify;
+import org.envirocar.obdig.commands.stn.STNMonitorAll;
+import org.envirocar.obdig.protocol.adapter.AbstractAsynchronousConnector;
+import org.envirocar.obdig.protocol.adapter.BufferingResponseParser;
+import org.envirocar.obdig.protocol.adapter.ResponseParser;
+import org.envirocar.obdig.protocol.exception.AdapterFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passive connector for ELM327/STN adapters on CAN vehicles. Instead of
+ * requesting PIDs, the adapter is put into monitoring mode (ATMA/STMA)
+ * and the broadcast frames are decoded using {@link SignalDefinition}s.
+ * Only the CAN IDs of the signals pass the adapter filters. STN chips
+ * are detected via the STI response and use the STN pass filters.
+ */
+public class CANMonitorConnector extends AbstractAsynchronousConnector {
+
+	private static final Logger logger = LoggerFactory.getLogger(CANMonitorConnector.class);
+	private static final char CARRIAGE_RETURN = '\r';
+	private static final int MAX_FRAME_LENGTH = 8;
+	private static final int RESPONSE_BUFFER_SIZE = 1024;
+	
+	private final SignalDefinition[][] standardSignals = new SignalDefinition[SignalDefinition.MAX_STANDARD_ID + 1][];
+	private final Map<Integer, SignalDefinition[]> extendedSignals = new HashMap<Integer, SignalDefinition[]>();
+	private final List<Integer> canIds = new ArrayList<Integer>();
+	private final LocalResponseParser responseParser = new LocalResponseParser();
+	private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+	private volatile boolean monitoringStopped;
+	private volatile boolean stnDevice;
+
+	/**
+	 * @param signals the signals to decode from the monitored frames
+	 */
+	public CANMonitorConnector(List<SignalDefinition> signals) {
+		if (signals == null || signals.isEmpty()) {
+			throw new IllegalArgumentException("signals must not be null or empty!");
+		}
+		
+		Map<Integer, List<SignalDefinition>> byId = new HashMap<Integer, List<SignalDefinition>>();
+		for (SignalDefinition s : signals) {
+			List<SignalDefinition> list = byId.get(s.getCanId());
+			if (list == null) {
+				list = new ArrayList<SignalDefinition>();
+				byId.put(s.getCanId(), list);
+				canIds.add(s.getCanId());
+			}
+			list.add(s);
+		}
+		
+		for (Integer id : canIds) {
+			SignalDefinition[] defs = byId.get(id).toArray(new SignalDefinition[0]);
+			if (id <= SignalDefinition.MAX_STANDARD_ID) {
+				standardSignals[id] = defs;
+			}
+			else {
+				extendedSignals.put(id, defs);
+			}
+		}
+	}
+	
+	@Override
+	public boolean supportsDevice(String deviceName) {
+		/*
+		 * the monitoring mode is explicitly configured, so we take
+		 * every ELM327 compatible device
+		 */
+		return !deviceName.contains("DRIVEDECK");
+	}
+
+	@Override
+	public ConnectionState connectionState() {
+		return state;
+	}
+
+	@Override
+	protected List<AbstractCommand> getInitializationCommands() {
+		List<AbstractCommand> result = new ArrayList<AbstractCommand>();
+		result.add(new ObdReset());
+		result.add(new EchoOff());
+		result.add(new LineFeedOff());
+		result.add(new SpacesOff());
+		result.add(new HeadersOn());
+		result.add(new SelectAutoProtocol());
+		
+		/*
+		 * a request to let the adapter detect the bus protocol
+		 */
+		result.add(new PIDSupported());
+		result.add(new CANAutoFormatting(false));
+		
+		/*
+		 * the response decides on the filter commands
+		 */
+		result.add(new STNIdentify());
+		return result;
+	}
+	
+	@Override
+	public void executeInitializationCommands() throws IOException,
+			AdapterFailedException {
+		stnDevice = false;
+		super.executeInitializationCommands();
+		executeInitializationCommands(getMonitoringCommands());
+	}
+	
+	/**
+	 * @return the filter commands and the monitoring command, depending
+	 * on the detected chip
+	 */
+	protected List<AbstractCommand> getMonitoringCommands() {
+		List<AbstractCommand> result = new ArrayList<AbstractCommand>();
+		if (stnDevice) {
+			result.add(new STNClearPassFilters());
+			for (Integer id : canIds) {
+				boolean extended = id > SignalDefinition.MAX_STANDARD_ID;
+				result.add(new STNAddPassFilter(toHex(id, extended),
+						toHex(extended ? 0x1FFFFFFF : SignalDefinition.MAX_STANDARD_ID, extended)));
+			}
+		}
+		else {
+			addFilterCommands(result);
+		}
+		
+		result.add(createMonitorCommand());
+		return result;
+	}
+
+	/**
+	 * the ELM327 supports a single filter/mask pair, so the
+	 * mask covers the bits all IDs have in common
+	 */
+	private void addFilterCommands(List<AbstractCommand> result) {
+		boolean extended = canIds.get(0) > SignalDefinition.MAX_STANDARD_ID;
+		int filter = canIds.get(0);
+		int mask = extended ? 0x1FFFFFFF : SignalDefinition.MAX_STANDARD_ID;
+		
+		for (Integer id : canIds) {
+			if (extended != id > SignalDefinition.MAX_STANDARD_ID) {
+				logger.info("Mixed 11 bit and 29 bit IDs, not using a CAN filter.");
+				return;
+			}
+			mask &= ~(id ^ filter);
+		}
+		
+		result.add(new CANFilter(toHex(filter & mask, extended)));
+		result.add(new CANMask(toHex(mask, extended)));
+	}
+
+	private AbstractCommand createMonitorCommand() {
+		return stnDevice ? new STNMonitorAll() : new MonitorAll();
+	}
+
+	private String toHex(int value, boolean extended) {
+		String result = Integer.toHexString(value).toUpperCase(Locale.US);
+		int digits = extended ? 8 : 3;
+		while (result.length() < digits) {
+			result = "0".concat(result);
+		}
+		return result;
+	}
+	
+	@Override
+	protected List<AbstractCommand> getRequestCommands() {
+		if (monitoringStopped) {
+			/*
+			 * the adapter left the monitoring mode (e.g. BUFFER FULL)
+			 */
+			logger.info("Monitoring stopped, restarting.");
+			monitoringStopped = false;
+			return Collections.singletonList(createMonitorCommand());
+		}
+		return Collections.emptyList();
+	}
+
+	@Override
+	protected char getRequestEndOfLine() {
+		return CARRIAGE_RETURN;
+	}
+
+	@Override
+	protected ResponseParser getResponseParser() {
+		return responseParser;
+	}
+
+	@Override
+	protected long getSleepTimeBetweenCommands() {
+		return 0;
+	}
+	
+	@Override
+	protected int getMaximumResponseBufferSize() {
+		return RESPONSE_BUFFER_SIZE;
+	}
+
+	@Override
+	public int getMaximumTriesForInitialization() {
+		return 2;
+	}
+
+	@Override
+	public long getPreferredRequestPeriod() {
+		return 100;
+	}
+	
+	/**
+	 * Parses the monitored frames. A line consists of the CAN ID
+	 * (3 HEX digits for 11 bit, 8 for 29 bit) followed by the data
+	 * bytes, optionally separated by spaces.
+	 */
+	public class LocalResponseParser implements BufferingResponseParser {
+
+		private final byte[] frame = new byte[MAX_FRAME_LENGTH];
+		private final ArrayDeque<AbstractCommand> pending = new ArrayDeque<AbstractCommand>();
+		
+		@Override
+		public AbstractCommand processResponse(byte[] bytes, int start, int count) {
+			int end = start + count;
+			while (start < end && (bytes[start] == '>' || bytes[start] == ' ' || bytes[start] == '\n')) {
+				start++;
+			}
+			if (start >= end) {
+				return null;
+			}
+			
+			if (!isHexDigit(bytes[start])) {
+				processStatus(new String(bytes, start, end - start));
+				return null;
+			}
+			
+			/*
+			 * the ID: either terminated by a space or derived from the
+			 * number of digits (odd for 11 bit IDs)
+			 */
+			int digits = 0;
+			int index = start;
+			boolean spaced = false;
+			while (index < end && bytes[index] != '<') {
+				if (bytes[index] == ' ') {
+					spaced = true;
+				}
+				else if (isHexDigit(bytes[index])) {
+					digits++;
+				}
+				else {
+					processStatus(new String(bytes, start, end - start));
+					return null;
+				}
+				index++;
+			}
+			end = index;
+			
+			int idDigits;
+			if (spaced) {
+				idDigits = 0;
+				while (start + idDigits < end && bytes[start + idDigits] != ' ') {
+					idDigits++;
+				}
+				/*
+				 * 29 bit IDs are printed as four bytes
+				 */
+				if (idDigits == 2) {
+					idDigits = 8;
+				}
+			}
+			else {
+				idDigits = digits % 2 == 1 ? 3 : 8;
+			}
+			
+			int id = 0;
+			int found = 0;
+			index = start;
+			while (found < idDigits && index < end) {
+				if (bytes[index] != ' ') {
+					id = id << 4 | Character.digit((char) bytes[index], 16);
+					found++;
+				}
+				index++;
+			}
+			if (found < idDigits || (idDigits == 3 && id > SignalDefinition.MAX_STANDARD_ID)) {
+				/*
+				 * incomplete or no valid 11 bit ID (e.g. a garbled line)
+				 */
+				return null;
+			}
+			
+			SignalDefinition[] signals = idDigits == 3 ? standardSignals[id] : extendedSignals.get(id);
+			if (signals == null) {
+				return null;
+			}
+			
+			int length = 0;
+			int high = -1;
+			for (; index < end && length < MAX_FRAME_LENGTH; index++) {
+				if (bytes[index] == ' ') continue;
+				int nibble = Character.digit((char) bytes[index], 16);
+				if (high < 0) {
+					high = nibble;
+				}
+				else {
+					frame[length++] = (byte) (high << 4 | nibble);
+					high = -1;
+				}
+			}
+			
+			state = ConnectionState.CONNECTED;
+			long now = System.currentTimeMillis();
+			AbstractCommand result = null;
+			for (SignalDefinition s : signals) {
+				double value = s.decode(frame, 0, length);
+				if (Double.isNaN(value)) {
+					continue;
+				}
+				
+				MonitoredSignal cmd = new MonitoredSignal(s.getPID(), value);
+				cmd.setResultTime(now);
+				if (result == null) {
+					result = cmd;
+				}
+				else {
+					pending.add(cmd);
+				}
+			}
+			
+			return result;
+		}
+
+		private void processStatus(String status) {
+			if (status.startsWith("STN")) {
+				/*
+				 * the response to STI, e.g. "STN1110 v4.0.1"
+				 */
+				stnDevice = true;
+				state = ConnectionState.CONNECTED;
+			}
+			else if (status.startsWith("OK") || status.startsWith("ELM")) {
+				state = ConnectionState.CONNECTED;
+			}
+			else if (status.contains("BUFFER FULL") || status.contains("STOPPED")
+					|| status.contains("CAN ERROR")) {
+				logger.info("Monitoring interrupted: "+status);
+				monitoringStopped = true;
+			}
+			else if (logger.isDebugEnabled()) {
+				logger.debug("Ignoring response: "+status);
+			}
+		}
+
+		private boolean isHexDigit(byte b) {
+			return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'F') || (b >= 'a' && b <= 'f');
+		}
+
+		@Override
+		public AbstractCommand pollBufferedResponse() {
+			return pending.poll();
+		}
+
+		@Override
+		public char getEndOfLine() {
+			return CARRIAGE_RETURN;
+		}
+		
+	}
+
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.envirocar.obdig.commands.PIDUtil;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+
+/**
+ * Describes a signal broadcast on the CAN bus, similar to a DBC
+ * "SG_" entry. The descriptor syntax is
+ * 
+ * <pre>
+ * &lt;CAN ID&gt;:&lt;start bit&gt;|&lt;length&gt;@&lt;byte order&gt;&lt;sign&gt; (&lt;factor&gt;,&lt;offset&gt;) &lt;PID&gt;
+ * </pre>
+ * 
+ * e.g. <code>3E9:7|16@0+ (0.01,0) SPEED</code>. The CAN ID is given in HEX,
+ * the byte order is 1 for little endian (Intel) and 0 for big endian
+ * (Motorola) with the DBC bit numbering. The PID is the name of
+ * the {@link PID} the decoded value is reported as.
+ */
+public class SignalDefinition {
+
+	private static final Pattern DESCRIPTOR = Pattern.compile(
+			"\\s*([0-9A-Fa-f]+)\\s*:\\s*(\\d+)\\|(\\d+)@([01])([+-])\\s*\\(\\s*([^,\\s]+)\\s*,\\s*([^)\\s]+)\\s*\\)\\s*(\\w+)\\s*");
+	
+	public static final int MAX_STANDARD_ID = 0x7FF;
+	
+	private final int canId;
+	private final int startBit;
+	private final int length;
+	private final boolean littleEndian;
+	private final boolean signed;
+	private final double factor;
+	private final double offset;
+	private final PID pid;
+
+	public SignalDefinition(int canId, int startBit, int length, boolean littleEndian,
+			boolean signed, double factor, double offset, PID pid) {
+		if (pid == null) {
+			throw new IllegalArgumentException("pid must not be null!");
+		}
+		if (length < 1 || length > 32 || startBit < 0 || startBit > 63) {
+			throw new IllegalArgumentException("Invalid signal layout: "+startBit+"|"+length);
+		}
+		this.canId = canId;
+		this.startBit = startBit;
+		this.length = length;
+		this.littleEndian = littleEndian;
+		this.signed = signed;
+		this.factor = factor;
+		this.offset = offset;
+		this.pid = pid;
+	}
+	
+	/**
+	 * @param descriptor a single signal descriptor
+	 * @return the parsed definition
+	 * @throws IllegalArgumentException if the descriptor is malformed
+	 */
+	public static SignalDefinition parse(String descriptor) {
+		if (descriptor == null) {
+			throw new IllegalArgumentException("descriptor must not be null!");
+		}
+		
+		Matcher m = DESCRIPTOR.matcher(descriptor);
+		if (!m.matches()) {
+			throw new IllegalArgumentException("Invalid signal descriptor: "+descriptor);
+		}
+		
+		PID pid = null;
+		for (PID p : PID.values()) {
+			if (p.name().equals(m.group(8))) {
+				pid = p;
+				break;
+			}
+		}
+		if (pid == null) {
+			pid = PIDUtil.fromString(m.group(8));
+		}
+		if (pid == null) {
+			throw new IllegalArgumentException("Unknown PID in signal descriptor: "+descriptor);
+		}
+		
+		try {
+			return new SignalDefinition(Integer.parseInt(m.group(1), 16),
+					Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)),
+					"1".equals(m.group(4)), "-".equals(m.group(5)),
+					Double.parseDouble(m.group(6)), Double.parseDouble(m.group(7)), pid);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid signal descriptor: "+descriptor, e);
+		}
+	}
+	
+	/**
+	 * @param descriptors several descriptors, separated by ';' or line breaks
+	 * @return the parsed definitions
+	 * @throws IllegalArgumentException if one of the descriptors is malformed
+	 */
+	public static List<SignalDefinition> parseAll(String descriptors) {
+		List<SignalDefinition> result = new ArrayList<SignalDefinition>();
+		if (descriptors == null) {
+			return result;
+		}
+		
+		for (String d : descriptors.split("[;\\r\\n]")) {
+			if (!d.trim().isEmpty()) {
+				result.add(parse(d));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @param data the buffer holding the frame data bytes
+	 * @param start the index of the first data byte
+	 * @param count the number of data bytes
+	 * @return the physical value of the signal, NaN if the frame is too short
+	 */
+	public double decode(byte[] data, int start, int count) {
+		long raw = 0;
+		int bit = startBit;
+		if (littleEndian) {
+			if (startBit + length > count * 8) {
+				return Double.NaN;
+			}
+			for (int i = length - 1; i >= 0; i--) {
+				raw = raw << 1 | bitAt(data, start, startBit + i);
+			}
+		}
+		else {
+			for (int i = 0; i < length; i++) {
+				if (bit < 0 || bit >= count * 8) {
+					return Double.NaN;
+				}
+				raw = raw << 1 | bitAt(data, start, bit);
+				/*
+				 * DBC (sawtooth) numbering: continue with the MSB
+				 * of the next byte after the LSB of the current
+				 */
+				bit = bit % 8 == 0 ? bit + 15 : bit - 1;
+			}
+		}
+		
+		if (signed && (raw & (1L << (length - 1))) != 0) {
+			raw -= 1L << length;
+		}
+		
+		return raw * factor + offset;
+	}
+
+	private int bitAt(byte[] data, int start, int bit) {
+		return (data[start + bit / 8] >> (bit % 8)) & 1;
+	}
+
+	public int getCanId() {
+		return canId;
+	}
+
+	/**
+	 * @return true if the CAN ID requires 29 bit (extended) addressing
+	 */
+	public boolean isExtendedId() {
+		return canId > MAX_STANDARD_ID;
+	}
+
+	public PID getPID() {
+		return pid;
+	}
+	
+	@Override
+	public String toString() {
+		return Integer.toHexString(canId).toUpperCase() + ":" + startBit + "|" + length
+				+ "@" + (littleEndian ? "1" : "0") + (signed ? "-" : "+")
+				+ " (" + factor + "," + offset + ") " + pid.name();
+	}
+	
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.sequential;
+
+import org.envirocar.obdig.commands.elm327.Timeout;
+
+/**
+ * Tracks the observed ECU response latency and derives the tightest
+ * safe value for the ELM327 "AT ST" timeout from it. The value is
+ * expressed in units of 4 ms, as expected by {@link Timeout}.
+ * 
+ * A PID that does not provide data (NODATA) always costs the full
+ * timeout, so keeping it close to the actual response latency directly
+ * increases the number of cycles per second.
+ */
+public class AdaptiveTimeoutController {
+
+	/**
+	 * the default value used by the connectors (~250 ms)
+	 */
+	public static final int DEFAULT_TIMEOUT = 62;
+	
+	static final int MIN_TIMEOUT = 8;
+	static final int SAMPLE_WINDOW = 16;
+	private static final int MIN_CHANGE = 2;
+	private static final long MILLIS_PER_UNIT = 4;
+	private static final long SAFETY_MARGIN_MILLIS = 12;
+	
+	private final long[] latencies = new long[SAMPLE_WINDOW];
+	private final boolean[] answeringPids = new boolean[256];
+	private int sampleCount;
+	private int currentTimeout = DEFAULT_TIMEOUT;
+	private int targetTimeout = DEFAULT_TIMEOUT;
+	private boolean updateRequired;
+	
+	/**
+	 * @param pid the PID byte of the command
+	 * @param latencyNanos the time between sending the request and
+	 * receiving the response
+	 */
+	public void onResponse(int pid, long latencyNanos) {
+		if (pid >= 0 && pid < answeringPids.length) {
+			answeringPids[pid] = true;
+		}
+		
+		latencies[sampleCount++ % SAMPLE_WINDOW] = latencyNanos;
+		
+		if (sampleCount >= SAMPLE_WINDOW && sampleCount % SAMPLE_WINDOW == 0) {
+			int target = computeTarget();
+			if (Math.abs(target - currentTimeout) >= MIN_CHANGE) {
+				targetTimeout = target;
+				updateRequired = true;
+			}
+		}
+	}
+	
+	/**
+	 * A NODATA response of a PID that provided data before indicates
+	 * that the timeout is too tight. In that case, fall back to the
+	 * default and start collecting samples again.
+	 * 
+	 * @param pid the PID byte of the command
+	 */
+	public void onNoData(int pid) {
+		if (pid < 0 || pid >= answeringPids.length || !answeringPids[pid]) {
+			return;
+		}
+		
+		if (currentTimeout < DEFAULT_TIMEOUT) {
+			targetTimeout = DEFAULT_TIMEOUT;
+			updateRequired = true;
+			sampleCount = 0;
+		}
+	}
+
+	private int computeTarget() {
+		long max = 0;
+		for (long l : latencies) {
+			max = Math.max(max, l);
+		}
+		
+		long millis = max / 1000000 + SAFETY_MARGIN_MILLIS;
+		millis += millis / 2;
+		
+		int units = (int) ((millis + MILLIS_PER_UNIT - 1) / MILLIS_PER_UNIT);
+		return Math.max(MIN_TIMEOUT, Math.min(DEFAULT_TIMEOUT, units));
+	}
+	
+	/**
+	 * @return true if the adapter should receive a new timeout value
+	 */
+	public boolean isUpdateRequired() {
+		return updateRequired;
+	}
+	
+	/**
+	 * @return the command setting the new timeout value. The controller
+	 * assumes that it will be sent to the adapter.
+	 */
+	public Timeout createTimeoutCommand() {
+		currentTimeout = targetTimeout;
+		updateRequired = false;
+		return new Timeout(currentTimeout);
+	}
+
+	/**
+	 * @return the timeout value (in units of 4 ms) last handed out
+	 */
+	public int getCurrentTimeout() {
+		return currentTimeout;
+	}
+	
+}
@@ -31,17 +31,17 @@ import java.util.List;
 
 import org.envirocar.obdig.commands.AbstractCommand;
 import org.envirocar.obdig.commands.StringResultCommand;
+import org.envirocar.obdig.commands.elm327.AdaptiveTiming;
 import org.envirocar.obdig.commands.elm327.EchoOff;
 import org.envirocar.obdig.commands.elm327.LineFeedOff;
 import org.envirocar.obdig.commands.elm327.ObdReset;
 import org.envirocar.obdig.commands.elm327.SelectAutoProtocol;
+import org.envirocar.obdig.commands.elm327.SpacesOff;
 import org.envirocar.obdig.commands.elm327.Timeout;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class AposW3Connector extends ELM327Connector {
 	
-	private static final Logger logger = LoggerFactory.getLogger(AposW3Connector.class);
+	private static final long INITIALIZATION_COMMAND_GAP = 250;
 
 	@Override
 	public List<AbstractCommand> getInitializationCommands() {
@@ -50,11 +50,36 @@ public class AposW3Connector extends ELM327Connector {
 		result.add(new AposEchoOff());
 		result.add(new AposEchoOff());
 		result.add(new LineFeedOff());
-		result.add(new Timeout(62));
+		result.addAll(getCompactWireCommands());
+		result.add(new Timeout(AdaptiveTimeoutController.DEFAULT_TIMEOUT));
+		result.add(new AdaptiveTiming(1));
 		result.add(new SelectAutoProtocol());
 		return result;
 	}
 
+	/**
+	 * hack for too fast init requests,
+	 * issue observed with Galaxy Nexus (4.3) and VW Tiguan 2013
+	 */
+	@Override
+	protected long getMinimumCommandGap() {
+		if (connectionState() == ConnectionState.CONNECTED) {
+			return 0;
+		}
+		return INITIALIZATION_COMMAND_GAP;
+	}
+	
+	/**
+	 * the W3 is sensitive to fast init sequences, so we only
+	 * send the setting with the largest saving
+	 */
+	@Override
+	protected List<AbstractCommand> getCompactWireCommands() {
+		List<AbstractCommand> result = new ArrayList<AbstractCommand>();
+		result.add(new SpacesOff());
+		return result;
+	}
+
 	@Override
 	public boolean supportsDevice(String deviceName) {
 		return deviceName.contains("APOS") && deviceName.contains("OBD_W3");
@@ -68,6 +93,7 @@ public class AposW3Connector extends ELM327Connector {
 				String content = ((StringResultCommand) cmd).getStringResult();
 				if (content.contains("OK")) {
 					succesfulCount++;
+					acknowledgeWireSetting(WireSetting.ECHO_OFF);
 				}
 			}
 		} else {
@@ -86,20 +112,6 @@ public class AposW3Connector extends ELM327Connector {
 
 	private static class AposEchoOff extends EchoOff {
 		
-		@Override
-		public byte[] getOutgoingBytes() {
-			try {
-				/*
-				 * hack for too fast init requests,
-				 * issue observed with Galaxy Nexus (4.3) and VW Tiguan 2013
-				 */
-				Thread.sleep(250);
-			} catch (InterruptedException e) {
-				logger.warn(e.getMessage(), e);
-			}
-			return super.getOutgoingBytes();
-		}
-
 		@Override
 		public boolean responseAlwaysRequired() {
 			return false;
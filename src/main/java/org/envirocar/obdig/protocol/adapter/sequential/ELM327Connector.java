@@ -27,20 +27,52 @@
 package org.envirocar.obdig.protocol.adapter.sequential;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
+import org.envirocar.obdig.FeatureFlags;
 import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.NumberResultCommand;
 import org.envirocar.obdig.commands.StringResultCommand;
+import org.envirocar.obdig.commands.elm327.AdaptiveTiming;
+import org.envirocar.obdig.commands.elm327.CANAutoFormatting;
 import org.envirocar.obdig.commands.elm327.EchoOff;
+import org.envirocar.obdig.commands.elm327.HeadersOff;
+import org.envirocar.obdig.commands.elm327.HeadersOn;
 import org.envirocar.obdig.commands.elm327.LineFeedOff;
 import org.envirocar.obdig.commands.elm327.ObdReset;
 import org.envirocar.obdig.commands.elm327.SelectAutoProtocol;
+import org.envirocar.obdig.commands.elm327.SetHeader;
+import org.envirocar.obdig.commands.elm327.SpacesOff;
 import org.envirocar.obdig.commands.elm327.Timeout;
 import org.envirocar.obdig.protocol.adapter.AbstractSequentialConnector;
+import org.envirocar.obdig.protocol.adapter.ECUResponseDemultiplexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ELM327Connector extends AbstractSequentialConnector {
 	
+	private static final Logger logger = LoggerFactory.getLogger(ELM327Connector.class);
+	private static final String NODATA = "NODATA";
+	private static final int WIRE_STATISTICS_CYCLES = 20;
+	
+	/**
+	 * the settings of the compact wire profile
+	 */
+	protected enum WireSetting {
+		ECHO_OFF, LINE_FEED_OFF, SPACES_OFF, HEADERS_OFF, CAN_AUTO_FORMATTING
+	}
+	
 	protected int succesfulCount;
+	protected AdaptiveTimeoutController timeoutController = new AdaptiveTimeoutController();
+	private String requestHeader;
+	private Set<WireSetting> wireSettings = EnumSet.noneOf(WireSetting.class);
+	private int statisticsCycles;
+	private long statisticsBytes;
+	private long statisticsFilteredBytes;
 
 	/*
 	 * This is what Torque does:
@@ -92,10 +124,160 @@ public class ELM327Connector extends AbstractSequentialConnector {
 		result.add(new EchoOff());
 		result.add(new EchoOff());
 		result.add(new LineFeedOff());
-		result.add(new Timeout(62));
+		result.addAll(getCompactWireCommands());
+		result.add(new Timeout(AdaptiveTimeoutController.DEFAULT_TIMEOUT));
+		result.add(new AdaptiveTiming(1));
+		if (FeatureFlags.useHeaders()) {
+			result.add(new HeadersOn());
+		}
 		result.add(new SelectAutoProtocol());
 		return result;
 	}
+	
+	/**
+	 * The commands reducing the bytes of every response (in addition to
+	 * echo and line feeds off). Each setting is only considered active
+	 * if the adapter acknowledged it. A sub-class may leave out
+	 * settings its adapter does not handle well.
+	 * 
+	 * @return the compact wire profile commands
+	 */
+	protected List<AbstractCommand> getCompactWireCommands() {
+		List<AbstractCommand> result = new ArrayList<AbstractCommand>();
+		result.add(new SpacesOff());
+		if (!FeatureFlags.useHeaders()) {
+			result.add(new HeadersOff());
+		}
+		/*
+		 * strips the PCI bytes of CAN responses. responses are always
+		 * required (AT R1, the default), so we do not touch that
+		 */
+		result.add(new CANAutoFormatting(true));
+		return result;
+	}
+	
+	/**
+	 * @param setting a setting acknowledged by the adapter
+	 */
+	protected void acknowledgeWireSetting(WireSetting setting) {
+		wireSettings.add(setting);
+	}
+	
+	/**
+	 * @return the acknowledged settings of the compact wire profile
+	 */
+	public Set<WireSetting> getWireSettings() {
+		return Collections.unmodifiableSet(wireSettings);
+	}
+	
+	@Override
+	protected void onResponseReceived(AbstractCommand cmd, long latencyNanos) {
+		if (!(cmd instanceof NumberResultCommand)) {
+			return;
+		}
+		
+		int pid;
+		try {
+			pid = Integer.parseInt(cmd.getPIDAsString(), 16);
+		}
+		catch (NumberFormatException e) {
+			return;
+		}
+		
+		if (cmd.getCommandState() == CommonCommandState.FINISHED) {
+			timeoutController.onResponse(pid, latencyNanos);
+		}
+		else if (cmd.getCommandState() == CommonCommandState.EXECUTION_ERROR
+				&& cmd.getRawData() != null && new String(cmd.getRawData()).contains(NODATA)) {
+			timeoutController.onNoData(pid);
+		}
+	}
+	
+	@Override
+	protected List<AbstractCommand> getCycleSetupCommands() {
+		updateWireStatistics();
+		
+		List<AbstractCommand> result = null;
+		
+		if (timeoutController.isUpdateRequired()) {
+			Timeout cmd = timeoutController.createTimeoutCommand();
+			logger.info("Adjusting adapter timeout to "+ cmd.getPIDAsString());
+			result = new ArrayList<AbstractCommand>();
+			result.add(cmd);
+		}
+		
+		if (requestHeader == null && getPinnedECU() != null) {
+			requestHeader = ECUResponseDemultiplexer.requestHeaderFor(getPinnedECU());
+			if (requestHeader != null) {
+				logger.info("Addressing requests to ECU header "+ requestHeader);
+				if (result == null) {
+					result = new ArrayList<AbstractCommand>();
+				}
+				result.add(new SetHeader(requestHeader));
+			}
+			else {
+				/*
+				 * not a CAN 11 bit ECU, keep functional addressing
+				 */
+				requestHeader = "";
+			}
+		}
+		
+		if (result == null) {
+			return Collections.emptyList();
+		}
+		return result;
+	}
+
+	@Override
+	protected List<AbstractCommand> getRecoveryCommands(RecoveryLevel level) {
+		List<AbstractCommand> result = new ArrayList<AbstractCommand>();
+		switch (level) {
+		case RESYNC_PROMPT:
+			result.add(new EchoOff());
+			break;
+		case RESELECT_PROTOCOL:
+			result.add(new SelectAutoProtocol());
+			break;
+		default:
+			break;
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the header requests are physically addressed with
+	 * (e.g. 7E0), or null if requests are broadcast
+	 */
+	protected String getRequestHeader() {
+		if (requestHeader == null || requestHeader.isEmpty()) {
+			return null;
+		}
+		return requestHeader;
+	}
+
+	/**
+	 * collect the byte counts of the first cycles. The filtered bytes
+	 * are the remaining savings a fully acknowledged profile provides.
+	 */
+	private void updateWireStatistics() {
+		int bytes = getLastCycleByteCount();
+		if (bytes < 0 || statisticsCycles >= WIRE_STATISTICS_CYCLES) {
+			return;
+		}
+		
+		statisticsBytes += bytes;
+		statisticsFilteredBytes += getLastCycleFilteredByteCount();
+		
+		if (++statisticsCycles == WIRE_STATISTICS_CYCLES) {
+			logger.info("Wire profile "+ wireSettings +": "+ (statisticsBytes / statisticsCycles)
+					+" bytes per cycle, thereof filtered: "+ (statisticsFilteredBytes / statisticsCycles));
+			
+			if (wireSettings.contains(WireSetting.SPACES_OFF) && statisticsFilteredBytes > 0) {
+				logger.info("Adapter acknowledged spaces off, but still sends spaces.");
+			}
+		}
+	}
 
 	@Override
 	public boolean supportsDevice(String deviceName) {
@@ -113,12 +295,36 @@ public class ELM327Connector extends AbstractSequentialConnector {
 				}
 				else if (content.contains("ATE0") && content.contains("OK")) {
 					succesfulCount++;
+					acknowledgeWireSetting(WireSetting.ECHO_OFF);
+				}
+				else if (content.contains("OK")) {
+					succesfulCount++;
+					acknowledgeWireSetting(WireSetting.ECHO_OFF);
 				}
 			}
 			
 			else if (cmd instanceof LineFeedOff) {
 				if (content.contains("OK")) {
 					succesfulCount++;
+					acknowledgeWireSetting(WireSetting.LINE_FEED_OFF);
+				}
+			}
+			
+			else if (cmd instanceof SpacesOff) {
+				if (content.contains("OK")) {
+					acknowledgeWireSetting(WireSetting.SPACES_OFF);
+				}
+			}
+			
+			else if (cmd instanceof HeadersOff) {
+				if (content.contains("OK")) {
+					acknowledgeWireSetting(WireSetting.HEADERS_OFF);
+				}
+			}
+			
+			else if (cmd instanceof CANAutoFormatting) {
+				if (content.contains("OK")) {
+					acknowledgeWireSetting(WireSetting.CAN_AUTO_FORMATTING);
 				}
 			}
 			
@@ -133,6 +339,10 @@ public class ELM327Connector extends AbstractSequentialConnector {
 					succesfulCount++;
 				}
 			}
+			
+			else if (cmd instanceof HeadersOn) {
+				setHeadersEnabled(content.contains("OK"));
+			}
 		}
 		
 	}
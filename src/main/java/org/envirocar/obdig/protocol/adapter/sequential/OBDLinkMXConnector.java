@@ -26,12 +26,255 @@
  */
 package org.envirocar.obdig.protocol.adapter.sequential;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.NumberResultCommand;
+import org.envirocar.obdig.commands.StringResultCommand;
+import org.envirocar.obdig.commands.elm327.BaudRateDivisor;
+import org.envirocar.obdig.commands.elm327.LineFeedOff;
+import org.envirocar.obdig.commands.stn.STNIdentify;
+import org.envirocar.obdig.commands.stn.STNSwitchBaudRate;
+import org.envirocar.obdig.protocol.adapter.BaudRateControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connector for STN11xx based OBDLink adapters. If the STN chip is
+ * detected, a higher baud rate is negotiated (when the transport
+ * provides a {@link BaudRateControl}) and physically addressed
+ * requests use the STPX framing with an expected response count,
+ * so the adapter does not wait for its response timeout.
+ */
 public class OBDLinkMXConnector extends ELM327Connector {
 
+	private static final Logger logger = LoggerFactory.getLogger(OBDLinkMXConnector.class);
+	private static final int[] BAUD_RATES = new int[] {2000000, 1000000, 500000, 230400, 115200};
+	private static final long NEGOTIATION_TIMEOUT = 250;
+	private static final int STN_RESPONSE_BUFFER_SIZE = 1024;
+	private static final long STN_REQUEST_PERIOD = 20;
+	private static final char PROMPT = '>';
+	
+	private InputStream inputStream;
+	private OutputStream outputStream;
+	private BaudRateControl baudRateControl;
+	private boolean stnDetected;
 
 	@Override
 	public boolean supportsDevice(String deviceName) {
 		return deviceName.equalsIgnoreCase("OBDLink MX");
 	}
+	
+	@Override
+	public void provideStreamObjects(InputStream inputStream,
+			OutputStream outputStream) {
+		super.provideStreamObjects(inputStream, outputStream);
+		this.inputStream = inputStream;
+		this.outputStream = outputStream;
+		
+		if (outputStream instanceof BaudRateControl) {
+			this.baudRateControl = (BaudRateControl) outputStream;
+		}
+		else if (inputStream instanceof BaudRateControl) {
+			this.baudRateControl = (BaudRateControl) inputStream;
+		}
+	}
+	
+	@Override
+	public List<AbstractCommand> getInitializationCommands() {
+		List<AbstractCommand> result = super.getInitializationCommands();
+		
+		/*
+		 * identify the chip before the connection is considered established
+		 */
+		int index = 0;
+		for (int i = 0; i < result.size(); i++) {
+			if (result.get(i) instanceof LineFeedOff) {
+				index = i + 1;
+				break;
+			}
+		}
+		result.add(index, new STNIdentify());
+		return result;
+	}
+	
+	@Override
+	public void processInitializationCommand(AbstractCommand cmd) {
+		if (cmd instanceof STNIdentify) {
+			String content = ((StringResultCommand) cmd).getStringResult();
+			stnDetected = content.contains("STN");
+			logger.info(stnDetected ? "Detected STN chip: "+content.trim() : "No STN chip detected.");
+			
+			if (baudRateControl != null) {
+				negotiateBaudRate();
+			}
+			return;
+		}
+		
+		super.processInitializationCommand(cmd);
+	}
+
+	/**
+	 * try the supported baud rates, starting with the highest. A failed
+	 * switch is reverted by the adapter, so we continue at the
+	 * previous rate.
+	 */
+	private void negotiateBaudRate() {
+		int current = baudRateControl.getBaudRate();
+		
+		for (int baudRate : BAUD_RATES) {
+			if (baudRate <= current || baudRate > baudRateControl.getMaximumBaudRate()) {
+				continue;
+			}
+			
+			try {
+				int result = switchBaudRate(baudRate, current);
+				if (result > 0) {
+					logger.info("Switched baud rate from "+ current +" to "+ baudRate);
+					return;
+				}
+				else if (result < 0) {
+					logger.info("Adapter does not support switching the baud rate.");
+					return;
+				}
+			} catch (IOException e) {
+				logger.warn("Could not switch the baud rate: "+ e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return 1 if the switch succeeded, 0 if it failed, -1 if the adapter refused it
+	 */
+	private int switchBaudRate(int baudRate, int current) throws IOException {
+		AbstractCommand switchCommand = stnDetected ? new STNSwitchBaudRate(baudRate) : new BaudRateDivisor(baudRate);
+		write(switchCommand.getOutgoingBytes());
+		
+		if (!awaitResponse("OK", false)) {
+			return -1;
+		}
+		
+		if (baudRateControl.setBaudRate(baudRate)) {
+			boolean verified;
+			if (stnDetected) {
+				/*
+				 * the adapter keeps the rate if it receives a command at the new rate
+				 */
+				write(new STNIdentify().getOutgoingBytes());
+				verified = awaitResponse("STN", true);
+			}
+			else {
+				/*
+				 * the adapter sends its ID at the new rate and waits for a carriage return
+				 */
+				verified = awaitResponse("ELM", false);
+				if (verified) {
+					write(new byte[0]);
+					verified = awaitResponse("OK", true);
+				}
+			}
+			
+			if (verified) {
+				return 1;
+			}
+			
+			baudRateControl.setBaudRate(current);
+		}
+		
+		/*
+		 * wait for the adapter to revert and resync
+		 */
+		sleep(NEGOTIATION_TIMEOUT);
+		write(new byte[0]);
+		awaitResponse(String.valueOf(PROMPT), false);
+		return 0;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		outputStream.write(bytes);
+		outputStream.write(AbstractCommand.COMMAND_SEND_END);
+		outputStream.flush();
+	}
+
+	/**
+	 * read until the expected content (and optionally the prompt) arrived
+	 * or the negotiation timeout exceeded. The transport is
+	 * expected to support {@link InputStream#available()}.
+	 */
+	private boolean awaitResponse(String expected, boolean prompt) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		long deadline = System.currentTimeMillis() + NEGOTIATION_TIMEOUT;
+		boolean found = false;
+		
+		while (System.currentTimeMillis() < deadline) {
+			if (inputStream.available() <= 0) {
+				sleep(5);
+				continue;
+			}
+			
+			char c = (char) inputStream.read();
+			sb.append(c);
+			
+			if (!found && sb.indexOf(expected) >= 0) {
+				found = true;
+			}
+			
+			if (found && (!prompt || c == PROMPT)) {
+				return true;
+			}
+		}
+		
+		logger.debug("Negotiation response: "+ sb);
+		return false;
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			logger.warn(e.getMessage(), e);
+		}
+	}
+	
+	@Override
+	protected byte[] getOutgoingBytes(AbstractCommand cmd) {
+		String header = getRequestHeader();
+		if (stnDetected && header != null && cmd instanceof NumberResultCommand) {
+			/*
+			 * one ECU is addressed, so the adapter can return
+			 * after the first response
+			 */
+			return ("STPX H:" + header + ",D:" + new String(cmd.getModeBytes())
+					+ cmd.getPIDAsString() + ",R:1").getBytes();
+		}
+		return super.getOutgoingBytes(cmd);
+	}
+	
+	@Override
+	protected int getResponseBufferSize() {
+		if (stnDetected) {
+			return STN_RESPONSE_BUFFER_SIZE;
+		}
+		return super.getResponseBufferSize();
+	}
+	
+	@Override
+	public long getPreferredRequestPeriod() {
+		if (stnDetected) {
+			return STN_REQUEST_PERIOD;
+		}
+		return super.getPreferredRequestPeriod();
+	}
+	
+	/**
+	 * @return true if the adapter identified itself as STN chip
+	 */
+	public boolean isSTNDetected() {
+		return stnDetected;
+	}
 
 }
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the raw traffic of an adapter connection into memory-mapped
+ * segment files. Chunks are staged in a batch buffer and copied into the
+ * mapped segment when the batch is full or older than
+ * {@link #FLUSH_INTERVAL}, so the streams only pay for a copy into
+ * the heap. A timer shared by all logs flushes batches which are due
+ * while no traffic arrives (e.g. on a stalled link).
+ * <p>
+ * Every segment starts with a header (magic, version, capture start
+ * in epoch millis). It is followed by length-prefixed records: payload
+ * length (int), direction ({@link #TRANSMIT} or {@link #RECEIVE}),
+ * nanoseconds since the capture start (long) and the payload. A zero
+ * direction marks the end of the segment. Chunks of the same direction
+ * within {@link #COALESCE_NANOS} share a record, so byte-wise reads do
+ * not create a record per byte.
+ * <p>
+ * When a segment is full, the next one is created. Only the newest
+ * segments are kept, see {@link #DEFAULT_MAX_SEGMENTS}.
+ */
+public class CaptureLog implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(CaptureLog.class);
+	
+	private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "OBD-Capture-Flush");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	public static final byte TRANSMIT = 'T';
+	public static final byte RECEIVE = 'R';
+	
+	public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	public static final int DEFAULT_MAX_SEGMENTS = 8;
+	public static final int DEFAULT_BATCH_SIZE = 8 * 1024;
+	public static final long FLUSH_INTERVAL = 1000;
+	public static final long COALESCE_NANOS = 1000000;
+	
+	static final int MAGIC = 0x4F424443;
+	static final int VERSION = 1;
+	static final int SEGMENT_HEADER_SIZE = 16;
+	static final int RECORD_HEADER_SIZE = 13;
+	static final String SEGMENT_PREFIX = "capture-";
+	static final String SEGMENT_SUFFIX = ".obdcap";
+	
+	private final File directory;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final ByteBuffer batch;
+	private final long startMillis;
+	private final long startNanos;
+	private final LinkedList<File> segments = new LinkedList<File>();
+	private final ScheduledFuture<?> flushTask;
+	private MappedByteBuffer segment;
+	private int segmentIndex;
+	private int openRecord = -1;
+	private byte openDirection;
+	private long openRecordNanos;
+	private long batchStartMillis;
+	private boolean closed;
+	
+	public CaptureLog(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS, DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * @param directory the directory of the segment files
+	 * @param segmentSize the size of a segment file in bytes
+	 * @param maxSegments the number of segments to keep
+	 * @param batchSize the size of the batch buffer in bytes
+	 * @throws IOException if the directory is not accessible
+	 */
+	public CaptureLog(File directory, int segmentSize, int maxSegments, int batchSize) throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory must not be null!");
+		}
+		if (batchSize <= RECORD_HEADER_SIZE || segmentSize < SEGMENT_HEADER_SIZE + batchSize) {
+			throw new IllegalArgumentException("segmentSize must hold the header and a full batch!");
+		}
+		if (maxSegments < 1) {
+			throw new IllegalArgumentException("maxSegments must be positive!");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create capture directory: "+directory);
+		}
+		
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		this.batch = ByteBuffer.allocate(batchSize);
+		this.startMillis = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+		
+		/*
+		 * continue after the segments of previous captures
+		 */
+		for (File f : CaptureReader.listSegments(directory)) {
+			segments.add(f);
+			segmentIndex = Math.max(segmentIndex, parseIndex(f));
+		}
+		
+		this.flushTask = FLUSH_TIMER.scheduleWithFixedDelay(new Runnable() {
+			
+			@Override
+			public void run() {
+				flushIfDue();
+			}
+		}, FLUSH_INTERVAL / 2, FLUSH_INTERVAL / 2, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param direction {@link #TRANSMIT} or {@link #RECEIVE}
+	 * @param b the byte
+	 */
+	public synchronized void append(byte direction, int b) {
+		if (closed) {
+			return;
+		}
+		
+		prepareRecord(direction);
+		if (closed) {
+			return;
+		}
+		batch.put((byte) b);
+		batch.putInt(openRecord, batch.getInt(openRecord) + 1);
+		flushIfDue();
+	}
+	
+	/**
+	 * @param direction {@link #TRANSMIT} or {@link #RECEIVE}
+	 * @param b the buffer
+	 * @param off the offset of the chunk
+	 * @param len the length of the chunk
+	 */
+	public synchronized void append(byte direction, byte[] b, int off, int len) {
+		while (len > 0 && !closed) {
+			prepareRecord(direction);
+			if (closed) {
+				return;
+			}
+			int n = Math.min(len, batch.remaining());
+			batch.put(b, off, n);
+			batch.putInt(openRecord, batch.getInt(openRecord) + n);
+			off += n;
+			len -= n;
+		}
+		
+		flushIfDue();
+	}
+
+	/**
+	 * makes sure that an open record of the direction with free space exists
+	 */
+	private void prepareRecord(byte direction) {
+		long now = System.nanoTime() - startNanos;
+		if (openRecord >= 0 && openDirection == direction
+				&& now - openRecordNanos <= COALESCE_NANOS && batch.hasRemaining()) {
+			return;
+		}
+		
+		if (batch.remaining() <= RECORD_HEADER_SIZE) {
+			flush();
+			if (closed) {
+				return;
+			}
+		}
+		
+		if (batch.position() == 0) {
+			batchStartMillis = System.currentTimeMillis();
+		}
+		
+		openRecord = batch.position();
+		openDirection = direction;
+		openRecordNanos = now;
+		batch.putInt(0);
+		batch.put(direction);
+		batch.putLong(now);
+	}
+	
+	private synchronized void flushIfDue() {
+		if (closed) {
+			return;
+		}
+		if (!batch.hasRemaining() || System.currentTimeMillis() - batchStartMillis > FLUSH_INTERVAL) {
+			flush();
+		}
+	}
+
+	/**
+	 * copies the staged records into the mapped segment
+	 */
+	public synchronized void flush() {
+		if (closed || batch.position() == 0) {
+			return;
+		}
+		
+		batch.flip();
+		try {
+			while (batch.hasRemaining()) {
+				int start = batch.position();
+				int size = RECORD_HEADER_SIZE + batch.getInt(start);
+				if (segment == null || segment.remaining() < size) {
+					rotate();
+				}
+				
+				int limit = batch.limit();
+				batch.limit(start + size);
+				segment.put(batch);
+				batch.limit(limit);
+			}
+		} catch (IOException e) {
+			logger.warn("Capture failed, disabling it: "+e.getMessage(), e);
+			closed = true;
+		}
+		
+		batch.clear();
+		openRecord = -1;
+	}
+	
+	private void rotate() throws IOException {
+		if (segment != null) {
+			segment.force();
+		}
+		
+		File file = new File(directory, createSegmentName(++segmentIndex));
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		} finally {
+			raf.close();
+		}
+		
+		segment.putInt(MAGIC);
+		segment.putInt(VERSION);
+		segment.putLong(startMillis);
+		
+		segments.add(file);
+		while (segments.size() > maxSegments) {
+			File oldest = segments.removeFirst();
+			if (!oldest.delete()) {
+				logger.warn("Could not delete capture segment "+oldest);
+			}
+		}
+	}
+	
+	/**
+	 * flushes the batch and persists the current segment. Further
+	 * chunks are ignored.
+	 */
+	@Override
+	public synchronized void close() {
+		flushTask.cancel(false);
+		flush();
+		if (segment != null) {
+			segment.force();
+			segment = null;
+		}
+		closed = true;
+	}
+	
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+	
+	static String createSegmentName(int index) {
+		StringBuilder sb = new StringBuilder(Integer.toString(index));
+		while (sb.length() < 6) {
+			sb.insert(0, '0');
+		}
+		return SEGMENT_PREFIX + sb.toString() + SEGMENT_SUFFIX;
+	}
+	
+	private static int parseIndex(File segmentFile) {
+		String name = segmentFile.getName();
+		try {
+			return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+					name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+}
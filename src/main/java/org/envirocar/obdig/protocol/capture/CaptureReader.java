@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the records of the segments written by {@link CaptureLog},
+ * oldest first.
+ */
+public class CaptureReader {
+
+	private final File[] segmentFiles;
+	private int segmentIndex = -1;
+	private ByteBuffer segment;
+	private long captureStart;
+
+	/**
+	 * @param directory the capture directory
+	 */
+	public CaptureReader(File directory) {
+		List<File> files = listSegments(directory);
+		this.segmentFiles = files.toArray(new File[files.size()]);
+	}
+	
+	/**
+	 * @return the next record, or null if all segments have been read
+	 * @throws IOException if a segment could not be read or is corrupt
+	 */
+	public CaptureRecord next() throws IOException {
+		while (true) {
+			if (segment != null && segment.remaining() >= CaptureLog.RECORD_HEADER_SIZE) {
+				int start = segment.position();
+				int length = segment.getInt();
+				byte direction = segment.get();
+				if (direction != CaptureLog.TRANSMIT && direction != CaptureLog.RECEIVE) {
+					/*
+					 * end of the written part
+					 */
+					segment = null;
+					continue;
+				}
+				
+				long timestamp = segment.getLong();
+				if (length < 0 || length > segment.remaining()) {
+					throw new IOException("Corrupt record at "+start+" of "+segmentFiles[segmentIndex]);
+				}
+				
+				byte[] payload = new byte[length];
+				segment.get(payload);
+				return new CaptureRecord(direction, captureStart, timestamp, payload);
+			}
+			
+			if (++segmentIndex >= segmentFiles.length) {
+				return null;
+			}
+			openSegment(segmentFiles[segmentIndex]);
+		}
+	}
+
+	private void openSegment(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		
+		if (segment.remaining() < CaptureLog.SEGMENT_HEADER_SIZE || segment.getInt() != CaptureLog.MAGIC) {
+			throw new IOException("Not a capture segment: "+file);
+		}
+		int version = segment.getInt();
+		if (version != CaptureLog.VERSION) {
+			throw new IOException("Unsupported capture version "+version+": "+file);
+		}
+		captureStart = segment.getLong();
+	}
+	
+	/**
+	 * @param directory the capture directory
+	 * @return the segment files, oldest first
+	 */
+	public static List<File> listSegments(File directory) {
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.isFile() && f.getName().startsWith(CaptureLog.SEGMENT_PREFIX)
+						&& f.getName().endsWith(CaptureLog.SEGMENT_SUFFIX);
+			}
+		});
+		
+		if (files == null) {
+			files = new File[0];
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+	
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+/**
+ * A chunk of captured adapter traffic.
+ */
+public class CaptureRecord {
+
+	private final byte direction;
+	private final long captureStart;
+	private final long timestampNanos;
+	private final byte[] payload;
+
+	public CaptureRecord(byte direction, long captureStart, long timestampNanos, byte[] payload) {
+		this.direction = direction;
+		this.captureStart = captureStart;
+		this.timestampNanos = timestampNanos;
+		this.payload = payload;
+	}
+
+	/**
+	 * @return {@link CaptureLog#TRANSMIT} or {@link CaptureLog#RECEIVE}
+	 */
+	public byte getDirection() {
+		return direction;
+	}
+	
+	public boolean isTransmit() {
+		return direction == CaptureLog.TRANSMIT;
+	}
+
+	/**
+	 * @return the start of the capture session in epoch millis
+	 */
+	public long getCaptureStart() {
+		return captureStart;
+	}
+
+	/**
+	 * @return nanoseconds since the start of the capture session
+	 */
+	public long getTimestampNanos() {
+		return timestampNanos;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+	
+	@Override
+	public String toString() {
+		return (char) direction +" +"+ (timestampNanos / 1000) +"us: "+ new String(payload);
+	}
+	
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.protocol.capture.ReplayScript.Exchange;
+
+/**
+ * Plays a {@link ReplayScript} back to a connector: the
+ * {@link #getOutputStream()} receives the requests, and the recorded
+ * responses of the matching exchange are served via
+ * {@link #getInputStream()}.
+ * <p>
+ * A request is matched when the terminator ('\r') is written. The next
+ * exchanges (up to {@link #LOOKAHEAD}) are searched, so skipped requests
+ * do not break the replay. If no exchange matches, the replay diverged,
+ * and reading fails with an {@link EOFException}, as it does once the
+ * script is exhausted.
+ */
+public class CaptureReplay {
+
+	public enum Mode {
+		/**
+		 * responses are delayed as recorded
+		 */
+		REAL_TIME,
+		
+		/**
+		 * responses are available immediately, for throughput benchmarks
+		 */
+		MAX_SPEED
+	}
+	
+	public static final int LOOKAHEAD = 32;
+	private static final long IMMEDIATE = Long.MIN_VALUE;
+	
+	private final List<Exchange> exchanges;
+	private final Mode mode;
+	private final Object lock = new Object();
+	private final ArrayDeque<Chunk> pending = new ArrayDeque<Chunk>();
+	private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+	private final InputStream inputStream = new ReplayInputStream();
+	private final OutputStream outputStream = new ReplayOutputStream();
+	private int cursor;
+	private int matchedCount;
+	private int missCount;
+	private long servedBytes;
+	private boolean diverged;
+	private boolean closed;
+
+	public CaptureReplay(ReplayScript script, Mode mode) {
+		if (script == null) {
+			throw new IllegalArgumentException("script must not be null!");
+		}
+		if (mode == null) {
+			throw new IllegalArgumentException("mode must not be null!");
+		}
+		this.exchanges = script.getExchanges();
+		this.mode = mode;
+		
+		/*
+		 * data the adapter sent before the first request
+		 */
+		if (!exchanges.isEmpty() && exchanges.get(0).getRequest().length == 0) {
+			serve(0, System.nanoTime());
+		}
+	}
+	
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+	
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+	
+	/**
+	 * @return the number of requests answered from the script
+	 */
+	public int getMatchedCount() {
+		synchronized (lock) {
+			return matchedCount;
+		}
+	}
+	
+	/**
+	 * @return the number of requests without a recorded exchange
+	 */
+	public int getMissCount() {
+		synchronized (lock) {
+			return missCount;
+		}
+	}
+	
+	/**
+	 * @return the number of response bytes read by the connector
+	 */
+	public long getServedBytes() {
+		synchronized (lock) {
+			return servedBytes;
+		}
+	}
+	
+	/**
+	 * @return true if all exchanges have been served
+	 */
+	public boolean isFinished() {
+		synchronized (lock) {
+			return cursor >= exchanges.size() && pending.isEmpty();
+		}
+	}
+	
+	/**
+	 * ends the replay. Blocked reads fail.
+	 */
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+	}
+	
+	private void onRequestByte(int b) {
+		request.write(b);
+		if (b != AbstractCommand.COMMAND_SEND_END) {
+			return;
+		}
+		
+		byte[] bytes = request.toByteArray();
+		int end = Math.min(exchanges.size(), cursor + LOOKAHEAD);
+		boolean prefix = false;
+		for (int i = cursor; i < end; i++) {
+			byte[] recorded = exchanges.get(i).getRequest();
+			if (Arrays.equals(recorded, bytes)) {
+				request.reset();
+				matchedCount++;
+				serve(i, System.nanoTime());
+				return;
+			}
+			if (!prefix && startsWith(recorded, bytes)) {
+				prefix = true;
+			}
+		}
+		
+		if (!prefix) {
+			/*
+			 * the connector sent something that was never recorded
+			 */
+			request.reset();
+			missCount++;
+			diverged = true;
+			lock.notifyAll();
+		}
+	}
+	
+	private void serve(int index, long now) {
+		Exchange ex = exchanges.get(index);
+		for (int i = 0; i < ex.getResponseCount(); i++) {
+			long due = mode == Mode.REAL_TIME ? now + ex.getDelay(i) : IMMEDIATE;
+			pending.add(new Chunk(ex.getResponse(i), due));
+		}
+		cursor = index + 1;
+		lock.notifyAll();
+	}
+	
+	private static boolean startsWith(byte[] data, byte[] prefix) {
+		if (prefix.length > data.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the next chunk with data, waiting for it to become due
+	 */
+	private Chunk awaitChunk() throws IOException {
+		try {
+			while (true) {
+				if (closed) {
+					throw new EOFException("Replay closed");
+				}
+				
+				Chunk chunk = pending.peek();
+				if (chunk == null) {
+					if (diverged) {
+						throw new EOFException("Replay diverged from the capture");
+					}
+					if (cursor >= exchanges.size()) {
+						throw new EOFException("Replay finished");
+					}
+					lock.wait();
+					continue;
+				}
+				
+				long wait = chunk.due - System.nanoTime();
+				if (chunk.due == IMMEDIATE || wait <= 0) {
+					return chunk;
+				}
+				lock.wait(wait / 1000000, (int) (wait % 1000000));
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(e.getMessage());
+		}
+	}
+	
+	private int availableBytes() {
+		int result = 0;
+		long now = System.nanoTime();
+		for (Chunk c : pending) {
+			if (c.due != IMMEDIATE && c.due - now > 0) {
+				break;
+			}
+			result += c.data.length - c.position;
+		}
+		return result;
+	}
+	
+	private class ReplayInputStream extends InputStream {
+		
+		@Override
+		public int read() throws IOException {
+			synchronized (lock) {
+				Chunk chunk = awaitChunk();
+				int b = chunk.data[chunk.position++] & 0xff;
+				if (chunk.position == chunk.data.length) {
+					pending.poll();
+				}
+				servedBytes++;
+				return b;
+			}
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			
+			synchronized (lock) {
+				Chunk chunk = awaitChunk();
+				int n = Math.min(len, chunk.data.length - chunk.position);
+				System.arraycopy(chunk.data, chunk.position, b, off, n);
+				chunk.position += n;
+				if (chunk.position == chunk.data.length) {
+					pending.poll();
+				}
+				servedBytes += n;
+				return n;
+			}
+		}
+		
+		@Override
+		public int available() {
+			synchronized (lock) {
+				return availableBytes();
+			}
+		}
+		
+		@Override
+		public void close() {
+			CaptureReplay.this.close();
+		}
+	}
+	
+	private class ReplayOutputStream extends OutputStream {
+		
+		@Override
+		public void write(int b) throws IOException {
+			synchronized (lock) {
+				if (closed) {
+					throw new IOException("Replay closed");
+				}
+				onRequestByte(b & 0xff);
+			}
+		}
+		
+		@Override
+		public void close() {
+			CaptureReplay.this.close();
+		}
+	}
+	
+	private static class Chunk {
+		
+		private final byte[] data;
+		private final long due;
+		private int position;
+		
+		Chunk(byte[] data, long due) {
+			this.data = data;
+			this.due = due;
+		}
+	}
+	
+}
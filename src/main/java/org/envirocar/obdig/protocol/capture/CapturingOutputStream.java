@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records every byte written to the wrapped stream as
+ * {@link CaptureLog#TRANSMIT} traffic.
+ */
+public class CapturingOutputStream extends FilterOutputStream {
+
+	private final CaptureLog log;
+
+	public CapturingOutputStream(OutputStream out, CaptureLog log) {
+		super(out);
+		if (log == null) {
+			throw new IllegalArgumentException("log must not be null!");
+		}
+		this.log = log;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		log.append(CaptureLog.TRANSMIT, b);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		log.append(CaptureLog.TRANSMIT, b, off, len);
+	}
+	
+}
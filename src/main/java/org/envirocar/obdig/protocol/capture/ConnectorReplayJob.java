@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.protocol.CommandExecutor;
+import org.envirocar.obdig.protocol.adapter.OBDConnector;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+import org.envirocar.obdig.protocol.exception.ConnectionLostException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives an {@link OBDConnector} like the looper does: initialization,
+ * then request cycles until the replay ends or the maximum number of
+ * cycles is reached.
+ */
+public class ConnectorReplayJob implements ReplayJob {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectorReplayJob.class);
+	
+	private final OBDConnector connector;
+	private final int maxCycles;
+	private final long cyclePeriod;
+	private int cycleCount;
+	private int responseCount;
+	private Exception termination;
+
+	/**
+	 * @param connector a new connector instance
+	 * @param maxCycles the maximum number of request cycles
+	 * @param cyclePeriod the pause between cycles in millis, 0 for none
+	 */
+	public ConnectorReplayJob(OBDConnector connector, int maxCycles, long cyclePeriod) {
+		if (connector == null) {
+			throw new IllegalArgumentException("connector must not be null!");
+		}
+		this.connector = connector;
+		this.maxCycles = maxCycles;
+		this.cyclePeriod = cyclePeriod;
+	}
+	
+	@Override
+	public void run(InputStream in, OutputStream out) throws Exception {
+		ThreadExecutor executor = new ThreadExecutor();
+		connector.setSessionState(new SessionState());
+		connector.provideStreamObjects(in, out);
+		
+		try {
+			connector.startExecutions(executor);
+			connector.executeInitializationCommands();
+			
+			while (cycleCount < maxCycles) {
+				List<AbstractCommand> result;
+				try {
+					result = connector.executeRequestCommands();
+				} catch (ConnectionLostException e) {
+					termination = e;
+					break;
+				} catch (IOException e) {
+					termination = e;
+					break;
+				}
+				
+				for (AbstractCommand cmd : result) {
+					if (cmd.getCommandState() == CommonCommandState.FINISHED) {
+						responseCount++;
+					}
+				}
+				cycleCount++;
+				
+				if (cyclePeriod > 0) {
+					Thread.sleep(cyclePeriod);
+				}
+			}
+		} finally {
+			connector.prepareShutdown();
+			connector.shutdown();
+			executor.shutdownExecutions();
+		}
+		
+		if (termination != null) {
+			logger.debug("Replay ended after "+cycleCount+" cycles: "+termination.getMessage());
+		}
+	}
+
+	/**
+	 * @return the number of completed request cycles
+	 */
+	public int getCycleCount() {
+		return cycleCount;
+	}
+
+	/**
+	 * @return the number of valid responses over all cycles
+	 */
+	public int getResponseCount() {
+		return responseCount;
+	}
+
+	/**
+	 * @return the exception which ended the request cycles before
+	 * the maximum was reached (usually the end of the replay), or null
+	 */
+	public Exception getTermination() {
+		return termination;
+	}
+	
+	/**
+	 * runs the posted tasks (e.g. the response thread of asynchronous
+	 * connectors) on their own daemon threads
+	 */
+	private static class ThreadExecutor implements CommandExecutor {
+		
+		private final List<Thread> threads = new ArrayList<Thread>();
+		private boolean shutdown;
+
+		@Override
+		public synchronized void postDelayed(final Runnable r, final long delayPeriod) {
+			post(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(delayPeriod);
+						r.run();
+					} catch (InterruptedException e) {
+						logger.debug("Delayed task cancelled");
+					}
+				}
+			});
+		}
+
+		@Override
+		public void removeCallbacks(Runnable r) {
+		}
+
+		@Override
+		public synchronized void post(Runnable r) {
+			if (shutdown) {
+				return;
+			}
+			Thread t = new Thread(r, "replay-executor");
+			t.setDaemon(true);
+			threads.add(t);
+			t.start();
+		}
+
+		@Override
+		public synchronized void shutdownExecutions() {
+			shutdown = true;
+			for (Thread t : threads) {
+				t.interrupt();
+			}
+		}
+	}
+	
+}
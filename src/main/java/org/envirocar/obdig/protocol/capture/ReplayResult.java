@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+/**
+ * The outcome of a replay run by the {@link ReplayRunner}.
+ */
+public class ReplayResult {
+
+	private final long elapsedNanos;
+	private final int matchedCount;
+	private final int missCount;
+	private final long servedBytes;
+	private final boolean finished;
+	private final Exception failure;
+
+	ReplayResult(long elapsedNanos, CaptureReplay replay, Exception failure) {
+		this.elapsedNanos = elapsedNanos;
+		this.matchedCount = replay.getMatchedCount();
+		this.missCount = replay.getMissCount();
+		this.servedBytes = replay.getServedBytes();
+		this.finished = replay.isFinished();
+		this.failure = failure;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the number of requests answered from the capture
+	 */
+	public int getMatchedCount() {
+		return matchedCount;
+	}
+
+	/**
+	 * @return the number of requests without a recorded exchange
+	 */
+	public int getMissCount() {
+		return missCount;
+	}
+
+	public long getServedBytes() {
+		return servedBytes;
+	}
+
+	/**
+	 * @return true if the whole capture has been replayed
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return the exception thrown by the job, or null
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+	
+	/**
+	 * @return the answered requests per second
+	 */
+	public double getRequestRate() {
+		return elapsedNanos == 0 ? 0 : matchedCount * 1e9 / elapsedNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return "ReplayResult [matched=" + matchedCount + ", misses=" + missCount
+				+ ", bytes=" + servedBytes + ", elapsed=" + (elapsedNanos / 1000000)
+				+ "ms, failure=" + failure + "]";
+	}
+	
+}
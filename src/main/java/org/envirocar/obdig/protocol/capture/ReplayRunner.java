@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs replays in parallel on a thread pool, e.g. to benchmark a
+ * connector with many captures at once.
+ */
+public class ReplayRunner {
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param threads the number of replays running at the same time
+	 */
+	public ReplayRunner(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive!");
+		}
+		this.executor = Executors.newFixedThreadPool(threads);
+	}
+	
+	/**
+	 * @param script the capture to replay
+	 * @param mode the pacing of the responses
+	 * @param job the job working on the replayed streams
+	 * @return the future result
+	 */
+	public Future<ReplayResult> submit(final ReplayScript script, final CaptureReplay.Mode mode,
+			final ReplayJob job) {
+		if (job == null) {
+			throw new IllegalArgumentException("job must not be null!");
+		}
+		
+		return executor.submit(new Callable<ReplayResult>() {
+			@Override
+			public ReplayResult call() {
+				CaptureReplay replay = new CaptureReplay(script, mode);
+				Exception failure = null;
+				long start = System.nanoTime();
+				try {
+					job.run(replay.getInputStream(), replay.getOutputStream());
+				} catch (Exception e) {
+					failure = e;
+				} finally {
+					replay.close();
+				}
+				return new ReplayResult(System.nanoTime() - start, replay, failure);
+			}
+		});
+	}
+	
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+}
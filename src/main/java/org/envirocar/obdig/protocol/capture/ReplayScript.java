@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A captured session, split into exchanges: the bytes sent to the
+ * adapter and the chunks it responded with, including the delay of
+ * each chunk after the request.
+ */
+public class ReplayScript {
+
+	private final List<Exchange> exchanges;
+
+	private ReplayScript(List<Exchange> exchanges) {
+		this.exchanges = Collections.unmodifiableList(exchanges);
+	}
+	
+	/**
+	 * @param directory the capture directory
+	 * @return the script of all captured records
+	 * @throws IOException if the capture could not be read
+	 */
+	public static ReplayScript load(File directory) throws IOException {
+		CaptureReader reader = new CaptureReader(directory);
+		List<CaptureRecord> records = new ArrayList<CaptureRecord>();
+		CaptureRecord record;
+		while ((record = reader.next()) != null) {
+			records.add(record);
+		}
+		return fromRecords(records);
+	}
+	
+	/**
+	 * @param records the captured records in their original order
+	 * @return the script
+	 */
+	public static ReplayScript fromRecords(List<CaptureRecord> records) {
+		List<Exchange> result = new ArrayList<Exchange>();
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		long requestTime = records.isEmpty() ? 0 : records.get(0).getTimestampNanos();
+		long captureStart = records.isEmpty() ? 0 : records.get(0).getCaptureStart();
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		List<Long> delays = new ArrayList<Long>();
+		boolean receiving = false;
+		
+		for (CaptureRecord r : records) {
+			if (r.getCaptureStart() != captureStart) {
+				/*
+				 * the next capture session, timestamps start over
+				 */
+				captureStart = r.getCaptureStart();
+				requestTime = r.getTimestampNanos();
+			}
+			
+			if (r.isTransmit()) {
+				if (receiving) {
+					result.add(new Exchange(request.toByteArray(), chunks, delays));
+					request.reset();
+					chunks = new ArrayList<byte[]>();
+					delays = new ArrayList<Long>();
+					receiving = false;
+				}
+				byte[] payload = r.getPayload();
+				request.write(payload, 0, payload.length);
+				requestTime = r.getTimestampNanos();
+			}
+			else {
+				receiving = true;
+				chunks.add(r.getPayload());
+				delays.add(Math.max(0, r.getTimestampNanos() - requestTime));
+			}
+		}
+		
+		if (receiving || request.size() > 0) {
+			result.add(new Exchange(request.toByteArray(), chunks, delays));
+		}
+		
+		return new ReplayScript(result);
+	}
+	
+	public List<Exchange> getExchanges() {
+		return exchanges;
+	}
+	
+	/**
+	 * The request and the response chunks of the adapter.
+	 */
+	public static class Exchange {
+		
+		private final byte[] request;
+		private final byte[][] responses;
+		private final long[] delays;
+		
+		Exchange(byte[] request, List<byte[]> responses, List<Long> delays) {
+			this.request = request;
+			this.responses = responses.toArray(new byte[responses.size()][]);
+			this.delays = new long[delays.size()];
+			for (int i = 0; i < this.delays.length; i++) {
+				this.delays[i] = delays.get(i);
+			}
+		}
+
+		/**
+		 * @return the bytes sent, empty for data the adapter sent unsolicited
+		 */
+		public byte[] getRequest() {
+			return request;
+		}
+
+		public int getResponseCount() {
+			return responses.length;
+		}
+		
+		public byte[] getResponse(int index) {
+			return responses[index];
+		}
+		
+		/**
+		 * @param index the index of the response chunk
+		 * @return the nanoseconds between the request and the chunk
+		 */
+		public long getDelay(int index) {
+			return delays[index];
+		}
+		
+		@Override
+		public String toString() {
+			return new String(request).trim() +" ("+ responses.length +" chunks)";
+		}
+	}
+	
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.stream;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.protocol.DataListener;
+import org.envirocar.obdig.protocol.OBDCommandLooper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DataListener} which decouples the consumers of OBD samples
+ * from the {@link OBDCommandLooper}. Each {@link Subscriber} has its own bounded
+ * buffer and receives items on the provided {@link Executor} according to its
+ * demand. {@link #receiveUpdate(AbstractCommand)} never blocks, so a slow consumer
+ * cannot stall the polling of the bus: if a buffer is full, the oldest item is dropped.
+ * 
+ * With {@link Conflation#LATEST_PER_PID}, a buffer only holds the latest
+ * sample of every PID.
+ */
+public class SamplePublisher implements DataListener, Publisher<AbstractCommand> {
+	
+	private static final Logger logger = LoggerFactory.getLogger(SamplePublisher.class);
+
+	public enum Conflation {
+		
+		/**
+		 * deliver every sample (as long as the buffer is not full)
+		 */
+		NONE,
+		
+		/**
+		 * only deliver the latest sample of every PID
+		 */
+		LATEST_PER_PID
+	}
+	
+	private final Executor executor;
+	private final int bufferSize;
+	private final Conflation conflation;
+	private final CopyOnWriteArrayList<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<BufferedSubscription>();
+	
+	/**
+	 * @param executor the executor used to deliver items to the subscribers
+	 * @param bufferSize the maximum number of buffered items per subscriber
+	 * @param conflation the conflation strategy
+	 */
+	public SamplePublisher(Executor executor, int bufferSize, Conflation conflation) {
+		if (executor == null) throw new IllegalArgumentException("executor must not be null!");
+		if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive!");
+		
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+		this.conflation = conflation == null ? Conflation.NONE : conflation;
+	}
+	
+	@Override
+	public void subscribe(Subscriber<? super AbstractCommand> subscriber) {
+		if (subscriber == null) throw new IllegalArgumentException("subscriber must not be null!");
+		
+		BufferedSubscription s = new BufferedSubscription(subscriber);
+		subscriptions.add(s);
+		subscriber.onSubscribe(s);
+	}
+
+	@Override
+	public void receiveUpdate(AbstractCommand currentJob) {
+		for (BufferedSubscription s : subscriptions) {
+			s.offer(currentJob);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		for (BufferedSubscription s : subscriptions) {
+			s.complete();
+		}
+		subscriptions.clear();
+	}
+
+	@Override
+	public void onConnected(String deviceName) {
+	}
+	
+	/**
+	 * @return the total number of samples dropped due to full buffers
+	 */
+	public long getDroppedCount() {
+		long result = 0;
+		for (BufferedSubscription s : subscriptions) {
+			result += s.dropped.get();
+		}
+		return result;
+	}
+	
+	private class BufferedSubscription implements Subscription, Runnable {
+		
+		private final Subscriber<? super AbstractCommand> subscriber;
+		private final ArrayDeque<AbstractCommand> queue = new ArrayDeque<AbstractCommand>();
+		private final Map<String, AbstractCommand> latest = new LinkedHashMap<String, AbstractCommand>();
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile boolean completed;
+		private volatile Throwable error;
+
+		public BufferedSubscription(Subscriber<? super AbstractCommand> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		void offer(AbstractCommand cmd) {
+			if (cancelled) return;
+			
+			synchronized (this) {
+				if (conflation == Conflation.LATEST_PER_PID) {
+					String key = cmd.getPIDAsString();
+					if (latest.put(key, cmd) == null && latest.size() > bufferSize) {
+						Iterator<String> it = latest.keySet().iterator();
+						it.next();
+						it.remove();
+						dropped.incrementAndGet();
+					}
+				}
+				else {
+					if (queue.size() >= bufferSize) {
+						queue.poll();
+						dropped.incrementAndGet();
+					}
+					queue.offer(cmd);
+				}
+			}
+			
+			schedule();
+		}
+		
+		private synchronized AbstractCommand poll() {
+			if (conflation == Conflation.LATEST_PER_PID) {
+				Iterator<AbstractCommand> it = latest.values().iterator();
+				if (!it.hasNext()) return null;
+				AbstractCommand result = it.next();
+				it.remove();
+				return result;
+			}
+			return queue.poll();
+		}
+		
+		private synchronized boolean isEmpty() {
+			return queue.isEmpty() && latest.isEmpty();
+		}
+
+		void complete() {
+			completed = true;
+			schedule();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("non-positive request: "+n);
+				schedule();
+				return;
+			}
+			
+			long current, next;
+			do {
+				current = demand.get();
+				next = current + n;
+				if (next < 0) next = Long.MAX_VALUE;
+			} while (!demand.compareAndSet(current, next));
+			
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+		
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+		
+		/**
+		 * the drain loop. Only one thread at a time executes it.
+		 */
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (error != null) {
+					cancel();
+					subscriber.onError(error);
+					return;
+				}
+				
+				while (!cancelled && demand.get() > 0) {
+					AbstractCommand next = poll();
+					if (next == null) break;
+					
+					try {
+						subscriber.onNext(next);
+					} catch (RuntimeException e) {
+						logger.warn("Subscriber failed: "+ e.getMessage(), e);
+						cancel();
+						subscriber.onError(e);
+						return;
+					}
+					
+					if (demand.get() != Long.MAX_VALUE) {
+						demand.decrementAndGet();
+					}
+				}
+				
+				if (!cancelled && completed && isEmpty()) {
+					cancelled = true;
+					subscriber.onComplete();
+					return;
+				}
+				
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+		
+	}
+
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.PIDUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Mode 01 PIDs consumers (e.g. consumption calculation, UI, storage)
+ * subscribed to, each with the maximum time between two samples it
+ * accepts. The connectors request the union of the subscribed PIDs,
+ * every PID as often as its most demanding subscriber needs, and every
+ * result is handed to all subscribers of its PID. A further consumer of
+ * an already requested PID therefore does not add any traffic.
+ * <p>
+ * As long as there is no subscription, the connectors request their
+ * default set of PIDs.
+ */
+public class PIDSubscriptions {
+
+	private static final Logger logger = LoggerFactory.getLogger(PIDSubscriptions.class);
+	private static final int PID_COUNT = 0x100;
+	private static final char[] HEX_CHARS = "0123456789ABCDEF".toCharArray();
+	private static final Subscription[] NONE = new Subscription[0];
+	
+	/**
+	 * copy-on-write, so the results are dispatched without locking
+	 */
+	private final AtomicReferenceArray<Subscription[]> subscriptions =
+			new AtomicReferenceArray<Subscription[]>(PID_COUNT);
+	private final long[] periods = new long[PID_COUNT];
+	private final long[] lastRequests = new long[PID_COUNT];
+	private int subscriptionCount;
+	private volatile int version;
+	private long lastCycleStart;
+	private long cycleInterval;
+	
+	/**
+	 * @param pid the PID as a HEX string (e.g. "0D")
+	 * @param periodMillis the maximum time in ms between two samples
+	 * the consumer accepts, 0 for every request cycle
+	 * @param listener the consumer
+	 * @return the subscription, used to cancel it
+	 * @throws IllegalArgumentException if the PID is invalid or the
+	 * listener is null
+	 */
+	public synchronized Subscription subscribe(String pid, long periodMillis, SubscriptionListener listener) {
+		if (listener == null) throw new IllegalArgumentException("listener must not be null!");
+		if (periodMillis < 0) throw new IllegalArgumentException("periodMillis must not be negative!");
+		
+		int pidByte = PIDUtil.toPIDByte(pid);
+		if (pidByte < 0) throw new IllegalArgumentException("Not a PID: "+pid);
+		
+		Subscription result = new Subscription(this, pidByte, periodMillis, listener);
+		
+		Subscription[] current = getSubscriptions(pidByte);
+		Subscription[] updated = new Subscription[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = result;
+		subscriptions.set(pidByte, updated);
+		
+		subscriptionCount++;
+		updatePeriod(pidByte);
+		logger.info("Added "+result);
+		return result;
+	}
+	
+	synchronized void unsubscribe(Subscription subscription) {
+		int pid = subscription.getPID();
+		Subscription[] current = getSubscriptions(pid);
+		
+		int index = -1;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == subscription) {
+				index = i;
+				break;
+			}
+		}
+		
+		if (index < 0) {
+			return;
+		}
+		
+		Subscription[] updated = new Subscription[current.length - 1];
+		System.arraycopy(current, 0, updated, 0, index);
+		System.arraycopy(current, index + 1, updated, index, updated.length - index);
+		subscriptions.set(pid, updated.length == 0 ? null : updated);
+		
+		subscriptionCount--;
+		updatePeriod(pid);
+		logger.info("Removed "+subscription);
+	}
+
+	private void updatePeriod(int pid) {
+		long period = Long.MAX_VALUE;
+		for (Subscription s : getSubscriptions(pid)) {
+			period = Math.min(period, s.getPeriodMillis());
+		}
+		periods[pid] = period;
+		version++;
+	}
+	
+	private Subscription[] getSubscriptions(int pid) {
+		Subscription[] result = subscriptions.get(pid);
+		return result == null ? NONE : result;
+	}
+	
+	/**
+	 * @return true if no consumer subscribed to any PID
+	 */
+	public synchronized boolean isEmpty() {
+		return subscriptionCount == 0;
+	}
+	
+	/**
+	 * @return a counter changing with every (un-)subscription, so
+	 * connectors can cheaply detect a changed set of PIDs
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @return true if at least one consumer subscribed to the PID
+	 */
+	public boolean isSubscribed(int pid) {
+		return pid >= 0 && pid < PID_COUNT && subscriptions.get(pid) != null;
+	}
+	
+	/**
+	 * @return the subscribed PIDs as HEX strings, in ascending order
+	 */
+	public synchronized List<String> getSubscribedPIDs() {
+		List<String> result = new ArrayList<String>();
+		for (int pid = 0; pid < PID_COUNT; pid++) {
+			if (subscriptions.get(pid) != null) {
+				result.add(toHex(pid));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @return the shortest period requested for the PID in ms, or
+	 * {@link Long#MAX_VALUE} if it is not subscribed
+	 */
+	public synchronized long getPeriod(int pid) {
+		return isSubscribed(pid) ? periods[pid] : Long.MAX_VALUE;
+	}
+	
+	/**
+	 * marks the start of a request cycle. The interval between the
+	 * cycles decides whether a PID can wait for the next one.
+	 * 
+	 * @param now the current time in ms
+	 */
+	public synchronized void onCycle(long now) {
+		if (lastCycleStart != 0) {
+			cycleInterval = now - lastCycleStart;
+		}
+		lastCycleStart = now;
+	}
+	
+	/**
+	 * A PID is due if waiting for the next cycle would exceed the
+	 * period of its most demanding subscriber.
+	 * 
+	 * @param pid the PID byte
+	 * @param now the current time in ms
+	 * @return true if the PID shall be requested in this cycle
+	 */
+	public synchronized boolean isDue(int pid, long now) {
+		if (!isSubscribed(pid)) {
+			return false;
+		}
+		
+		if (lastRequests[pid] == 0 || periods[pid] == 0) {
+			return true;
+		}
+		
+		return now - lastRequests[pid] + cycleInterval > periods[pid];
+	}
+	
+	/**
+	 * @param pid the PID byte
+	 * @param now the time of the request in ms
+	 */
+	public synchronized void onRequested(int pid, long now) {
+		lastRequests[pid] = now;
+	}
+	
+	/**
+	 * hands the result to all subscribers of its PID
+	 * 
+	 * @param result a finished command
+	 */
+	public void dispatch(AbstractCommand result) {
+		int pid = PIDUtil.toPIDByte(result.getPIDAsString());
+		if (pid < 0) {
+			return;
+		}
+		
+		Subscription[] current = subscriptions.get(pid);
+		if (current == null) {
+			return;
+		}
+		
+		for (Subscription s : current) {
+			try {
+				s.getListener().onResult(result);
+			}
+			catch (RuntimeException e) {
+				logger.warn("Subscriber of PID "+ toHex(pid) +" failed: "+e.getMessage(), e);
+			}
+		}
+	}
+	
+	static String toHex(int pid) {
+		return new String(new char[] {HEX_CHARS[(pid >> 4) & 0x0f], HEX_CHARS[pid & 0x0f]});
+	}
+	
+}
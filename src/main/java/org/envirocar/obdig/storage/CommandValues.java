@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.storage;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.NumberResultCommand;
+import org.envirocar.obdig.commands.PIDUtil;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.commands.numeric.O2LambdaProbe;
+import org.envirocar.obdig.commands.numeric.O2LambdaProbeCurrent;
+import org.envirocar.obdig.commands.numeric.O2LambdaProbeVoltage;
+import org.envirocar.obdig.commands.raw.FuelSystemStatus;
+import org.envirocar.obdig.storage.Measurement.PropertyKey;
+
+/**
+ * Maps command results to primitive values and {@link Measurement}
+ * properties. Every {@link PID} provides a value and optionally an
+ * auxiliary value (e.g. the equivalence ratio of a lambda probe).
+ */
+public class CommandValues {
+	
+	private static final PropertyKey[] VALUE_KEYS = new PropertyKey[PID.values().length];
+	private static final PropertyKey[] AUX_KEYS = new PropertyKey[PID.values().length];
+	
+	static {
+		VALUE_KEYS[PID.SPEED.ordinal()] = PropertyKey.SPEED;
+		VALUE_KEYS[PID.MAF.ordinal()] = PropertyKey.MAF;
+		VALUE_KEYS[PID.RPM.ordinal()] = PropertyKey.RPM;
+		VALUE_KEYS[PID.INTAKE_AIR_TEMP.ordinal()] = PropertyKey.INTAKE_TEMPERATURE;
+		VALUE_KEYS[PID.INTAKE_MAP.ordinal()] = PropertyKey.INTAKE_PRESSURE;
+		VALUE_KEYS[PID.TPS.ordinal()] = PropertyKey.THROTTLE_POSITON;
+		VALUE_KEYS[PID.CALCULATED_ENGINE_LOAD.ordinal()] = PropertyKey.ENGINE_LOAD;
+		VALUE_KEYS[PID.SHORT_TERM_FUEL_TRIM_BANK_1.ordinal()] = PropertyKey.SHORT_TERM_TRIM_1;
+		VALUE_KEYS[PID.LONG_TERM_FUEL_TRIM_BANK_1.ordinal()] = PropertyKey.LONG_TERM_TRIM_1;
+		VALUE_KEYS[PID.FUEL_SYSTEM_STATUS.ordinal()] = PropertyKey.FUEL_SYSTEM_STATUS_CODE;
+		AUX_KEYS[PID.FUEL_SYSTEM_STATUS.ordinal()] = PropertyKey.FUEL_SYSTEM_LOOP;
+		
+		for (PID pid : PID.values()) {
+			if (pid.name().startsWith("O2_LAMBDA_PROBE")) {
+				boolean voltage = pid.name().endsWith("VOLTAGE");
+				VALUE_KEYS[pid.ordinal()] = voltage ? PropertyKey.LAMBDA_VOLTAGE : PropertyKey.LAMBDA_CURRENT;
+				AUX_KEYS[pid.ordinal()] = voltage ? PropertyKey.LAMBDA_VOLTAGE_ER : PropertyKey.LAMBDA_CURRENT_ER;
+			}
+		}
+	}
+	
+	private CommandValues() {
+	}
+
+	/**
+	 * @param cmd a finished command
+	 * @return the PID of the command, or null if it is not a known PID
+	 */
+	public static PID toPID(AbstractCommand cmd) {
+		return PIDUtil.fromString(cmd.getPIDAsString());
+	}
+	
+	/**
+	 * @param cmd a finished command
+	 * @return the primary value of the command, NaN if not available
+	 */
+	public static double value(AbstractCommand cmd) {
+		if (cmd instanceof O2LambdaProbeVoltage) {
+			return ((O2LambdaProbeVoltage) cmd).getVoltage();
+		}
+		else if (cmd instanceof O2LambdaProbeCurrent) {
+			return ((O2LambdaProbeCurrent) cmd).getCurrent();
+		}
+		else if (cmd instanceof FuelSystemStatus) {
+			return ((FuelSystemStatus) cmd).getStatus();
+		}
+		else if (cmd instanceof NumberResultCommand) {
+			Number n = ((NumberResultCommand) cmd).getNumberResult();
+			return n == null ? Double.NaN : n.doubleValue();
+		}
+		return Double.NaN;
+	}
+	
+	/**
+	 * @param cmd a finished command
+	 * @return the auxiliary value of the command, NaN if not available
+	 */
+	public static double auxValue(AbstractCommand cmd) {
+		if (cmd instanceof O2LambdaProbe) {
+			return ((O2LambdaProbe) cmd).getEquivalenceRatio();
+		}
+		else if (cmd instanceof FuelSystemStatus) {
+			return ((FuelSystemStatus) cmd).isInClosedLoop() ? 1 : 0;
+		}
+		return Double.NaN;
+	}
+	
+	/**
+	 * @return the measurement property of the value of the PID, or null
+	 */
+	public static PropertyKey valueKey(PID pid) {
+		return VALUE_KEYS[pid.ordinal()];
+	}
+	
+	/**
+	 * @return the measurement property of the auxiliary value of the PID, or null
+	 */
+	public static PropertyKey auxKey(PID pid) {
+		return AUX_KEYS[pid.ordinal()];
+	}
+	
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.protocol.DataListener;
+import org.envirocar.obdig.storage.Measurement.PropertyKey;
+
+/**
+ * Aligns OBD samples to points in time (e.g. the timestamps of GPS fixes
+ * or a fixed grid). For every {@link PID}, the latest samples are kept
+ * in a ring buffer of a fixed size. A {@link Measurement} for a given time
+ * is interpolated from the samples surrounding it, so the effort per
+ * measurement is bounded by the window size and independent of the
+ * session length.
+ * 
+ * Auxiliary values (e.g. the fuel system loop) and discrete PIDs are
+ * always held and never interpolated. If several PIDs map to the same
+ * property (e.g. the lambda probes), the one with the newest sample wins.
+ */
+public class MeasurementAssembler implements DataListener {
+	
+	public enum Interpolation {
+		
+		/**
+		 * linear interpolation between the surrounding samples
+		 */
+		LINEAR,
+		
+		/**
+		 * use the latest sample before the requested time
+		 */
+		SAMPLE_AND_HOLD
+	}
+	
+	private static final PID[] PIDS = PID.values();
+	
+	private final int window;
+	private final long maxGap;
+	private final Interpolation interpolation;
+	
+	private final SampleRing[] samples = new SampleRing[PIDS.length];
+	private final SampleRing locations;
+	private final long[] propertyTimes = new long[PropertyKey.values().length];
+	
+	/**
+	 * @param window the number of samples kept per PID
+	 * @param maxGap the maximum time (ms) between a sample and the requested time
+	 * @param interpolation the interpolation method
+	 */
+	public MeasurementAssembler(int window, long maxGap, Interpolation interpolation) {
+		if (window < 2) throw new IllegalArgumentException("window must be at least 2!");
+		
+		this.window = window;
+		this.maxGap = maxGap;
+		this.interpolation = interpolation == null ? Interpolation.LINEAR : interpolation;
+		
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = new SampleRing(window);
+		}
+		this.locations = new SampleRing(window);
+	}
+
+	@Override
+	public void receiveUpdate(AbstractCommand cmd) {
+		if (cmd.getCommandState() != CommonCommandState.FINISHED) {
+			return;
+		}
+		
+		PID pid = CommandValues.toPID(cmd);
+		if (pid == null) {
+			return;
+		}
+		
+		addSample(pid, cmd.getResultTime(), CommandValues.value(cmd), CommandValues.auxValue(cmd));
+	}
+	
+	public synchronized void addSample(PID pid, long time, double value, double auxValue) {
+		samples[pid.ordinal()].add(time, value, auxValue);
+	}
+	
+	/**
+	 * Add a position. Required for {@link #assembleGrid(long, long, long)}.
+	 */
+	public synchronized void addLocation(long time, double latitude, double longitude) {
+		locations.add(time, latitude, longitude);
+	}
+	
+	/**
+	 * @param time the target time (e.g. of a GPS fix)
+	 * @param latitude the latitude
+	 * @param longitude the longitude
+	 * @return the measurement holding all values available at the given time
+	 */
+	public synchronized Measurement assemble(long time, double latitude, double longitude) {
+		Measurement m = new Measurement(latitude, longitude);
+		m.setTime(time);
+		Arrays.fill(propertyTimes, Long.MIN_VALUE);
+		
+		for (int i = 0; i < PIDS.length; i++) {
+			SampleRing ring = samples[i];
+			int before = ring.indexAtOrBefore(time);
+			if (before < 0 || time - ring.times[before] > maxGap) {
+				continue;
+			}
+			
+			double v = ring.values[before];
+			if (interpolation == Interpolation.LINEAR && !isDiscrete(PIDS[i])) {
+				v = ring.interpolate(before, time, v);
+			}
+			fillProperty(m, CommandValues.valueKey(PIDS[i]), v, ring.times[before]);
+			fillProperty(m, CommandValues.auxKey(PIDS[i]), ring.auxValues[before], ring.times[before]);
+		}
+		
+		return m;
+	}
+	
+	private void fillProperty(Measurement m, PropertyKey key, double value, long sampleTime) {
+		if (key == null || Double.isNaN(value) || propertyTimes[key.ordinal()] > sampleTime) {
+			return;
+		}
+		propertyTimes[key.ordinal()] = sampleTime;
+		m.setProperty(key, value);
+	}
+	
+	/**
+	 * Create measurements on a fixed time grid. Positions are interpolated
+	 * linearly from the locations added via {@link #addLocation(long, double, double)}.
+	 * Grid points without a position are skipped.
+	 * 
+	 * @param start the first grid point
+	 * @param end the last grid point (inclusive)
+	 * @param step the grid spacing in ms
+	 * @return the measurements
+	 */
+	public synchronized List<Measurement> assembleGrid(long start, long end, long step) {
+		if (step <= 0) throw new IllegalArgumentException("step must be positive!");
+		
+		List<Measurement> result = new ArrayList<Measurement>();
+		for (long t = start; t <= end; t += step) {
+			int before = locations.indexAtOrBefore(t);
+			if (before < 0 || t - locations.times[before] > maxGap) {
+				continue;
+			}
+			
+			double lat = locations.interpolate(before, t, locations.values[before]);
+			double lon = locations.interpolateAux(before, t, locations.auxValues[before]);
+			result.add(assemble(t, lat, lon));
+		}
+		return result;
+	}
+
+	private boolean isDiscrete(PID pid) {
+		return pid == PID.FUEL_SYSTEM_STATUS;
+	}
+	
+	/**
+	 * @return the number of samples kept per PID
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+	@Override
+	public void onConnected(String deviceName) {
+	}
+	
+	/**
+	 * a fixed-size ring of samples, ordered by insertion (= time)
+	 */
+	private static class SampleRing {
+		
+		private final long[] times;
+		private final double[] values;
+		private final double[] auxValues;
+		private int next;
+		private int size;
+		
+		SampleRing(int capacity) {
+			times = new long[capacity];
+			values = new double[capacity];
+			auxValues = new double[capacity];
+		}
+		
+		void add(long time, double value, double auxValue) {
+			times[next] = time;
+			values[next] = value;
+			auxValues[next] = auxValue;
+			next = (next + 1) % times.length;
+			if (size < times.length) size++;
+		}
+		
+		/**
+		 * @return the array index of the newest sample at or before the time, -1 if none
+		 */
+		int indexAtOrBefore(long time) {
+			for (int n = 1; n <= size; n++) {
+				int i = index(n);
+				if (times[i] <= time) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * @return the array index of the n-th newest sample (1 = newest)
+		 */
+		private int index(int n) {
+			return (next - n + times.length) % times.length;
+		}
+		
+		double interpolate(int before, long time, double fallback) {
+			return interpolate(values, before, time, fallback);
+		}
+		
+		double interpolateAux(int before, long time, double fallback) {
+			return interpolate(auxValues, before, time, fallback);
+		}
+		
+		private double interpolate(double[] v, int before, long time, double fallback) {
+			int after = (before + 1) % times.length;
+			if (after == next || times[before] == time || times[after] <= times[before]) {
+				/*
+				 * no newer sample: hold the latest value
+				 */
+				return fallback;
+			}
+			
+			double fraction = (time - times[before]) / (double) (times[after] - times[before]);
+			return v[before] + (v[after] - v[before]) * fraction;
+		}
+	}
+
+}
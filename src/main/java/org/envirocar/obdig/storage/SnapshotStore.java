@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.protocol.DataListener;
+import org.envirocar.obdig.storage.Measurement.PropertyKey;
+
+/**
+ * Holds the latest value and its timestamp for every {@link PID} of
+ * a session. The store is updated by a single writer (the thread calling
+ * {@link #receiveUpdate(AbstractCommand)}, usually the looper) and read
+ * without locks by any number of readers: a sequence counter is odd while
+ * an update is in progress, so a reader simply retries its copy if the
+ * counter changed in between.
+ */
+public class SnapshotStore implements DataListener {
+	
+	private static final int PID_COUNT = PID.values().length;
+	private static final PID[] PIDS = PID.values();
+	
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLongArray values = new AtomicLongArray(PID_COUNT);
+	private final AtomicLongArray auxValues = new AtomicLongArray(PID_COUNT);
+	private final AtomicLongArray times = new AtomicLongArray(PID_COUNT);
+
+	public SnapshotStore() {
+		long nan = Double.doubleToRawLongBits(Double.NaN);
+		for (int i = 0; i < PID_COUNT; i++) {
+			values.set(i, nan);
+			auxValues.set(i, nan);
+		}
+	}
+	
+	@Override
+	public void receiveUpdate(AbstractCommand cmd) {
+		if (cmd.getCommandState() != CommonCommandState.FINISHED) {
+			return;
+		}
+		
+		PID pid = CommandValues.toPID(cmd);
+		if (pid == null) {
+			return;
+		}
+		
+		update(pid, CommandValues.value(cmd), CommandValues.auxValue(cmd), cmd.getResultTime());
+	}
+
+	/**
+	 * store a new value. Must only be called by the single writer thread.
+	 */
+	public void update(PID pid, double value, double auxValue, long time) {
+		int i = pid.ordinal();
+		
+		sequence.incrementAndGet();
+		values.set(i, Double.doubleToRawLongBits(value));
+		auxValues.set(i, Double.doubleToRawLongBits(auxValue));
+		times.set(i, time);
+		sequence.incrementAndGet();
+	}
+	
+	/**
+	 * @return a consistent copy of the current values
+	 */
+	public Snapshot snapshot() {
+		return snapshot(new Snapshot());
+	}
+	
+	/**
+	 * @param target the snapshot to copy the current values into
+	 * @return the target
+	 */
+	public Snapshot snapshot(Snapshot target) {
+		long before;
+		do {
+			before = sequence.get();
+			if ((before & 1) != 0) {
+				Thread.yield();
+				continue;
+			}
+			
+			for (int i = 0; i < PID_COUNT; i++) {
+				target.values[i] = Double.longBitsToDouble(values.get(i));
+				target.auxValues[i] = Double.longBitsToDouble(auxValues.get(i));
+				target.times[i] = times.get(i);
+			}
+		} while ((before & 1) != 0 || before != sequence.get());
+		
+		return target;
+	}
+	
+	/**
+	 * @param latitude the latitude of the GPS fix
+	 * @param longitude the longitude of the GPS fix
+	 * @param maxAge the maximum age (ms) of a value, relative to the current time
+	 * @return a new measurement holding the current values
+	 */
+	public Measurement createMeasurement(double latitude, double longitude, long maxAge) {
+		Measurement m = new Measurement(latitude, longitude);
+		snapshot().fillMeasurement(m, m.getTime() - maxAge);
+		return m;
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+	@Override
+	public void onConnected(String deviceName) {
+	}
+	
+	/**
+	 * A copy of the store at one point in time.
+	 */
+	public static class Snapshot {
+		
+		private final double[] values = new double[PID_COUNT];
+		private final double[] auxValues = new double[PID_COUNT];
+		private final long[] times = new long[PID_COUNT];
+		private final long[] propertyTimes = new long[PropertyKey.values().length];
+		
+		public double getValue(PID pid) {
+			return values[pid.ordinal()];
+		}
+		
+		public double getAuxValue(PID pid) {
+			return auxValues[pid.ordinal()];
+		}
+		
+		/**
+		 * @return the time of the value, 0 if not yet received
+		 */
+		public long getTime(PID pid) {
+			return times[pid.ordinal()];
+		}
+		
+		/**
+		 * Set the properties of the measurement. If several PIDs
+		 * map to the same property (e.g. lambda probes), the most
+		 * recent value is used.
+		 * 
+		 * @param m the target measurement
+		 * @param minTime values older than this time are skipped
+		 */
+		public void fillMeasurement(Measurement m, long minTime) {
+			Arrays.fill(propertyTimes, Long.MIN_VALUE);
+			
+			for (int i = 0; i < PID_COUNT; i++) {
+				if (times[i] == 0 || times[i] < minTime) {
+					continue;
+				}
+				
+				fillProperty(m, CommandValues.valueKey(PIDS[i]), values[i], times[i]);
+				fillProperty(m, CommandValues.auxKey(PIDS[i]), auxValues[i], times[i]);
+			}
+		}
+
+		private void fillProperty(Measurement m, PropertyKey key, double value, long time) {
+			if (key == null || Double.isNaN(value) || propertyTimes[key.ordinal()] > time) {
+				return;
+			}
+			propertyTimes[key.ordinal()] = time;
+			m.setProperty(key, value);
+		}
+		
+	}
+
+}
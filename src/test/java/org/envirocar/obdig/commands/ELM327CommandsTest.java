@@ -26,6 +26,8 @@
  */
 package org.envirocar.obdig.commands;
 
+import org.envirocar.obdig.commands.elm327.AdaptiveTiming;
+import org.envirocar.obdig.commands.elm327.CANAutoFormatting;
 import org.envirocar.obdig.commands.elm327.Defaults;
 import org.envirocar.obdig.commands.elm327.EchoOff;
 import org.envirocar.obdig.commands.elm327.HeadersOff;
@@ -95,5 +97,17 @@ public class ELM327CommandsTest {
 		Assert.assertTrue(new String(b).equals("AT S0"));
 	}
 	
+	@Test
+	public void testAdaptiveTiming() {
+		AdaptiveTiming s = new AdaptiveTiming(2);
+		byte[] b = s.getOutgoingBytes();
+		Assert.assertTrue(new String(b).equals("AT AT2"));
+	}
 	
+	@Test
+	public void testCANAutoFormatting() {
+		Assert.assertTrue(new String(new CANAutoFormatting(true).getOutgoingBytes()).equals("AT CAF1"));
+		Assert.assertTrue(new String(new CANAutoFormatting(false).getOutgoingBytes()).equals("AT CAF0"));
+	}
+
 }
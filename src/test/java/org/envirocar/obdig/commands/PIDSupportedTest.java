@@ -54,6 +54,26 @@ public class PIDSupportedTest {
 		assertResult(result);
 	}
 	
+	@Test
+	public void testSubsequentGroup() {
+		PIDSupported cmd = new PIDSupported("20");
+		
+		Assert.assertTrue(new String(cmd.getOutgoingBytes()).equals("01 20"));
+		
+		/*
+		 * PIDs 24 and 34 (O2 sensor 1 voltage and current)
+		 */
+		cmd.parseRawData("SEARCHING...\r412010001000".getBytes());
+		Assert.assertTrue(cmd.getCommandState() == CommonCommandState.FINISHED);
+		
+		Set<PID> result = cmd.getSupportedPIDs();
+		Assert.assertTrue(result.size() == 2);
+		Assert.assertTrue(result.contains(PID.O2_LAMBDA_PROBE_1_VOLTAGE));
+		Assert.assertTrue(result.contains(PID.O2_LAMBDA_PROBE_1_CURRENT));
+		Assert.assertTrue(cmd.isSupported(0x24));
+		Assert.assertTrue(!cmd.isSupported(0x04));
+	}
+	
 	@Test
 	public void testPIDSupportedFail() {
 		PIDSupported cmd = new PIDSupported();
@@ -27,6 +27,7 @@
 package org.envirocar.obdig.commands;
 
 
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
 import org.envirocar.obdig.commands.PIDUtil.PID;
 import org.envirocar.obdig.commands.numeric.EngineLoad;
 import org.envirocar.obdig.commands.numeric.IntakePressure;
@@ -82,4 +83,17 @@ public class ResponseByteTest {
 		TPS s = new TPS();
 		Assert.assertTrue(s.getPIDAsString().equals(PID.TPS.toString()));
 	}
+	
+	@Test
+	public void testOverload() {
+		Speed s = new Speed();
+		s.parseRawData("BUFFERFULL".getBytes());
+		Assert.assertTrue(s.getCommandState() == CommonCommandState.QUEUE_ERROR);
+		
+		s.parseRawData("STOPPED".getBytes());
+		Assert.assertTrue(s.getCommandState() == CommonCommandState.QUEUE_ERROR);
+		
+		s.parseRawData("SEARCHING...410D32".getBytes());
+		Assert.assertTrue(s.getCommandState() == CommonCommandState.SEARCHING);
+	}
 }
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.drivedeck;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.numeric.IntakePressure;
+import org.envirocar.obdig.commands.numeric.MAF;
+import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.envirocar.obdig.protocol.adapter.ResponseParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryDecodingTest extends CommandTest {
+	
+	@Test
+	public void testMAF() {
+		AbstractCommand resp = parse(new byte[] {'B', '4', '2', '<', 0x01, 0x2C});
+		
+		Assert.assertTrue(resp instanceof MAF);
+		Assert.assertTrue(((MAF) resp).getNumberResult().floatValue() == 3.0f);
+		
+		/*
+		 * same result as the HEX encoded response
+		 */
+		MAF hex = new MAF();
+		hex.parseRawData("4110012C".getBytes());
+		Assert.assertTrue("4110012C".equals(new String(resp.getRawData())));
+		Assert.assertTrue(hex.getNumberResult().equals(((MAF) resp).getNumberResult()));
+	}
+	
+	@Test
+	public void testRPM() {
+		AbstractCommand resp = parse(new byte[] {'B', '5', '1', '<', 0x0B, (byte) 0xB8});
+		
+		Assert.assertTrue(resp instanceof RPM);
+		Assert.assertTrue(resp.getCommandState() == CommonCommandState.FINISHED);
+		Assert.assertTrue(((RPM) resp).getNumberResult().intValue() == 750);
+	}
+	
+	@Test
+	public void testSingleByteValues() {
+		AbstractCommand resp = parse(new byte[] {'B', '4', '1', '<', 0x32, '<'});
+		Assert.assertTrue(resp instanceof Speed);
+		Assert.assertTrue(((Speed) resp).getNumberResult().intValue() == 50);
+		
+		resp = parse(new byte[] {'B', '4', '9', '<', 0x64});
+		Assert.assertTrue(resp instanceof IntakePressure);
+		Assert.assertTrue(((IntakePressure) resp).getNumberResult().intValue() == 100);
+	}
+	
+	@Test
+	public void testUnknownCode() {
+		Assert.assertNull(parse(new byte[] {'B', '6', '0', '<', 0x01, 0x02}));
+		Assert.assertNull(parse(new byte[] {'B', 'x', 'y', '<', 0x01, 0x02}));
+	}
+
+	private AbstractCommand parse(byte[] bytes) {
+		ResponseParser parser = getResponseParser();
+		return parser.processResponse(bytes, 0, bytes.length);
+	}
+
+}
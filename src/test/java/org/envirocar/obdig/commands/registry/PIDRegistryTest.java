@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.commands.registry;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.PIDUtil;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.commands.numeric.O2LambdaProbeCurrent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PIDRegistryTest {
+
+	@Test
+	public void testFormulas() {
+		int[] data = new int[] {0x41, 0x0C, 0x1A, 0xF8};
+		Assert.assertTrue(Formula.compile("(256*A+B)/4").evaluate(data, 2) == 1726.0);
+		Assert.assertTrue(Formula.compile("A - 40").evaluate(data, 2) == -14.0);
+		Assert.assertTrue(Formula.compile("-(2*3)+B").evaluate(data, 2) == 242.0);
+		Assert.assertTrue(Formula.compile("s8(B)").evaluate(data, 2) == -8.0);
+		Assert.assertTrue(Formula.compile("(256*C+D)/1000").getRequiredByteCount() == 4);
+		
+		try {
+			Formula.compile("(A+");
+			Assert.fail("Malformed formula accepted");
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+	
+	@Test
+	public void testBuiltInDefinitions() {
+		PIDRegistry registry = PIDRegistry.getDefault();
+		
+		PIDDefinition oilTemperature = registry.get(0x5C);
+		Assert.assertTrue(oilTemperature.isDecodable());
+		Assert.assertTrue("degC".equals(oilTemperature.getUnit()));
+		Assert.assertTrue(!registry.get(0x13).isDecodable());
+		Assert.assertTrue(registry.createCommand(0x13) == null);
+		
+		RegisteredPIDCommand cmd = registry.createCommand(0x5C);
+		Assert.assertTrue("5C".equals(cmd.getPIDAsString()));
+		cmd.parseRawData("415C7B".getBytes());
+		Assert.assertTrue(cmd.getCommandState() == CommonCommandState.FINISHED);
+		Assert.assertTrue(cmd.getValue() == 83.0);
+		
+		cmd = registry.createCommand(0x42);
+		cmd.parseRawData("4142".getBytes());
+		Assert.assertTrue(cmd.getCommandState() == CommonCommandState.EXECUTION_ERROR);
+		Assert.assertTrue(cmd.getNumberResult() == null);
+	}
+	
+	@Test
+	public void testCustomDefinitions() throws IOException {
+		PIDRegistry registry = new PIDRegistry();
+		registry.load(new StringReader("# vendor specific\nE1;Boost;1;A-100;kPa;-100;50\n"));
+		
+		RegisteredPIDCommand cmd = registry.createCommand(0xE1);
+		cmd.parseRawData("41E1FF".getBytes());
+		Assert.assertTrue(cmd.getCommandState() == CommonCommandState.EXECUTION_ERROR);
+		
+		cmd = registry.createCommand(0xE1);
+		cmd.parseRawData("41E178".getBytes());
+		Assert.assertTrue(cmd.getValue() == 20.0);
+	}
+	
+	@Test
+	public void testPIDUtil() {
+		Assert.assertTrue(PIDUtil.fromString("0c") == PID.RPM);
+		Assert.assertTrue(PIDUtil.fromString("FF") == null);
+		Assert.assertTrue(PIDUtil.fromString("X") == null);
+		
+		AbstractCommand current = PIDUtil.instantiateCommand(PID.O2_LAMBDA_PROBE_3_CURRENT);
+		Assert.assertTrue(current instanceof O2LambdaProbeCurrent);
+		Assert.assertTrue(PIDUtil.instantiateCommand("A6") instanceof RegisteredPIDCommand);
+	}
+	
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.instrumentation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.raw.PIDSupported;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+import org.envirocar.obdig.protocol.adapter.sequential.ELM327Connector;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InstrumentationProviderTest {
+	
+	@After
+	public void reset() {
+		InstrumentationProvider.set(null);
+	}
+	
+	@Test
+	public void testNoOpByDefault() {
+		InstrumentationProvider.set(null);
+		Assert.assertTrue(!InstrumentationProvider.get().isEnabled());
+	}
+
+	@Test
+	public void testCommandRoundTrips() throws Exception {
+		RecordingInstrumentation recording = new RecordingInstrumentation();
+		InstrumentationProvider.set(recording);
+		
+		ELM327Connector conn = new ELM327Connector();
+		
+		StringBuilder responses = new StringBuilder();
+		responses.append("ATZ\r\r\rELM327 v1.5\r\r>");
+		responses.append("ATE0\rOK\r\r>");
+		for (int i = 2; i < conn.getInitializationCommands().size(); i++) {
+			responses.append("OK\r\r>");
+		}
+		responses.append("41 00 BE 1F A8 13\r\r>");
+		
+		conn.provideStreamObjects(new ByteArrayInputStream(responses.toString().getBytes()),
+				new ByteArrayOutputStream());
+		conn.executeInitializationCommands();
+		conn.shutdown();
+		
+		Assert.assertTrue(recording.commands.size() >= conn.getInitializationCommands().size());
+		Assert.assertTrue(recording.commands.get(recording.commands.size() - 1) instanceof PIDSupported);
+		for (Integer bytes : recording.byteCounts) {
+			Assert.assertTrue(bytes > 0);
+		}
+	}
+	
+	private static class RecordingInstrumentation implements Instrumentation {
+		
+		private List<AbstractCommand> commands = new ArrayList<AbstractCommand>();
+		private List<Integer> byteCounts = new ArrayList<Integer>();
+
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+
+		@Override
+		public void onSessionStarted(SessionState session, String deviceName) {
+		}
+
+		@Override
+		public void onSessionStopped(SessionState session) {
+		}
+
+		@Override
+		public void onCommandRoundTrip(SessionState session, AbstractCommand cmd, int byteCount, long latencyNanos) {
+			commands.add(cmd);
+			byteCounts.add(byteCount);
+		}
+
+		@Override
+		public void onSamplesDelivered(SessionState session, int count) {
+		}
+
+		@Override
+		public void onRecovery(SessionState session, String level, boolean recovered) {
+		}
+
+		@Override
+		public void onPhaseSwitch(SessionState session, String phase, String reason) {
+		}
+
+		@Override
+		public void onAdapterSelection(SessionState session, String connector, String deviceName, int attempt) {
+		}
+
+		@Override
+		public void onResponseDropped(SessionState session, String reason, int length) {
+		}
+		
+	}
+	
+}
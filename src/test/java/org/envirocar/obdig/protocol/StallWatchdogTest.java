@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StallWatchdogTest {
+
+	@Test
+	public void testDeadline() {
+		StallWatchdog watchdog = new StallWatchdog();
+		final AtomicInteger stalls = new AtomicInteger();
+		StallWatchdog.Watch watch = watchdog.register(new StallListener() {
+			
+			@Override
+			public void onStall(StallWatchdog.Watch w, long tag, long overdueMillis) {
+				stalls.incrementAndGet();
+			}
+		});
+		
+		try {
+			long now = System.nanoTime();
+			watchdog.check(now);
+			Assert.assertTrue(stalls.get() == 0);
+			
+			watch.arm(10000);
+			watchdog.check(now + TimeUnit.MILLISECONDS.toNanos(5000));
+			Assert.assertTrue(stalls.get() == 0);
+			
+			watchdog.check(now + TimeUnit.MILLISECONDS.toNanos(11000));
+			Assert.assertTrue(stalls.get() == 1);
+			Assert.assertTrue(!watch.isArmed());
+			
+			/*
+			 * reported once
+			 */
+			watchdog.check(now + TimeUnit.MILLISECONDS.toNanos(12000));
+			Assert.assertTrue(stalls.get() == 1);
+			
+			watch.arm(10000);
+			watch.disarm();
+			watchdog.check(now + TimeUnit.MILLISECONDS.toNanos(30000));
+			Assert.assertTrue(stalls.get() == 1);
+			Assert.assertTrue(watch.getStallCount() == 1);
+		}
+		finally {
+			watch.cancel();
+		}
+		Assert.assertTrue(watchdog.getWatchCount() == 0);
+	}
+	
+	@Test
+	public void testSharedTimer() throws InterruptedException {
+		StallWatchdog watchdog = new StallWatchdog();
+		final CountDownLatch latch = new CountDownLatch(2);
+		StallListener listener = new StallListener() {
+			
+			@Override
+			public void onStall(StallWatchdog.Watch w, long tag, long overdueMillis) {
+				latch.countDown();
+			}
+		};
+		
+		StallWatchdog.Watch first = watchdog.register(listener);
+		StallWatchdog.Watch second = watchdog.register(listener);
+		Assert.assertTrue(watchdog.getWatchCount() == 2);
+		
+		first.arm(10);
+		second.arm(20);
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		
+		first.cancel();
+		second.cancel();
+		Assert.assertTrue(watchdog.getWatchCount() == 0);
+	}
+	
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.CommandPriority;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CommandQueueTest {
+
+	@Test
+	public void testPriorities() throws Exception {
+		CommandQueue queue = new CommandQueue();
+		CommandFuture low = queue.submit(new Speed(), CommandPriority.LOW);
+		CommandFuture high = queue.submit(new RPM(), CommandPriority.HIGH);
+		
+		Assert.assertTrue(queue.poll(CommandPriority.HIGH) == high);
+		Assert.assertTrue(queue.poll(CommandPriority.HIGH) == null);
+		
+		/*
+		 * a running command cannot be cancelled
+		 */
+		Assert.assertTrue(!high.cancel(false));
+		high.complete();
+		Assert.assertTrue(high.get(1, TimeUnit.SECONDS) == high.getCommand());
+		
+		Assert.assertTrue(low.cancel(false));
+		Assert.assertTrue(queue.poll(CommandPriority.LOW) == null);
+		Assert.assertTrue(low.isCancelled() && low.isDone());
+	}
+	
+	@Test
+	public void testCancelWhileStarting() throws Exception {
+		for (int i = 0; i < 2000; i++) {
+			final CommandFuture future = new CommandFuture(new Speed());
+			final boolean[] started = new boolean[1];
+			
+			Thread executor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					started[0] = future.start();
+					if (started[0]) {
+						future.complete();
+					}
+				}
+			});
+			executor.start();
+			boolean cancelled = future.cancel(false);
+			executor.join();
+			
+			/*
+			 * either the cancel or the execution wins, never both
+			 */
+			Assert.assertTrue(cancelled != started[0]);
+			Assert.assertTrue(future.isCancelled() == cancelled);
+			if (started[0]) {
+				Assert.assertTrue(future.get(1, TimeUnit.SECONDS) == future.getCommand());
+			}
+		}
+	}
+	
+	@Test
+	public void testRejectAll() throws Exception {
+		CommandQueue queue = new CommandQueue();
+		CommandFuture future = queue.submit(new Speed(), CommandPriority.LOW);
+		
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			Assert.fail("Expected a timeout");
+		} catch (TimeoutException e) {
+		}
+		
+		queue.rejectAll(new IOException("closed"));
+		Assert.assertTrue(queue.size() == 0);
+		
+		try {
+			future.get();
+			Assert.fail("Expected a failure");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+	
+	@Test(expected = RejectedExecutionException.class)
+	public void testCapacity() {
+		CommandQueue queue = new CommandQueue();
+		for (int i = 0; i <= CommandQueue.MAX_SIZE; i++) {
+			queue.submit(new Speed(), CommandPriority.HIGH);
+		}
+	}
+	
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.Map;
+
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ECUResponseDemultiplexerTest {
+
+	@Test
+	public void testMultipleECUs() {
+		Map<String, byte[]> result = ECUResponseDemultiplexer.demultiplex(
+				"7E803410D32AAAAAAAA\r7E903410D33AAAAAAAA\r".getBytes());
+		
+		Assert.assertTrue(result.size() == 2);
+		Assert.assertTrue("410D32".equals(new String(result.get("7E8"))));
+		Assert.assertTrue("410D33".equals(new String(result.get("7E9"))));
+		
+		Speed speed = new Speed();
+		speed.parseRawData(result.get("7E8"));
+		Assert.assertTrue(speed.getCommandState() == CommonCommandState.FINISHED);
+		Assert.assertTrue(speed.getNumberResult().intValue() == 0x32);
+	}
+	
+	@Test
+	public void testMultiFrame() {
+		Map<String, byte[]> result = ECUResponseDemultiplexer.demultiplex(
+				"7E81014490201314433\r7E8214734355A32305A\r7E82235463131323334\r".getBytes());
+		
+		Assert.assertTrue(result.size() == 1);
+		Assert.assertTrue(new String(result.get("7E8")).length() == 0x14 * 2);
+		Assert.assertTrue(new String(result.get("7E8")).startsWith("4902013144"));
+	}
+	
+	@Test
+	public void test29BitAndLegacyFrames() {
+		Map<String, byte[]> result = ECUResponseDemultiplexer.demultiplex(
+				"18DAF11003410D32\r".getBytes());
+		Assert.assertTrue("410D32".equals(new String(result.get("18DAF110"))));
+		
+		result = ECUResponseDemultiplexer.demultiplex("486B10410D32AB\r".getBytes());
+		Assert.assertTrue("410D32".equals(new String(result.get("10"))));
+	}
+	
+	@Test
+	public void testNoFrames() {
+		Assert.assertNull(ECUResponseDemultiplexer.demultiplex("NODATA\r".getBytes()));
+		Assert.assertNull(ECUResponseDemultiplexer.demultiplex("SEARCHING...\r".getBytes()));
+	}
+	
+	@Test
+	public void testRequestHeader() {
+		Assert.assertTrue("7E0".equals(ECUResponseDemultiplexer.requestHeaderFor("7E8")));
+		Assert.assertTrue("7E1".equals(ECUResponseDemultiplexer.requestHeaderFor("7E9")));
+		Assert.assertNull(ECUResponseDemultiplexer.requestHeaderFor("18DAF110"));
+		Assert.assertNull(ECUResponseDemultiplexer.requestHeaderFor("10"));
+	}
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.envirocar.obdig.protocol.adapter.EngineStateTracker.EngineState;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EngineStateTrackerTest {
+
+	@Test
+	public void testIdleRPM() {
+		EngineStateTracker tracker = new EngineStateTracker();
+		tracker.onCycle(cycle("410C0FA0"), 0);
+		Assert.assertTrue(tracker.getState() == EngineState.RUNNING);
+		
+		tracker.onCycle(cycle("410C0000"), 1000);
+		tracker.onCycle(cycle("410C0000"), 1000 + EngineStateTracker.ENGINE_OFF_DELAY - 1);
+		Assert.assertTrue(!tracker.isEngineOff());
+		
+		tracker.onCycle(cycle("410C0000"), 1000 + EngineStateTracker.ENGINE_OFF_DELAY);
+		Assert.assertTrue(tracker.isEngineOff());
+		
+		/*
+		 * resume at once
+		 */
+		tracker.onCycle(cycle("410C0FA0"), 30000);
+		Assert.assertTrue(tracker.getState() == EngineState.RUNNING);
+	}
+	
+	@Test
+	public void testMovingWithoutRPM() {
+		EngineStateTracker tracker = new EngineStateTracker();
+		
+		/*
+		 * a hybrid driving electrically, or a start-stop car
+		 */
+		for (long t = 0; t <= 2 * EngineStateTracker.ENGINE_OFF_DELAY; t += 1000) {
+			List<AbstractCommand> cycle = cycle("410C0000");
+			cycle.addAll(cycle("410D32"));
+			tracker.onCycle(cycle, t);
+		}
+		Assert.assertTrue(tracker.getState() == EngineState.RUNNING);
+		
+		/*
+		 * parked
+		 */
+		for (long t = 0; t <= EngineStateTracker.ENGINE_OFF_DELAY; t += 1000) {
+			List<AbstractCommand> cycle = cycle("410C0000");
+			cycle.addAll(cycle("410D00"));
+			tracker.onCycle(cycle, 100000 + t);
+		}
+		Assert.assertTrue(tracker.isEngineOff());
+		
+		List<AbstractCommand> probe = cycle("410C0000");
+		probe.addAll(cycle("410D05"));
+		tracker.onCycle(probe, 200000);
+		Assert.assertTrue(tracker.getState() == EngineState.RUNNING);
+	}
+	
+	@Test
+	public void testNoData() {
+		EngineStateTracker tracker = new EngineStateTracker();
+		tracker.onCycle(cycle("NODATA"), 1000);
+		tracker.onCycle(cycle("410D32"), 2000);
+		tracker.onCycle(cycle("NODATA"), 3000);
+		tracker.onCycle(cycle("NODATA"), 2000 + EngineStateTracker.ENGINE_OFF_DELAY);
+		Assert.assertTrue(!tracker.isEngineOff());
+		
+		tracker.onCycle(cycle("NODATA"), 3000 + EngineStateTracker.ENGINE_OFF_DELAY);
+		Assert.assertTrue(tracker.isEngineOff());
+		Assert.assertTrue(tracker.getLastActivity() == 3000 + EngineStateTracker.ENGINE_OFF_DELAY);
+	}
+	
+	@Test
+	public void testKeepAlive() {
+		EngineStateTracker tracker = new EngineStateTracker();
+		tracker.onEngineEvent(false, 1000);
+		Assert.assertTrue(tracker.isEngineOff());
+		
+		Assert.assertTrue(!tracker.onKeepAliveDue(1000 + EngineStateTracker.KEEP_ALIVE_PERIOD - 1));
+		Assert.assertTrue(tracker.onKeepAliveDue(1000 + EngineStateTracker.KEEP_ALIVE_PERIOD));
+		Assert.assertTrue(!tracker.onKeepAliveDue(1000 + EngineStateTracker.KEEP_ALIVE_PERIOD));
+	}
+	
+	@Test
+	public void testExplicitEvents() {
+		EngineStateTracker tracker = new EngineStateTracker();
+		tracker.onEngineEvent(false, 1000);
+		
+		/*
+		 * the adapter reports the state, responses are activity only
+		 */
+		tracker.onCycle(cycle("410C0FA0"), 2000);
+		Assert.assertTrue(tracker.isEngineOff());
+		Assert.assertTrue(tracker.getLastActivity() == 2000);
+		
+		tracker.onEngineEvent(true, 3000);
+		Assert.assertTrue(tracker.getState() == EngineState.RUNNING);
+	}
+	
+	private List<AbstractCommand> cycle(String response) {
+		List<AbstractCommand> result = new ArrayList<AbstractCommand>();
+		AbstractCommand cmd = response.startsWith("410D") ? new Speed() : new RPM();
+		cmd.parseRawData(response.getBytes());
+		result.add(cmd);
+		return result;
+	}
+	
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameTraceTest {
+
+	@Test
+	public void testRingBuffer() {
+		FrameTrace trace = new FrameTrace(3);
+		
+		trace.transmit("01 0D".getBytes(), 0, 5);
+		trace.receive("410D32\r".getBytes(), 0, 7);
+		trace.event(FrameTrace.Event.COMMAND_ERROR, "0C");
+		trace.transmit("01 0C".getBytes(), 0, 5);
+		
+		String dump = trace.dump();
+		Assert.assertTrue(trace.getCount() == 4);
+		Assert.assertTrue(dump, dump.startsWith("Frame trace (last 3 of 4 entries):"));
+		Assert.assertTrue(dump, !dump.contains("01 0D"));
+		Assert.assertTrue(dump, dump.contains("RX \"410D32\\r\""));
+		Assert.assertTrue(dump, dump.contains("COMMAND_ERROR \"0C\""));
+		Assert.assertTrue(dump, dump.indexOf("COMMAND_ERROR") < dump.indexOf("TX \"01 0C\""));
+	}
+	
+	@Test
+	public void testTruncationAndDisabled() {
+		FrameTrace trace = new FrameTrace(2);
+		byte[] frame = new byte[FrameTrace.MAX_FRAME_LENGTH * 2];
+		trace.receive(frame, 0, frame.length);
+		Assert.assertTrue(trace.dump().contains("\\x00"));
+		
+		FrameTrace disabled = new FrameTrace(0);
+		Assert.assertTrue(!disabled.isEnabled());
+		disabled.transmit(frame, 0, 4);
+		Assert.assertTrue(disabled.getCount() == 0);
+	}
+	
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import java.util.List;
+
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.commands.numeric.O2SensorsPresent;
+import org.envirocar.obdig.commands.raw.PIDSupported;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OxygenSensorDiscoveryTest {
+
+	@Test
+	public void testTwoBanks() {
+		PIDSupported baseGroup = new PIDSupported();
+		/*
+		 * 0C, 0D, 13 and 20
+		 */
+		baseGroup.parseRawData("410000182001".getBytes());
+		
+		O2SensorsPresent present = OxygenSensorDiscovery.createPresenceCommand(baseGroup);
+		Assert.assertTrue("13".equals(present.getPIDAsString()));
+		Assert.assertTrue(OxygenSensorDiscovery.isSensorGroupAvailable(baseGroup));
+		
+		/*
+		 * bank 1 sensor 1 and bank 2 sensor 1
+		 */
+		present.parseRawData("411311".getBytes());
+		
+		/*
+		 * sensor 1: wide-band current, sensor 5: voltage only
+		 */
+		PIDSupported sensorGroup = new PIDSupported("20");
+		sensorGroup.parseRawData("412001001000".getBytes());
+		
+		List<PID> result = OxygenSensorDiscovery.resolve(present, sensorGroup);
+		Assert.assertTrue(result.size() == 2);
+		Assert.assertTrue(result.get(0) == PID.O2_LAMBDA_PROBE_1_CURRENT);
+		Assert.assertTrue(result.get(1) == PID.O2_LAMBDA_PROBE_5_VOLTAGE);
+	}
+	
+	@Test
+	public void testUnknownCapabilities() {
+		Assert.assertTrue(OxygenSensorDiscovery.resolve(null, null) == null);
+		
+		PIDSupported baseGroup = new PIDSupported();
+		baseGroup.parseRawData("410000180000".getBytes());
+		Assert.assertTrue(OxygenSensorDiscovery.createPresenceCommand(baseGroup) == null);
+		Assert.assertTrue(!OxygenSensorDiscovery.isSensorGroupAvailable(baseGroup));
+	}
+	
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PIDHealthTest {
+
+	@Test
+	public void testBackoffAndRecovery() {
+		PIDHealth health = new PIDHealth();
+		int pid = PIDHealth.toPIDByte(new Speed());
+		Assert.assertTrue(pid == 0x0D);
+		
+		for (int i = 0; i < PIDHealth.ERROR_THRESHOLD; i++) {
+			health.nextCycle();
+			Assert.assertTrue(health.onFailure(pid) == 0);
+			Assert.assertTrue(health.isDue(pid));
+		}
+		
+		/*
+		 * first backoff: skipped for two cycles
+		 */
+		health.nextCycle();
+		Assert.assertTrue(health.onFailure(pid) == 2);
+		health.nextCycle();
+		Assert.assertTrue(!health.isDue(pid));
+		health.nextCycle();
+		Assert.assertTrue(health.isDue(pid));
+		
+		/*
+		 * the re-probe fails again: the interval doubles
+		 */
+		Assert.assertTrue(health.onFailure(pid) == 4);
+		
+		for (int i = 0; i < 4; i++) {
+			health.nextCycle();
+		}
+		Assert.assertTrue(health.isDue(pid));
+		Assert.assertTrue(health.onSuccess(pid));
+		Assert.assertTrue(!health.isBackedOff(pid));
+		Assert.assertTrue(health.getErrorCount(pid) == (PIDHealth.ERROR_THRESHOLD + 1) / 2);
+		
+		health.nextCycle();
+		Assert.assertTrue(health.isDue(pid));
+	}
+	
+	@Test
+	public void testResponded() {
+		PIDHealth health = new PIDHealth();
+		Assert.assertTrue(!health.hasResponded(0x0D));
+		
+		health.onFailure(0x0D);
+		Assert.assertTrue(!health.hasResponded(0x0D));
+		
+		health.onSuccess(0x0D);
+		health.onFailure(0x0D);
+		Assert.assertTrue(health.hasResponded(0x0D));
+		Assert.assertTrue(!health.hasResponded(PIDHealth.NO_PID));
+	}
+	
+	@Test
+	public void testBackoffIsBounded() {
+		PIDHealth health = new PIDHealth();
+		int skipped = 0;
+		for (int i = 0; i < 50; i++) {
+			skipped = health.onFailure(0x24);
+		}
+		Assert.assertTrue(skipped == 1 << PIDHealth.MAX_BACKOFF_EXPONENT);
+		Assert.assertTrue(health.isDue(0x0C));
+	}
+	
+}
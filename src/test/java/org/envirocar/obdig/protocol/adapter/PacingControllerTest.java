@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PacingControllerTest {
+
+	@Test
+	public void testAdditiveIncrease() {
+		PacingController pacing = new PacingController();
+		Assert.assertTrue(pacing.start(100) == 100);
+		
+		Assert.assertTrue(pacing.onCycleCompleted() == 95);
+		Assert.assertTrue(pacing.onCycleCompleted() == 90);
+		
+		for (int i = 0; i < 100; i++) {
+			pacing.onCycleCompleted();
+		}
+		Assert.assertTrue(pacing.getRequestPeriod() == PacingController.MIN_REQUEST_PERIOD);
+		Assert.assertTrue(pacing.getRequestRate() == 100.0);
+	}
+	
+	@Test
+	public void testMultiplicativeDecrease() {
+		PacingController pacing = new PacingController();
+		pacing.start(100);
+		for (int i = 0; i < 10; i++) {
+			pacing.onCycleCompleted();
+		}
+		Assert.assertTrue(pacing.getRequestPeriod() == 50);
+		
+		/*
+		 * several signals within one cycle back off once
+		 */
+		pacing.onCongestion();
+		pacing.onCongestion();
+		Assert.assertTrue(pacing.onCycleCompleted() == 100);
+		Assert.assertTrue(pacing.getCongestionCount() == 1);
+		
+		for (int i = 0; i < 10; i++) {
+			pacing.onCongestion();
+			pacing.onCycleCompleted();
+		}
+		Assert.assertTrue(pacing.getRequestPeriod() == 100 * PacingController.MAX_BACKOFF_FACTOR);
+	}
+	
+	@Test
+	public void testRestart() {
+		PacingController pacing = new PacingController();
+		pacing.start(100);
+		pacing.onCycleCompleted();
+		
+		/*
+		 * a recovered connection keeps the learned period
+		 */
+		Assert.assertTrue(pacing.start(100) == 95);
+		
+		Assert.assertTrue(pacing.start(500) == 500);
+		Assert.assertTrue(pacing.onCycleCompleted() == 475);
+	}
+	
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.drivedeck;
+
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.protocol.adapter.ResponseParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CycleCompositionTest {
+
+	@Test
+	public void testDefaultCycle() {
+		DriveDeckSportConnector conn = new DriveDeckSportConnector();
+		
+		byte[] cycle = pullCycle(conn);
+		Assert.assertTrue(cycle.length == 3 + 7);
+		Assert.assertTrue(contains(cycle, CycleCommand.PID.SPEED));
+		Assert.assertTrue(!contains(cycle, CycleCommand.PID.SHORT_TERM_FUEL_TRIM));
+	}
+	
+	@Test
+	public void testCycleFromSupportedPIDs() {
+		DriveDeckSportConnector conn = new DriveDeckSportConnector();
+		ResponseParser parser = conn.new LocalResponseParser();
+		pullCycle(conn);
+		
+		/*
+		 * group 00: 06, 07, 0C, 0D, 10 -> no IAP, IAT
+		 */
+		parser.processResponse(createReport('0', '0', 0x06, 0x19, 0x00, 0x00), 0, 14);
+		
+		byte[] cycle = pullCycle(conn);
+		Assert.assertTrue(contains(cycle, CycleCommand.PID.SPEED));
+		Assert.assertTrue(contains(cycle, CycleCommand.PID.RPM));
+		Assert.assertTrue(contains(cycle, CycleCommand.PID.MAF));
+		Assert.assertTrue(!contains(cycle, CycleCommand.PID.IAP));
+		Assert.assertTrue(!contains(cycle, CycleCommand.PID.IAT));
+		
+		/*
+		 * the fuel trims are supported, but cannot be decoded
+		 */
+		Assert.assertTrue(!contains(cycle, CycleCommand.PID.SHORT_TERM_FUEL_TRIM));
+		Assert.assertTrue(!contains(cycle, CycleCommand.PID.LONG_TERM_FUEL_TRIM));
+		
+		/*
+		 * lambda probes are still requested until group 20 is reported
+		 */
+		Assert.assertTrue(contains(cycle, CycleCommand.PID.O2_LAMBDA_PROBE_1_VOLTAGE));
+		
+		/*
+		 * group 20: only 34 (current)
+		 */
+		parser.processResponse(createReport('2', '0', 0x00, 0x00, 0x10, 0x00), 0, 14);
+		
+		cycle = pullCycle(conn);
+		Assert.assertTrue(!contains(cycle, CycleCommand.PID.O2_LAMBDA_PROBE_1_VOLTAGE));
+		Assert.assertTrue(contains(cycle, CycleCommand.PID.O2_LAMBDA_PROBE_1_CURRENT));
+		
+		/*
+		 * an unchanged report does not resend the cycle
+		 */
+		lastResultNow(conn);
+		parser.processResponse(createReport('2', '0', 0x00, 0x00, 0x10, 0x00), 0, 14);
+		Assert.assertTrue(conn.getRequestCommands().isEmpty());
+	}
+	
+	@Test
+	public void testIncompleteReport() {
+		DriveDeckSportConnector conn = new DriveDeckSportConnector();
+		ResponseParser parser = conn.new LocalResponseParser();
+		
+		byte[] report = createReport('0', '0', 0x00, 0x00, 0x00, 0x00);
+		Assert.assertNull(parser.processResponse(report, 0, 10));
+		Assert.assertTrue(pullCycle(conn).length == 3 + 7);
+	}
+
+	private void lastResultNow(DriveDeckSportConnector conn) {
+		conn.lastResult = System.currentTimeMillis();
+	}
+
+	private byte[] pullCycle(DriveDeckSportConnector conn) {
+		List<AbstractCommand> cmds = conn.getRequestCommands();
+		Assert.assertTrue(cmds.size() == 1);
+		return cmds.get(0).getOutgoingBytes();
+	}
+
+	private boolean contains(byte[] cycle, CycleCommand.PID pid) {
+		byte expected = (byte) Integer.parseInt(pid.toString());
+		for (int i = 3; i < cycle.length; i++) {
+			if (cycle[i] == expected) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private byte[] createReport(char groupHigh, char groupLow, int m0, int m1, int m2, int m3) {
+		return new byte[] {'B', '7', '0', '<', '0', '1', (byte) groupHigh, (byte) groupLow, '<',
+				(byte) m0, (byte) m1, '<', (byte) m2, (byte) m3};
+	}
+	
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.protocol.adapter.BufferingResponseParser;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.ConnectionState;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CANMonitorTest {
+
+	@Test
+	public void testDescriptorParsing() {
+		SignalDefinition def = SignalDefinition.parse("3E9:7|16@0+ (0.01,0) SPEED");
+		Assert.assertTrue(def.getCanId() == 0x3E9);
+		Assert.assertTrue(def.getPID() == PID.SPEED);
+		Assert.assertTrue(!def.isExtendedId());
+		
+		List<SignalDefinition> defs = SignalDefinition.parseAll("3E9:7|16@0+ (0.01,0) SPEED;\n18FEF100:8|8@1- (1,-40) 0F");
+		Assert.assertTrue(defs.size() == 2);
+		Assert.assertTrue(defs.get(1).getPID() == PID.INTAKE_AIR_TEMP);
+		Assert.assertTrue(defs.get(1).isExtendedId());
+		
+		try {
+			SignalDefinition.parse("3E9:7|16 SPEED");
+			Assert.fail("Expected an IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+	
+	@Test
+	public void testDecoding() {
+		byte[] data = new byte[] {0x12, 0x34, (byte) 0xF6, 0x00};
+		
+		/*
+		 * big endian, MSB at bit 7 of byte 0
+		 */
+		Assert.assertTrue(SignalDefinition.parse("100:7|16@0+ (1,0) RPM").decode(data, 0, 4) == 0x1234);
+		
+		/*
+		 * little endian, starting at byte 0
+		 */
+		Assert.assertTrue(SignalDefinition.parse("100:0|16@1+ (1,0) RPM").decode(data, 0, 4) == 0x3412);
+		
+		/*
+		 * signed nibble and scaling
+		 */
+		Assert.assertTrue(SignalDefinition.parse("100:16|8@1- (0.5,1) RPM").decode(data, 0, 4) == -4.0);
+		Assert.assertTrue(SignalDefinition.parse("100:20|4@1+ (1,0) RPM").decode(data, 0, 4) == 0x0F);
+		
+		/*
+		 * frame too short
+		 */
+		Assert.assertTrue(Double.isNaN(SignalDefinition.parse("100:32|8@1+ (1,0) RPM").decode(data, 0, 4)));
+	}
+	
+	@Test
+	public void testFrameParsing() {
+		List<SignalDefinition> defs = new ArrayList<SignalDefinition>();
+		defs.add(SignalDefinition.parse("3E9:7|16@0+ (0.01,0) SPEED"));
+		defs.add(SignalDefinition.parse("3E9:23|16@0+ (0.25,0) RPM"));
+		defs.add(SignalDefinition.parse("18FEF100:0|8@1+ (1,-40) INTAKE_AIR_TEMP"));
+		CANMonitorConnector conn = new CANMonitorConnector(defs);
+		BufferingResponseParser parser = conn.new LocalResponseParser();
+		
+		AbstractCommand speed = parse(parser, ">3E913880BB8");
+		Assert.assertTrue(speed instanceof MonitoredSignal);
+		Assert.assertTrue(speed.getPIDAsString().equals(PID.SPEED.toString()));
+		Assert.assertTrue(((MonitoredSignal) speed).getNumberResult().doubleValue() == 50.0);
+		
+		AbstractCommand rpm = parser.pollBufferedResponse();
+		Assert.assertTrue(rpm.getPIDAsString().equals(PID.RPM.toString()));
+		Assert.assertTrue(((MonitoredSignal) rpm).getNumberResult().doubleValue() == 750.0);
+		Assert.assertNull(parser.pollBufferedResponse());
+		Assert.assertTrue(conn.connectionState() == ConnectionState.CONNECTED);
+		
+		/*
+		 * spaces and 29 bit IDs
+		 */
+		AbstractCommand iat = parse(parser, "18 FE F1 00 5A 00");
+		Assert.assertTrue(((MonitoredSignal) iat).getNumberResult().doubleValue() == 50.0);
+		
+		Assert.assertNull(parse(parser, "3E8 01 02"));
+		Assert.assertNull(parse(parser, "3E9 01<DATA ERROR"));
+		Assert.assertNull(parse(parser, "F8A12"));
+		Assert.assertNull(parse(parser, "FFF 01 02"));
+		Assert.assertNull(parse(parser, "BUFFER FULL"));
+		Assert.assertTrue(conn.getRequestCommands().size() == 1);
+		Assert.assertTrue(conn.getRequestCommands().isEmpty());
+	}
+
+	@Test
+	public void testFilter() {
+		List<SignalDefinition> defs = new ArrayList<SignalDefinition>();
+		defs.add(SignalDefinition.parse("3E9:7|16@0+ (0.01,0) SPEED"));
+		defs.add(SignalDefinition.parse("3E8:7|16@0+ (0.25,0) RPM"));
+		CANMonitorConnector conn = new CANMonitorConnector(defs);
+		
+		String commands = toString(conn.getMonitoringCommands());
+		Assert.assertTrue(commands, commands.contains("AT CF 3E8;AT CM 7FE;AT MA;"));
+	}
+	
+	@Test
+	public void testSTNDetection() {
+		List<SignalDefinition> defs = new ArrayList<SignalDefinition>();
+		defs.add(SignalDefinition.parse("3E9:7|16@0+ (0.01,0) SPEED"));
+		CANMonitorConnector conn = new CANMonitorConnector(defs);
+		BufferingResponseParser parser = conn.new LocalResponseParser();
+		
+		/*
+		 * the device name does not decide on the chip
+		 */
+		Assert.assertTrue(conn.supportsDevice("OBDLink MX"));
+		Assert.assertTrue(toString(conn.getInitializationCommands()).endsWith("ST I;"));
+		
+		Assert.assertNull(parse(parser, "ELM327 v1.3a"));
+		Assert.assertNull(parse(parser, "?"));
+		Assert.assertTrue(toString(conn.getMonitoringCommands()).endsWith("AT MA;"));
+		
+		Assert.assertNull(parse(parser, "STN1110 v4.0.1"));
+		String commands = toString(conn.getMonitoringCommands());
+		Assert.assertTrue(commands, commands.startsWith("ST FCP;"));
+		Assert.assertTrue(commands, commands.endsWith("ST MA;"));
+	}
+	
+	private String toString(List<AbstractCommand> commands) {
+		StringBuilder sb = new StringBuilder();
+		for (AbstractCommand cmd : commands) {
+			sb.append(new String(cmd.getOutgoingBytes())).append(';');
+		}
+		return sb.toString();
+	}
+	
+	private AbstractCommand parse(BufferingResponseParser parser, String line) {
+		byte[] bytes = line.getBytes();
+		return parser.processResponse(bytes, 0, bytes.length);
+	}
+	
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.sequential;
+
+import org.envirocar.obdig.commands.elm327.Timeout;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveTimeoutControllerTest {
+	
+	private static final long MILLIS = 1000000;
+
+	@Test
+	public void testTimeoutTightening() {
+		AdaptiveTimeoutController ctrl = new AdaptiveTimeoutController();
+		
+		for (int i = 0; i < AdaptiveTimeoutController.SAMPLE_WINDOW; i++) {
+			Assert.assertFalse(ctrl.isUpdateRequired());
+			ctrl.onResponse(0x0D, 40 * MILLIS);
+		}
+		
+		Assert.assertTrue(ctrl.isUpdateRequired());
+		
+		Timeout cmd = ctrl.createTimeoutCommand();
+		
+		/*
+		 * (40 ms + 12 ms) * 1.5 = 78 ms = 20 units
+		 */
+		Assert.assertTrue(ctrl.getCurrentTimeout() == 20);
+		Assert.assertTrue("ST 14".equals(cmd.getPIDAsString()));
+		Assert.assertFalse(ctrl.isUpdateRequired());
+	}
+	
+	@Test
+	public void testLowerBound() {
+		AdaptiveTimeoutController ctrl = new AdaptiveTimeoutController();
+		
+		for (int i = 0; i < AdaptiveTimeoutController.SAMPLE_WINDOW; i++) {
+			ctrl.onResponse(0x0D, 1 * MILLIS);
+		}
+		
+		ctrl.createTimeoutCommand();
+		Assert.assertTrue(ctrl.getCurrentTimeout() == AdaptiveTimeoutController.MIN_TIMEOUT);
+	}
+	
+	@Test
+	public void testNoDataRelaxes() {
+		AdaptiveTimeoutController ctrl = new AdaptiveTimeoutController();
+		
+		for (int i = 0; i < AdaptiveTimeoutController.SAMPLE_WINDOW; i++) {
+			ctrl.onResponse(0x0D, 40 * MILLIS);
+		}
+		ctrl.createTimeoutCommand();
+		
+		/*
+		 * a PID which never answered does not indicate a too tight timeout
+		 */
+		ctrl.onNoData(0x10);
+		Assert.assertFalse(ctrl.isUpdateRequired());
+		
+		ctrl.onNoData(0x0D);
+		Assert.assertTrue(ctrl.isUpdateRequired());
+		
+		ctrl.createTimeoutCommand();
+		Assert.assertTrue(ctrl.getCurrentTimeout() == AdaptiveTimeoutController.DEFAULT_TIMEOUT);
+	}
+
+}
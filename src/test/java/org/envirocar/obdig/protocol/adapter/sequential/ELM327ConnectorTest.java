@@ -0,0 +1,468 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.sequential;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.AbstractCommand.CommonCommandState;
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.commands.elm327.CANAutoFormatting;
+import org.envirocar.obdig.commands.elm327.SpacesOff;
+import org.envirocar.obdig.commands.numeric.IntakeTemperature;
+import org.envirocar.obdig.commands.numeric.O2SensorsPresent;
+import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.protocol.StallListener;
+import org.envirocar.obdig.protocol.StallWatchdog;
+import org.envirocar.obdig.protocol.adapter.EngineStateTracker;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.CommandPriority;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.ConnectionState;
+import org.envirocar.obdig.protocol.adapter.OBDConnector.RecoveryLevel;
+import org.envirocar.obdig.protocol.adapter.PacingController;
+import org.envirocar.obdig.protocol.adapter.SessionState;
+import org.envirocar.obdig.protocol.adapter.sequential.ELM327Connector.WireSetting;
+import org.envirocar.obdig.protocol.subscription.SubscriptionListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ELM327ConnectorTest {
+
+	@Test
+	public void testCompactWireProfile() {
+		ELM327Connector conn = new ELM327Connector();
+		
+		boolean spacesOff = false;
+		for (AbstractCommand cmd : conn.getInitializationCommands()) {
+			spacesOff = spacesOff || cmd instanceof SpacesOff;
+		}
+		Assert.assertTrue(spacesOff);
+		
+		conn.processInitializationCommand(respond(new SpacesOff(), "ATS0OK"));
+		conn.processInitializationCommand(respond(new CANAutoFormatting(true), "?"));
+		
+		Assert.assertTrue(conn.getWireSettings().contains(WireSetting.SPACES_OFF));
+		Assert.assertTrue(!conn.getWireSettings().contains(WireSetting.CAN_AUTO_FORMATTING));
+		
+		/*
+		 * the profile settings do not count for the connection state
+		 */
+		Assert.assertTrue(conn.succesfulCount == 0);
+	}
+	
+	@Test
+	public void testInitializationWithoutDelays() throws Exception {
+		ELM327Connector conn = new ELM327Connector();
+		
+		StringBuilder responses = new StringBuilder();
+		responses.append("ATZ\r\r\rELM327 v1.5\r\r>");
+		responses.append("ATE0\rOK\r\r>");
+		for (int i = 2; i < conn.getInitializationCommands().size(); i++) {
+			responses.append("OK\r\r>");
+		}
+		responses.append("41 00 BE 1F A8 13\r\r>");
+		
+		conn.provideStreamObjects(new ByteArrayInputStream(responses.toString().getBytes()),
+				new ByteArrayOutputStream());
+		
+		long start = System.currentTimeMillis();
+		conn.executeInitializationCommands();
+		
+		Assert.assertTrue(conn.connectionState() == ConnectionState.CONNECTED);
+		Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+		Assert.assertTrue(conn.getWireSettings().contains(WireSetting.ECHO_OFF));
+		Assert.assertTrue(conn.getWireSettings().contains(WireSetting.LINE_FEED_OFF));
+		Assert.assertTrue(conn.getWireSettings().contains(WireSetting.SPACES_OFF));
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testRecovery() throws Exception {
+		SessionState state = new SessionState();
+		state.setPreferredLambdaProbe("24");
+		
+		ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(state);
+		
+		/*
+		 * stale bytes are discarded, then echo off and the probe are answered
+		 */
+		conn.provideStreamObjects(new Responses("4110>", "OK\r\r>41 0D 32\r\r>"), new ByteArrayOutputStream());
+		Assert.assertTrue(conn.recoverConnection(RecoveryLevel.RESYNC_PROMPT));
+		
+		conn.provideStreamObjects(new Responses("", "OK\r\r>NO DATA\r\r>"), new ByteArrayOutputStream());
+		Assert.assertTrue(!conn.recoverConnection(RecoveryLevel.RESELECT_PROTOCOL));
+		
+		Assert.assertTrue(state.getPreferredLambdaProbe().equals("24"));
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testSubscribedPIDsOnly() throws Exception {
+		SessionState state = new SessionState();
+		state.getPIDSubscriptions().subscribe("0D", 0, new SubscriptionListener() {
+			@Override
+			public void onResult(AbstractCommand result) {
+			}
+		});
+		
+		ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(state);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		conn.provideStreamObjects(new ByteArrayInputStream("410D32\r\r>".getBytes()), out);
+		
+		List<AbstractCommand> cmds = conn.executeRequestCommands();
+		Assert.assertTrue(cmds.size() == 1);
+		Assert.assertTrue(cmds.get(0).getCommandState() == CommonCommandState.FINISHED);
+		
+		/*
+		 * a single request for the subscribed PID
+		 */
+		String sent = new String(out.toByteArray());
+		Assert.assertTrue(sent.endsWith("0D\r"));
+		Assert.assertTrue(sent.indexOf('\r') == sent.length() - 1);
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testNoCapabilityRequestsInCycle() throws Exception {
+		SessionState state = new SessionState();
+		state.setSupportedPIDs(EnumSet.of(PID.SPEED, PID.O2_SENSORS_PRESENT, PID.O2_SENSORS_PRESENT_4_BANKS));
+		
+		ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(state);
+		
+		StringBuilder responses = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			responses.append("NODATA\r\r>");
+		}
+		conn.provideStreamObjects(new ByteArrayInputStream(responses.toString().getBytes()),
+				new ByteArrayOutputStream());
+		
+		List<AbstractCommand> cmds = conn.executeRequestCommands();
+		Assert.assertTrue(!cmds.isEmpty());
+		for (AbstractCommand cmd : cmds) {
+			Assert.assertTrue(cmd.getCommandName(), !(cmd instanceof O2SensorsPresent));
+		}
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testKeepAliveWhileParked() throws Exception {
+		SessionState state = new SessionState();
+		EngineStateTracker engineState = state.getEngineStateTracker();
+		final long[] clock = new long[] {1000000};
+		
+		/*
+		 * the ECU went to sleep
+		 */
+		RPM noData = new RPM();
+		noData.parseRawData("NODATA".getBytes());
+		List<AbstractCommand> idle = Collections.<AbstractCommand>singletonList(noData);
+		engineState.onCycle(idle, clock[0]);
+		clock[0] += EngineStateTracker.ENGINE_OFF_DELAY;
+		engineState.onCycle(idle, clock[0]);
+		Assert.assertTrue(engineState.isEngineOff());
+		
+		ELM327Connector conn = new ELM327Connector() {
+			@Override
+			protected long currentTimeMillis() {
+				return clock[0];
+			}
+		};
+		conn.setSessionState(state);
+		
+		/*
+		 * five minutes of probes, all answered with NODATA
+		 */
+		int probes = (int) (5 * 60 * 1000 / EngineStateTracker.KEEP_ALIVE_PERIOD);
+		StringBuilder responses = new StringBuilder();
+		for (int i = 0; i < probes * 2; i++) {
+			responses.append("NODATA\r\r>");
+		}
+		conn.provideStreamObjects(new ByteArrayInputStream(responses.toString().getBytes()),
+				new ByteArrayOutputStream());
+		
+		for (int i = 0; i < probes; i++) {
+			clock[0] += EngineStateTracker.KEEP_ALIVE_PERIOD;
+			
+			List<AbstractCommand> cmds = conn.executeRequestCommands();
+			Assert.assertTrue(cmds.size() == 2);
+			engineState.onCycle(cmds, clock[0]);
+			Assert.assertTrue(engineState.getLastActivity() == clock[0]);
+		}
+		
+		Assert.assertTrue(state.getPIDHealth().getBackedOffCount() == 0);
+		Assert.assertTrue(state.getPIDHealth().getErrorCount(0x0C) == 0);
+		Assert.assertTrue(state.getPacingController().getCongestionCount() == 0);
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testInjectedCommands() throws Exception {
+		SessionState state = new SessionState();
+		state.getPIDSubscriptions().subscribe("0D", 0, new SubscriptionListener() {
+			@Override
+			public void onResult(AbstractCommand result) {
+			}
+		});
+		
+		ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(state);
+		
+		Future<AbstractCommand> low = conn.submitCommand(new IntakeTemperature(), CommandPriority.LOW);
+		Future<AbstractCommand> high = conn.submitCommand(new RPM(), CommandPriority.HIGH);
+		
+		/*
+		 * the high priority command precedes the cycle, the low one follows it
+		 */
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		conn.provideStreamObjects(new ByteArrayInputStream("410C1AF8\r\r>410D32\r\r>410F50\r\r>".getBytes()), out);
+		
+		List<AbstractCommand> cmds = conn.executeRequestCommands();
+		Assert.assertTrue(cmds.size() == 1);
+		Assert.assertTrue(cmds.get(0).getCommandState() == CommonCommandState.FINISHED);
+		
+		Assert.assertTrue(high.isDone() && low.isDone());
+		Assert.assertTrue(high.get().getCommandState() == CommonCommandState.FINISHED);
+		Assert.assertTrue(((RPM) high.get()).getNumberResult().intValue() == 1726);
+		Assert.assertTrue(low.get().getCommandState() == CommonCommandState.FINISHED);
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testLowPriorityAfterOverload() throws Exception {
+		SessionState state = new SessionState();
+		state.getPIDSubscriptions().subscribe("0D", 0, new SubscriptionListener() {
+			@Override
+			public void onResult(AbstractCommand result) {
+			}
+		});
+		
+		ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(state);
+		Future<AbstractCommand> low = conn.submitCommand(new IntakeTemperature(), CommandPriority.LOW);
+		
+		/*
+		 * the overloaded cycle defers the low priority command, the next
+		 * one executes it, even if the pacing never completes a cycle
+		 */
+		conn.provideStreamObjects(new ByteArrayInputStream("BUFFERFULL\r\r>410D32\r\r>410F50\r\r>".getBytes()),
+				new ByteArrayOutputStream());
+		
+		conn.executeRequestCommands();
+		Assert.assertTrue(!low.isDone());
+		
+		conn.executeRequestCommands();
+		Assert.assertTrue(low.isDone());
+		Assert.assertTrue(low.get().getCommandState() == CommonCommandState.FINISHED);
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testNoDataCongestion() throws Exception {
+		SessionState state = new SessionState();
+		state.getPIDSubscriptions().subscribe("0D", 0, new SubscriptionListener() {
+			@Override
+			public void onResult(AbstractCommand result) {
+			}
+		});
+		PacingController pacing = state.getPacingController();
+		pacing.start(100);
+		
+		ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(state);
+		
+		StringBuilder responses = new StringBuilder();
+		responses.append("ATZ\r\r\rELM327 v1.5\r\r>");
+		responses.append("ATE0\rOK\r\r>");
+		for (int i = 2; i < conn.getInitializationCommands().size(); i++) {
+			responses.append("OK\r\r>");
+		}
+		responses.append("41 00 BE 1F A8 13\r\r>NODATA\r\r>NODATA\r\r>");
+		responses.append("NODATA\r\r>410D32\r\r>NODATA\r\r>");
+		conn.provideStreamObjects(new ByteArrayInputStream(responses.toString().getBytes()),
+				new ByteArrayOutputStream());
+		conn.executeInitializationCommands();
+		
+		/*
+		 * the PID did not respond yet, so it might just not be supported
+		 */
+		conn.executeRequestCommands();
+		Assert.assertTrue(pacing.onCycleCompleted() == 95);
+		
+		conn.executeRequestCommands();
+		Assert.assertTrue(pacing.onCycleCompleted() == 90);
+		
+		/*
+		 * the PID responded before: the ECU missed the adapter timeout
+		 */
+		conn.executeRequestCommands();
+		Assert.assertTrue(pacing.onCycleCompleted() == 180);
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testAbortStalledCommand() throws Exception {
+		SessionState state = new SessionState();
+		state.getPIDSubscriptions().subscribe("0D", 0, new SubscriptionListener() {
+			@Override
+			public void onResult(AbstractCommand result) {
+			}
+		});
+		
+		final ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(state);
+		
+		final CountDownLatch aborted = new CountDownLatch(1);
+		final long[] stalledCommand = new long[1];
+		StallWatchdog.Watch watch = StallWatchdog.getDefault().register(new StallListener() {
+			@Override
+			public void onStall(StallWatchdog.Watch w, long tag, long overdueMillis) {
+				stalledCommand[0] = tag;
+				conn.abortCommand(tag);
+				aborted.countDown();
+			}
+		});
+		state.setCommandWatch(watch);
+		
+		/*
+		 * the adapter only answers once it has been interrupted
+		 */
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		conn.provideStreamObjects(new StalledResponse("STOPPED\r\r>", aborted), out);
+		
+		try {
+			List<AbstractCommand> cmds = conn.executeRequestCommands();
+			Assert.assertTrue(cmds.get(0).getCommandState() == CommonCommandState.QUEUE_ERROR);
+			Assert.assertTrue(new String(out.toByteArray()).endsWith("0D\r "));
+			
+			/*
+			 * the command is no longer in flight
+			 */
+			int written = out.size();
+			conn.abortCommand(stalledCommand[0]);
+			Assert.assertTrue(out.size() == written);
+		}
+		finally {
+			watch.cancel();
+			conn.shutdown();
+		}
+	}
+	
+	@Test
+	public void testRecoveryTimeout() throws Exception {
+		ELM327Connector conn = new ELM327Connector();
+		conn.setSessionState(new SessionState());
+		
+		/*
+		 * the adapter does not answer until it has been interrupted
+		 */
+		final CountDownLatch aborted = new CountDownLatch(1);
+		conn.provideStreamObjects(new StalledResponse("STOPPED\r\r>", aborted), new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(int b) {
+				super.write(b);
+				if (b == ' ') {
+					aborted.countDown();
+				}
+			}
+		});
+		
+		Assert.assertTrue(!conn.recoverConnection(RecoveryLevel.RESYNC_PROMPT));
+		Assert.assertTrue(aborted.getCount() == 0);
+		conn.shutdown();
+	}
+	
+	@Test
+	public void testAposQuirk() {
+		AposW3Connector conn = new AposW3Connector();
+		Assert.assertTrue(conn.getCompactWireCommands().size() == 1);
+		Assert.assertTrue(conn.getCompactWireCommands().get(0) instanceof SpacesOff);
+	}
+
+	private AbstractCommand respond(AbstractCommand cmd, String response) {
+		cmd.parseRawData(response.getBytes());
+		return cmd;
+	}
+	
+	/**
+	 * blocks until the command has been aborted
+	 */
+	private static class StalledResponse extends ByteArrayInputStream {
+		
+		private final CountDownLatch aborted;
+
+		public StalledResponse(String response, CountDownLatch aborted) {
+			super(response.getBytes());
+			this.aborted = aborted;
+		}
+		
+		@Override
+		public int read() {
+			try {
+				aborted.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return super.read();
+		}
+		
+		@Override
+		public synchronized int available() {
+			return 0;
+		}
+		
+	}
+	
+	/**
+	 * only the stale bytes are available before a request is sent
+	 */
+	private static class Responses extends ByteArrayInputStream {
+		
+		private int stale;
+
+		public Responses(String stale, String responses) {
+			super((stale + responses).getBytes());
+			this.stale = stale.length();
+		}
+		
+		@Override
+		public synchronized int available() {
+			return Math.max(0, stale - pos);
+		}
+		
+	}
+	
+}
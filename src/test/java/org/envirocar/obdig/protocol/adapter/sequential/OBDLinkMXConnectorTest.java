@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.adapter.sequential;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.envirocar.obdig.commands.stn.STNIdentify;
+import org.envirocar.obdig.protocol.adapter.BaudRateControl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OBDLinkMXConnectorTest {
+
+	@Test
+	public void testIdentifyInitialization() {
+		OBDLinkMXConnector conn = new OBDLinkMXConnector();
+		boolean found = false;
+		for (AbstractCommand cmd : conn.getInitializationCommands()) {
+			found = found || cmd instanceof STNIdentify;
+		}
+		Assert.assertTrue(found);
+		
+		conn.processInitializationCommand(identify("?"));
+		Assert.assertTrue(!conn.isSTNDetected());
+		Assert.assertTrue(conn.getPreferredRequestPeriod() == 100);
+	}
+	
+	@Test
+	public void testSTPXFraming() {
+		final String[] header = new String[1];
+		OBDLinkMXConnector conn = new OBDLinkMXConnector() {
+			@Override
+			protected String getRequestHeader() {
+				return header[0];
+			}
+		};
+		conn.processInitializationCommand(identify("STN1110v4.0.1"));
+		Assert.assertTrue(conn.isSTNDetected());
+		Assert.assertTrue(conn.getPreferredRequestPeriod() < 100);
+		
+		/*
+		 * broadcast requests keep the ELM327 framing
+		 */
+		Assert.assertTrue(new String(conn.getOutgoingBytes(new Speed())).equals("01 0D"));
+		
+		header[0] = "7E0";
+		Assert.assertTrue(new String(conn.getOutgoingBytes(new Speed())).equals("STPX H:7E0,D:010D,R:1"));
+		Assert.assertTrue(new String(conn.getOutgoingBytes(new STNIdentify())).equals("ST I"));
+	}
+	
+	@Test
+	public void testBaudRateNegotiation() {
+		OBDLinkMXConnector conn = new OBDLinkMXConnector();
+		Transport transport = new Transport(115200, 2000000);
+		conn.provideStreamObjects(new ByteArrayInputStream("OK\rSTN1110 v4.0.1\r\r>".getBytes()), transport);
+		
+		conn.processInitializationCommand(identify("STN1110v4.0.1"));
+		Assert.assertTrue(transport.baudRate == 2000000);
+		Assert.assertTrue(new String(transport.toByteArray()).equals("ST SBR 2000000\rST I\r"));
+	}
+	
+	@Test
+	public void testBaudRateFallback() {
+		OBDLinkMXConnector conn = new OBDLinkMXConnector();
+		Transport transport = new Transport(115200, 2000000);
+		
+		/*
+		 * the adapter does not answer at the new rate
+		 */
+		conn.provideStreamObjects(new ByteArrayInputStream("OK\r".getBytes()), transport);
+		
+		conn.processInitializationCommand(identify("STN1110v4.0.1"));
+		Assert.assertTrue(transport.baudRate == 115200);
+	}
+
+	private STNIdentify identify(String response) {
+		STNIdentify sti = new STNIdentify();
+		sti.parseRawData(response.getBytes());
+		return sti;
+	}
+	
+	private static class Transport extends ByteArrayOutputStream implements BaudRateControl {
+
+		private int baudRate;
+		private int maximum;
+
+		public Transport(int baudRate, int maximum) {
+			this.baudRate = baudRate;
+			this.maximum = maximum;
+		}
+		
+		@Override
+		public int getBaudRate() {
+			return baudRate;
+		}
+
+		@Override
+		public int getMaximumBaudRate() {
+			return maximum;
+		}
+
+		@Override
+		public boolean setBaudRate(int baudRate) {
+			this.baudRate = baudRate;
+			return true;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testIdleFlush() throws Exception {
+		File dir = folder.newFolder("idle");
+		CaptureLog log = new CaptureLog(dir);
+		
+		/*
+		 * no further traffic arrives, the timer flushes the batch
+		 */
+		new CapturingOutputStream(new ByteArrayOutputStream(), log).write("01 0D\r".getBytes());
+		Thread.sleep(CaptureLog.FLUSH_INTERVAL * 2 + 100);
+		
+		CaptureRecord tx = new CaptureReader(dir).next();
+		Assert.assertTrue(tx != null && "01 0D\r".equals(new String(tx.getPayload())));
+		log.close();
+	}
+	
+	@Test
+	public void testRoundTrip() throws IOException {
+		File dir = folder.newFolder("capture");
+		CaptureLog log = new CaptureLog(dir);
+		
+		OutputStream out = new CapturingOutputStream(new ByteArrayOutputStream(), log);
+		InputStream in = new CapturingInputStream(new ByteArrayInputStream("410D32\r\r>".getBytes()), log);
+		
+		out.write("01 0D\r".getBytes());
+		int b;
+		while ((b = in.read()) != '>') {
+			Assert.assertTrue(b >= 0);
+		}
+		log.close();
+		
+		CaptureReader reader = new CaptureReader(dir);
+		CaptureRecord tx = reader.next();
+		Assert.assertTrue(tx.isTransmit());
+		Assert.assertTrue("01 0D\r".equals(new String(tx.getPayload())));
+		
+		/*
+		 * the byte-wise reads are coalesced
+		 */
+		StringBuilder received = new StringBuilder();
+		CaptureRecord rx;
+		while ((rx = reader.next()) != null) {
+			Assert.assertTrue(rx.getDirection() == CaptureLog.RECEIVE);
+			Assert.assertTrue(rx.getTimestampNanos() >= tx.getTimestampNanos());
+			received.append(new String(rx.getPayload()));
+		}
+		Assert.assertTrue("410D32\r\r>".equals(received.toString()));
+	}
+	
+	@Test
+	public void testSegmentRotation() throws IOException {
+		File dir = folder.newFolder("rotation");
+		CaptureLog log = new CaptureLog(dir, 256, 3, 64);
+		
+		byte[] chunk = new byte[100];
+		for (int i = 0; i < chunk.length; i++) {
+			chunk[i] = (byte) i;
+		}
+		for (int i = 0; i < 20; i++) {
+			log.append(i % 2 == 0 ? CaptureLog.TRANSMIT : CaptureLog.RECEIVE, chunk, 0, chunk.length);
+		}
+		log.close();
+		
+		Assert.assertTrue(CaptureReader.listSegments(dir).size() == 3);
+		
+		CaptureReader reader = new CaptureReader(dir);
+		CaptureRecord record;
+		int count = 0;
+		long last = -1;
+		while ((record = reader.next()) != null) {
+			Assert.assertTrue(record.getPayload().length <= 64);
+			Assert.assertTrue(record.getTimestampNanos() >= last);
+			last = record.getTimestampNanos();
+			count++;
+		}
+		Assert.assertTrue(count > 0);
+		
+		/*
+		 * a new capture continues after the existing segments
+		 */
+		CaptureLog next = new CaptureLog(dir, 256, 3, 64);
+		next.append(CaptureLog.TRANSMIT, 'A');
+		next.close();
+		Assert.assertTrue(CaptureReader.listSegments(dir).size() == 3);
+		File newest = CaptureReader.listSegments(dir).get(2);
+		Assert.assertTrue(newest.getName().compareTo(CaptureLog.createSegmentName(8)) > 0);
+	}
+	
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.envirocar.obdig.protocol.adapter.sequential.ELM327Connector;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CaptureReplayTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testRoundTrip() throws Exception {
+		File dir = folder.newFolder("session");
+		
+		/*
+		 * record a session against a simulated adapter
+		 */
+		FakeAdapter adapter = new FakeAdapter();
+		CaptureLog log = new CaptureLog(dir);
+		ConnectorReplayJob recording = new ConnectorReplayJob(new ELM327Connector(), 5, 0);
+		recording.run(new CapturingInputStream(adapter.in, log), new CapturingOutputStream(adapter.out, log));
+		log.close();
+		
+		Assert.assertTrue(recording.getCycleCount() == 5);
+		Assert.assertTrue(recording.getResponseCount() > 0);
+		
+		/*
+		 * and replay it in parallel, paced and at full speed
+		 */
+		ReplayScript script = ReplayScript.load(dir);
+		ReplayRunner runner = new ReplayRunner(4);
+		List<ConnectorReplayJob> jobs = new ArrayList<ConnectorReplayJob>();
+		List<Future<ReplayResult>> futures = new ArrayList<Future<ReplayResult>>();
+		for (int i = 0; i < 4; i++) {
+			ConnectorReplayJob job = new ConnectorReplayJob(new ELM327Connector(), 5, 0);
+			jobs.add(job);
+			futures.add(runner.submit(script, i % 2 == 0 ? CaptureReplay.Mode.REAL_TIME
+					: CaptureReplay.Mode.MAX_SPEED, job));
+		}
+		
+		for (int i = 0; i < futures.size(); i++) {
+			ReplayResult result = futures.get(i).get();
+			Assert.assertTrue(result.toString(), result.getFailure() == null);
+			Assert.assertTrue(result.toString(), result.getMissCount() == 0);
+			Assert.assertTrue(result.toString(), result.isFinished());
+			Assert.assertTrue(result.getMatchedCount() == script.getExchanges().size());
+			Assert.assertTrue(jobs.get(i).getResponseCount() == recording.getResponseCount());
+		}
+		runner.shutdown();
+	}
+	
+	@Test
+	public void testDivergence() throws IOException {
+		List<CaptureRecord> records = new ArrayList<CaptureRecord>();
+		records.add(new CaptureRecord(CaptureLog.TRANSMIT, 0, 0, "01 0D\r".getBytes()));
+		records.add(new CaptureRecord(CaptureLog.RECEIVE, 0, 1000, "41 0D 32\r\r>".getBytes()));
+		
+		CaptureReplay replay = new CaptureReplay(ReplayScript.fromRecords(records), CaptureReplay.Mode.MAX_SPEED);
+		replay.getOutputStream().write("01 0C\r".getBytes());
+		
+		try {
+			replay.getInputStream().read();
+			Assert.fail("Diverged replay served data");
+		} catch (EOFException e) {
+			Assert.assertTrue(replay.getMissCount() == 1);
+		}
+	}
+	
+	/**
+	 * answers ELM327 requests synchronously
+	 */
+	private static class FakeAdapter {
+		
+		private final ArrayDeque<Byte> responses = new ArrayDeque<Byte>();
+		private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+		
+		private final InputStream in = new InputStream() {
+			@Override
+			public int read() {
+				Byte b = responses.poll();
+				return b == null ? -1 : b & 0xff;
+			}
+			
+			@Override
+			public int available() {
+				return responses.size();
+			}
+		};
+		
+		private final OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) {
+				if (b != '\r') {
+					request.write(b);
+					return;
+				}
+				
+				String response = respond(new String(request.toByteArray()).trim());
+				request.reset();
+				for (byte r : response.getBytes()) {
+					responses.add(r);
+				}
+			}
+		};
+		
+		private String respond(String req) {
+			if (req.equals("AT Z")) {
+				return "ELM327 v1.5\r\r>";
+			}
+			if (req.startsWith("AT")) {
+				return "OK\r\r>";
+			}
+			if (req.equals("01 00")) {
+				return "41 00 BE 1F A8 13\r\r>";
+			}
+			if (req.equals("01 13")) {
+				return "41 13 01\r\r>";
+			}
+			if (req.equals("01 0D")) {
+				return "41 0D 32\r\r>";
+			}
+			if (req.equals("01 0C")) {
+				return "41 0C 1A F8\r\r>";
+			}
+			return "NO DATA\r\r>";
+		}
+	}
+	
+}
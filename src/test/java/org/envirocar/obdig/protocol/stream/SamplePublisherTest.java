@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.numeric.MAF;
+import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.envirocar.obdig.protocol.stream.SamplePublisher.Conflation;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SamplePublisherTest {
+	
+	private static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Test
+	public void testDemand() {
+		SamplePublisher pub = new SamplePublisher(DIRECT, 4, Conflation.NONE);
+		CollectingSubscriber sub = new CollectingSubscriber();
+		pub.subscribe(sub);
+		
+		pub.receiveUpdate(new Speed());
+		pub.receiveUpdate(new RPM());
+		Assert.assertTrue(sub.items.isEmpty());
+		
+		sub.subscription.request(1);
+		Assert.assertTrue(sub.items.size() == 1);
+		Assert.assertTrue(sub.items.get(0) instanceof Speed);
+		
+		sub.subscription.request(5);
+		Assert.assertTrue(sub.items.size() == 2);
+		
+		pub.receiveUpdate(new MAF());
+		Assert.assertTrue(sub.items.size() == 3);
+		
+		pub.shutdown();
+		Assert.assertTrue(sub.completed);
+	}
+	
+	@Test
+	public void testBoundedBuffer() {
+		SamplePublisher pub = new SamplePublisher(DIRECT, 2, Conflation.NONE);
+		CollectingSubscriber sub = new CollectingSubscriber();
+		pub.subscribe(sub);
+		
+		pub.receiveUpdate(new Speed());
+		pub.receiveUpdate(new RPM());
+		pub.receiveUpdate(new MAF());
+		
+		Assert.assertTrue(pub.getDroppedCount() == 1);
+		
+		sub.subscription.request(Long.MAX_VALUE);
+		Assert.assertTrue(sub.items.size() == 2);
+		Assert.assertTrue(sub.items.get(0) instanceof RPM);
+		Assert.assertTrue(sub.items.get(1) instanceof MAF);
+	}
+	
+	@Test
+	public void testLatestPerPID() {
+		SamplePublisher pub = new SamplePublisher(DIRECT, 8, Conflation.LATEST_PER_PID);
+		CollectingSubscriber sub = new CollectingSubscriber();
+		pub.subscribe(sub);
+		
+		Speed first = new Speed();
+		Speed second = new Speed();
+		pub.receiveUpdate(first);
+		pub.receiveUpdate(new RPM());
+		pub.receiveUpdate(second);
+		
+		sub.subscription.request(10);
+		Assert.assertTrue(sub.items.size() == 2);
+		Assert.assertTrue(sub.items.get(0) == second);
+		Assert.assertTrue(sub.items.get(1) instanceof RPM);
+	}
+	
+	private static class CollectingSubscriber implements Subscriber<AbstractCommand> {
+		
+		private Subscription subscription;
+		private List<AbstractCommand> items = new ArrayList<AbstractCommand>();
+		private boolean completed;
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(AbstractCommand item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			throw new IllegalStateException(t);
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+		
+	}
+
+}
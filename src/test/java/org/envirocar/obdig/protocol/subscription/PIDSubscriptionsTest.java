@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.protocol.subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.envirocar.obdig.commands.AbstractCommand;
+import org.envirocar.obdig.commands.numeric.RPM;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PIDSubscriptionsTest {
+
+	@Test
+	public void testUnion() {
+		PIDSubscriptions subscriptions = new PIDSubscriptions();
+		Assert.assertTrue(subscriptions.isEmpty());
+		
+		Subscription ui = subscriptions.subscribe("0D", 1000, new Recorder());
+		Subscription storage = subscriptions.subscribe("0D", 250, new Recorder());
+		subscriptions.subscribe("0C", 500, new Recorder());
+		
+		Assert.assertTrue(subscriptions.getSubscribedPIDs().size() == 2);
+		Assert.assertTrue(subscriptions.getSubscribedPIDs().get(0).equals("0C"));
+		Assert.assertTrue(subscriptions.getPeriod(0x0D) == 250);
+		
+		int version = subscriptions.getVersion();
+		storage.cancel();
+		Assert.assertTrue(subscriptions.getPeriod(0x0D) == 1000);
+		Assert.assertTrue(subscriptions.getVersion() != version);
+		
+		ui.cancel();
+		Assert.assertTrue(!subscriptions.isSubscribed(0x0D));
+		Assert.assertTrue(!subscriptions.isEmpty());
+	}
+	
+	@Test
+	public void testDue() {
+		PIDSubscriptions subscriptions = new PIDSubscriptions();
+		subscriptions.subscribe("0D", 250, new Recorder());
+		
+		/*
+		 * cycles every 100 ms: waiting for the cycle at 300 ms
+		 * would exceed the period, so the PID is requested at 200 ms
+		 */
+		long now = 1000;
+		subscriptions.onCycle(now);
+		Assert.assertTrue(subscriptions.isDue(0x0D, now));
+		subscriptions.onRequested(0x0D, now);
+		
+		now += 100;
+		subscriptions.onCycle(now);
+		Assert.assertTrue(!subscriptions.isDue(0x0D, now));
+		
+		now += 100;
+		subscriptions.onCycle(now);
+		Assert.assertTrue(subscriptions.isDue(0x0D, now));
+		
+		Assert.assertTrue(!subscriptions.isDue(0x0C, now));
+	}
+	
+	@Test
+	public void testFanOut() {
+		PIDSubscriptions subscriptions = new PIDSubscriptions();
+		Recorder first = new Recorder();
+		Recorder second = new Recorder();
+		subscriptions.subscribe("0D", 0, first);
+		subscriptions.subscribe("0D", 0, second);
+		subscriptions.subscribe("0D", 0, new SubscriptionListener() {
+			@Override
+			public void onResult(AbstractCommand result) {
+				throw new IllegalStateException("faulty consumer");
+			}
+		});
+		
+		Speed speed = new Speed();
+		subscriptions.dispatch(speed);
+		subscriptions.dispatch(new RPM());
+		
+		Assert.assertTrue(first.results.size() == 1 && first.results.get(0) == speed);
+		Assert.assertTrue(second.results.size() == 1 && second.results.get(0) == speed);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPID() {
+		new PIDSubscriptions().subscribe("speed", 0, new Recorder());
+	}
+	
+	private static class Recorder implements SubscriptionListener {
+		
+		private List<AbstractCommand> results = new ArrayList<AbstractCommand>();
+
+		@Override
+		public void onResult(AbstractCommand result) {
+			results.add(result);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.storage;
+
+import java.util.List;
+
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.storage.Measurement.PropertyKey;
+import org.envirocar.obdig.storage.MeasurementAssembler.Interpolation;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MeasurementAssemblerTest {
+
+	@Test
+	public void testLinearInterpolation() {
+		MeasurementAssembler assembler = new MeasurementAssembler(4, 2000, Interpolation.LINEAR);
+		assembler.addSample(PID.SPEED, 1000, 40, Double.NaN);
+		assembler.addSample(PID.SPEED, 2000, 60, Double.NaN);
+		assembler.addSample(PID.FUEL_SYSTEM_STATUS, 1000, 1, 1);
+		assembler.addSample(PID.FUEL_SYSTEM_STATUS, 2000, 2, 0);
+		
+		Measurement m = assembler.assemble(1250, 51.0, 7.0);
+		Assert.assertTrue(m.getTime() == 1250);
+		Assert.assertTrue(m.getProperty(PropertyKey.SPEED) == 45.0);
+		Assert.assertTrue(m.getProperty(PropertyKey.FUEL_SYSTEM_STATUS_CODE) == 1.0);
+		Assert.assertTrue(m.getProperty(PropertyKey.FUEL_SYSTEM_LOOP) == 1.0);
+		
+		/*
+		 * after the newest sample: hold
+		 */
+		m = assembler.assemble(2500, 51.0, 7.0);
+		Assert.assertTrue(m.getProperty(PropertyKey.SPEED) == 60.0);
+		
+		/*
+		 * too old
+		 */
+		m = assembler.assemble(5000, 51.0, 7.0);
+		Assert.assertFalse(m.hasProperty(PropertyKey.SPEED));
+		
+		/*
+		 * before the first sample
+		 */
+		m = assembler.assemble(500, 51.0, 7.0);
+		Assert.assertFalse(m.hasProperty(PropertyKey.SPEED));
+	}
+	
+	@Test
+	public void testSampleAndHold() {
+		MeasurementAssembler assembler = new MeasurementAssembler(4, 2000, Interpolation.SAMPLE_AND_HOLD);
+		assembler.addSample(PID.RPM, 1000, 800, Double.NaN);
+		assembler.addSample(PID.RPM, 2000, 1600, Double.NaN);
+		
+		Measurement m = assembler.assemble(1900, 51.0, 7.0);
+		Assert.assertTrue(m.getProperty(PropertyKey.RPM) == 800.0);
+	}
+	
+	@Test
+	public void testBoundedWindow() {
+		MeasurementAssembler assembler = new MeasurementAssembler(2, 10000, Interpolation.LINEAR);
+		for (int i = 1; i <= 5; i++) {
+			assembler.addSample(PID.SPEED, i * 1000, i * 10, Double.NaN);
+		}
+		
+		/*
+		 * only the last two samples are available
+		 */
+		Assert.assertFalse(assembler.assemble(3500, 51.0, 7.0).hasProperty(PropertyKey.SPEED));
+		Assert.assertTrue(assembler.assemble(4500, 51.0, 7.0).getProperty(PropertyKey.SPEED) == 45.0);
+	}
+	
+	@Test
+	public void testGrid() {
+		MeasurementAssembler assembler = new MeasurementAssembler(4, 2000, Interpolation.LINEAR);
+		assembler.addLocation(1000, 51.0, 7.0);
+		assembler.addLocation(2000, 52.0, 8.0);
+		assembler.addSample(PID.SPEED, 1000, 40, Double.NaN);
+		assembler.addSample(PID.SPEED, 2000, 60, Double.NaN);
+		
+		List<Measurement> result = assembler.assembleGrid(0, 2000, 500);
+		Assert.assertTrue(result.size() == 3);
+		Assert.assertTrue(result.get(1).getTime() == 1500);
+		Assert.assertTrue(result.get(1).getLatitude() == 51.5);
+		Assert.assertTrue(result.get(1).getLongitude() == 7.5);
+		Assert.assertTrue(result.get(1).getProperty(PropertyKey.SPEED) == 50.0);
+	}
+	
+	@Test
+	public void testNewestLambdaProbe() {
+		MeasurementAssembler assembler = new MeasurementAssembler(4, 2000, Interpolation.SAMPLE_AND_HOLD);
+		assembler.addSample(PID.O2_LAMBDA_PROBE_1_VOLTAGE, 1500, 0.9, 1.1);
+		assembler.addSample(PID.O2_LAMBDA_PROBE_2_VOLTAGE, 1000, 0.4, 0.8);
+		
+		/*
+		 * probe 1 has the newer sample, although probe 2 comes later in the PID order
+		 */
+		Measurement m = assembler.assemble(1600, 51.0, 7.0);
+		Assert.assertTrue(m.getProperty(PropertyKey.LAMBDA_VOLTAGE) == 0.9);
+		Assert.assertTrue(m.getProperty(PropertyKey.LAMBDA_VOLTAGE_ER) == 1.1);
+		
+		assembler.addSample(PID.O2_LAMBDA_PROBE_2_VOLTAGE, 1700, 0.5, 0.9);
+		m = assembler.assemble(1800, 51.0, 7.0);
+		Assert.assertTrue(m.getProperty(PropertyKey.LAMBDA_VOLTAGE) == 0.5);
+		Assert.assertTrue(m.getProperty(PropertyKey.LAMBDA_VOLTAGE_ER) == 0.9);
+	}
+
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2014 - 2015 the enviroCar development team (envirocar.org)
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.envirocar.obdig.storage;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.envirocar.obdig.commands.PIDUtil.PID;
+import org.envirocar.obdig.commands.numeric.Speed;
+import org.envirocar.obdig.storage.Measurement.PropertyKey;
+import org.envirocar.obdig.storage.SnapshotStore.Snapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SnapshotStoreTest {
+
+	@Test
+	public void testSnapshot() {
+		SnapshotStore store = new SnapshotStore();
+		
+		Speed speed = new Speed();
+		speed.parseRawData("410D32".getBytes());
+		speed.setResultTime(1000);
+		store.receiveUpdate(speed);
+		
+		Snapshot snap = store.snapshot();
+		Assert.assertTrue(snap.getValue(PID.SPEED) == 50.0);
+		Assert.assertTrue(snap.getTime(PID.SPEED) == 1000);
+		Assert.assertTrue(Double.isNaN(snap.getValue(PID.RPM)));
+		Assert.assertTrue(snap.getTime(PID.RPM) == 0);
+	}
+	
+	@Test
+	public void testMeasurement() {
+		SnapshotStore store = new SnapshotStore();
+		store.update(PID.SPEED, 50, Double.NaN, 1000);
+		store.update(PID.MAF, 3.5, Double.NaN, 500);
+		store.update(PID.O2_LAMBDA_PROBE_1_VOLTAGE, 0.8, 1.01, 900);
+		store.update(PID.O2_LAMBDA_PROBE_2_VOLTAGE, 0.7, 0.99, 950);
+		
+		Measurement m = new Measurement(51.0, 7.0);
+		store.snapshot().fillMeasurement(m, 800);
+		
+		Assert.assertTrue(m.getProperty(PropertyKey.SPEED) == 50.0);
+		Assert.assertFalse(m.hasProperty(PropertyKey.MAF));
+		Assert.assertTrue(m.getProperty(PropertyKey.LAMBDA_VOLTAGE) == 0.7);
+		Assert.assertTrue(m.getProperty(PropertyKey.LAMBDA_VOLTAGE_ER) == 0.99);
+	}
+	
+	@Test
+	public void testConcurrentReaders() throws InterruptedException {
+		final SnapshotStore store = new SnapshotStore();
+		final PID[] pids = PID.values();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicInteger mixed = new AtomicInteger();
+		final AtomicInteger snapshots = new AtomicInteger();
+		
+		/*
+		 * every generation updates all PIDs in order and writes the same
+		 * number as value, aux value and time, so a mixed snapshot shows
+		 * as a mismatch
+		 */
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int gen = 1; gen <= 20000; gen++) {
+					for (PID pid : pids) {
+						store.update(pid, gen, -gen, gen);
+					}
+				}
+				writing.set(false);
+			}
+		});
+		
+		Thread[] readers = new Thread[3];
+		for (int r = 0; r < readers.length; r++) {
+			readers[r] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Snapshot snap = new Snapshot();
+					while (writing.get()) {
+						store.snapshot(snap);
+						snapshots.incrementAndGet();
+						
+						long first = snap.getTime(pids[0]);
+						for (PID pid : pids) {
+							long time = snap.getTime(pid);
+							if (time == 0) {
+								continue;
+							}
+							
+							/*
+							 * PIDs later in the order may lag one generation
+							 */
+							if (snap.getValue(pid) != time || snap.getAuxValue(pid) != -time
+									|| (time != first && time != first - 1)) {
+								mixed.incrementAndGet();
+								break;
+							}
+						}
+					}
+				}
+			});
+			readers[r].start();
+		}
+		writer.start();
+		
+		writer.join();
+		for (Thread t : readers) {
+			t.join();
+		}
+		
+		Assert.assertTrue(snapshots.get() > 0);
+		Assert.assertTrue("mixed snapshots: "+ mixed.get(), mixed.get() == 0);
+	}
+
+}